@@ -0,0 +1,424 @@
+package clue;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Measures the hot paths of {@link ClueSolver} and {@link ClueFileWriter} over a grid of player counts and deck
+ * sizes, so regressions can be caught by comparing runs. Each benchmark is run for a number of warmup iterations,
+ * which are discarded, and then measurement iterations, each calling it repeatedly for a fixed time. The average
+ * time per call of each measurement iteration is recorded.
+ * <p>
+ * Benchmarks which compute probabilities are also run for each {@link ClueSolver.ProbabilityModel}, set on every game
+ * so that each result times one model. A game too large for the model set is answered by a less exact one, so the
+ * model which answered is reported with each result.
+ * <p>
+ * Results are printed as a table and can also be written as JSON in the same layout as JMH's JSON result format, so
+ * existing tools for tracking JMH results over time can read them.
+ * <p>
+ * Usage: ClueBenchmark [-p players,...] [-c cards,...] [-m model,...] [-b benchmark,...] [-wi warmupIterations]
+ * [-i iterations] [-r iterationMillis] [-rff results.json]
+ */
+public class ClueBenchmark {
+
+	/**
+	 * z value of the reported error (99.9%, as used by JMH).
+	 */
+	private static final double Z = 3.29;
+
+	/**
+	 * Rounds of opponent turns played before measuring benchmarks that need a game in progress.
+	 */
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Consumes benchmark results so the JIT cannot remove the work that produced them.
+	 */
+	private static volatile long sink;
+
+	private int[] players = {3, 4, 6};
+	private int[] cards = {21, 210, 2100};
+	private ClueSolver.ProbabilityModel[] models = ClueSolver.ProbabilityModel.values();
+	private List<String> benchmarks = new ArrayList<String>(workloads().keySet());
+	private int warmupIterations = 3;
+	private int iterations = 5;
+	private long iterationMillis = 500;
+	private String resultFile;
+
+	public static void main(String[] args) throws IOException {
+		ClueBenchmark benchmark = new ClueBenchmark();
+		for (int i = 0; i < args.length; i++) {
+			if (i + 1 == args.length) {
+				System.out.println("Missing value for " + args[i]);
+				return;
+			}
+			String value = args[++i];
+			switch (args[i - 1]) {
+			case "-p":
+				benchmark.players = parseList(value);
+				break;
+			case "-c":
+				benchmark.cards = parseList(value);
+				break;
+			case "-m":
+				String[] names = value.split(",");
+				benchmark.models = new ClueSolver.ProbabilityModel[names.length];
+				for (int m = 0; m < names.length; m++) {
+					benchmark.models[m] = ClueSolver.ProbabilityModel.valueOf(names[m].trim());
+				}
+				break;
+			case "-b":
+				benchmark.benchmarks = new ArrayList<String>();
+				for (String name : value.split(",")) {
+					if (!workloads().containsKey(name)) {
+						System.out.println("Unknown benchmark " + name + ", expected one of " + workloads().keySet());
+						return;
+					}
+					benchmark.benchmarks.add(name);
+				}
+				break;
+			case "-wi":
+				benchmark.warmupIterations = Integer.parseInt(value);
+				break;
+			case "-i":
+				benchmark.iterations = Integer.parseInt(value);
+				break;
+			case "-r":
+				benchmark.iterationMillis = Long.parseLong(value);
+				break;
+			case "-rff":
+				benchmark.resultFile = value;
+				break;
+			default:
+				System.out.println("Usage: ClueBenchmark [-p players,...] [-c cards,...] [-m model,...] [-b benchmark,...] "
+						+ "[-wi warmupIterations] [-i iterations] [-r iterationMillis] [-rff results.json]");
+				return;
+			}
+		}
+		benchmark.run();
+	}
+
+	/**
+	 * Runs every selected benchmark for every combination of player count and deck size, and probability model for
+	 * benchmarks which compute probabilities, printing each result as it finishes and writing the JSON result file at
+	 * the end if one was given.
+	 */
+	public void run() throws IOException {
+		List<Result> results = new ArrayList<Result>();
+		System.out.println(String.format(Locale.ROOT, "%-16s %8s %8s %10s %16s %14s %12s", "Benchmark", "players",
+				"cards", "model", "answered by", "us/op", "error"));
+		for (String name : benchmarks) {
+			ClueSolver.ProbabilityModel[] benchmarkModels = workloads().get(name).probabilities ? models
+					: new ClueSolver.ProbabilityModel[] {null};
+			for (int numberPlayers : players) {
+				for (int numberCards : cards) {
+					for (ClueSolver.ProbabilityModel model : benchmarkModels) {
+						Result result = measure(name, new Deck(numberPlayers, numberCards, model));
+						System.out.println(String.format(Locale.ROOT, "%-16s %8d %8d %10s %16s %14.3f %12.3f", name,
+								numberPlayers, numberCards, model == null ? "-" : model, result.getModelUsed(),
+								result.getScore(), result.getError()));
+						results.add(result);
+					}
+				}
+			}
+		}
+		if (resultFile != null) {
+			try (Writer writer = Files.newBufferedWriter(Paths.get(resultFile), StandardCharsets.UTF_8)) {
+				writeJson(writer, results);
+			}
+			System.out.println("Results written to " + resultFile);
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * Benchmarks by name. Setup runs before each call for workloads which change their game, and once per iteration
+	 * for those which only read it. Only the call is timed.
+	 */
+	private static Map<String, Workload> workloads() {
+		Map<String, Workload> workloads = new LinkedHashMap<String, Workload>();
+		//Creating a game deals the cards, starting it reveals Player 1's hand
+		workloads.put("deal", new Workload(true, false, (deck, rand) -> rand.nextLong(), (deck, seed) -> {
+			ClueSolver game = deck.newGame((Long) seed);
+			game.startGame();
+			return game.getKnowledge().getFreeSlots(0);
+		}));
+		//Revealing Player 1's hand alone, on a freshly dealt game
+		workloads.put("startGame", new Workload(true, false, (deck, rand) -> deck.newGame(rand.nextLong()), (deck, game) -> {
+			((ClueSolver) game).startGame();
+			return ((ClueSolver) game).getKnowledge().getFreeSlots(0);
+		}));
+		workloads.put("opponentTurns", new Workload(true, false, (deck, rand) -> {
+			ClueSolver game = deck.newGame(rand.nextLong());
+			game.startGame();
+			return game;
+		}, (deck, game) -> playRounds((ClueSolver) game)));
+		//Read benchmarks drop the cached probabilities first, so every call computes them
+		workloads.put("probability", new Workload(false, true, ClueBenchmark::gameInProgress, (deck, state) -> {
+			ClueSolver game = (ClueSolver) state;
+			invalidate(game);
+			int numberLocations = game.getNumberPlayers() + 3;
+			int numberCards = game.getNumberSuspects() + game.getNumberPlaces() + game.getNumberWeapons();
+			double total = 0;
+			for (int card = 0; card < numberCards; card++) {
+				int cardType = game.getCardType(card);
+				for (int location = 0; location < numberLocations; location++) {
+					total += game.getProbability(card, cardType, location);
+				}
+			}
+			return (long) total;
+		}));
+		workloads.put("wcspExport", new Workload(false, true, ClueBenchmark::gameInProgress, (deck, state) -> {
+			ClueSolver game = (ClueSolver) state;
+			invalidate(game);
+			return new ClueFileWriter(game).getInputString().length();
+		}));
+		return workloads;
+	}
+
+	/**
+	 * @return a started game after {@link #ROUNDS} rounds of opponent turns, so it has restrictions and constraints
+	 */
+	private static Object gameInProgress(Deck deck, SplittableRandom rand) {
+		ClueSolver game = deck.newGame(rand.nextLong());
+		game.startGame();
+		playRounds(game);
+		return game;
+	}
+
+	/**
+	 * Records again a card Player 1 is known to hold. Like every event this drops the cached probabilities, but it
+	 * changes nothing else, so each call of a read benchmark sees the same game state.
+	 */
+	private static void invalidate(ClueSolver game) {
+		CardKnowledge knowledge = game.getKnowledge();
+		for (int card = 0; card < knowledge.getNumberCards(); card++) {
+			if (knowledge.isHeld(card, 0)) {
+				game.assumeHolds(0, card);
+				return;
+			}
+		}
+		throw new IllegalStateException("Player 1 holds no cards");
+	}
+
+	private static long playRounds(ClueSolver game) {
+		for (int round = 0; round < ROUNDS && !game.isGameOver(); round++) {
+			game.endPlayer1Turn();
+			game.simulateOpenentTurns();
+		}
+		return game.getSuggestionConstraints().size();
+	}
+
+	private Result measure(String name, Deck deck) {
+		Workload workload = workloads().get(name);
+		SplittableRandom rand = new SplittableRandom(deck.numberPlayers*31L + deck.numberCards);
+		double[] scores = new double[iterations];
+		Set<ClueSolver.ProbabilityModel> modelsUsed = EnumSet.noneOf(ClueSolver.ProbabilityModel.class);
+		for (int i = 0; i < warmupIterations + iterations; i++) {
+			Object state = workload.perCall ? null : workload.setup.apply(deck, rand);
+			long timed = 0;
+			long calls = 0;
+			long end = System.nanoTime() + iterationMillis*1000000L;
+			do {
+				if (workload.perCall) {
+					state = workload.setup.apply(deck, rand);
+				}
+				long start = System.nanoTime();
+				sink += workload.call.applyAsLong(deck, state);
+				timed += System.nanoTime() - start;
+				calls++;
+			} while (System.nanoTime() < end);
+			if (i >= warmupIterations) {
+				scores[i - warmupIterations] = timed/1000.0/calls;
+				if (workload.probabilities) {
+					modelsUsed.add(((ClueSolver) state).getProbabilityModelUsed());
+				}
+			}
+		}
+		return new Result(name, deck, scores, modelsUsed);
+	}
+
+	private void writeJson(Writer out, List<Result> results) throws IOException {
+		out.write("[\n");
+		for (int r = 0; r < results.size(); r++) {
+			Result result = results.get(r);
+			out.write("    {\n");
+			out.write("        \"benchmark\" : \"clue.ClueBenchmark." + result.name + "\",\n");
+			out.write("        \"mode\" : \"avgt\",\n");
+			out.write("        \"threads\" : 1,\n");
+			out.write("        \"forks\" : 0,\n");
+			out.write("        \"jvm\" : \"" + escape(System.getProperty("java.home")) + "\",\n");
+			out.write("        \"jdkVersion\" : \"" + escape(System.getProperty("java.version")) + "\",\n");
+			out.write("        \"warmupIterations\" : " + warmupIterations + ",\n");
+			out.write("        \"warmupTime\" : \"" + iterationMillis + " ms\",\n");
+			out.write("        \"measurementIterations\" : " + iterations + ",\n");
+			out.write("        \"measurementTime\" : \"" + iterationMillis + " ms\",\n");
+			out.write("        \"params\" : {\n");
+			out.write("            \"players\" : \"" + result.deck.numberPlayers + "\",\n");
+			out.write("            \"cards\" : \"" + result.deck.numberCards + "\"");
+			if (result.deck.model != null) {
+				out.write(",\n            \"model\" : \"" + result.deck.model + "\",\n");
+				out.write("            \"modelUsed\" : \"" + result.getModelUsed() + "\"");
+			}
+			out.write("\n");
+			out.write("        },\n");
+			out.write("        \"primaryMetric\" : {\n");
+			out.write("            \"score\" : " + number(result.getScore()) + ",\n");
+			out.write("            \"scoreError\" : " + number(result.getError()) + ",\n");
+			out.write("            \"scoreUnit\" : \"us/op\",\n");
+			out.write("            \"rawData\" : [\n                [\n");
+			for (int i = 0; i < result.scores.length; i++) {
+				out.write("                    " + number(result.scores[i]) + (i + 1 < result.scores.length ? ",\n" : "\n"));
+			}
+			out.write("                ]\n            ]\n");
+			out.write("        },\n");
+			out.write("        \"secondaryMetrics\" : {\n        }\n");
+			out.write(r + 1 < results.size() ? "    },\n" : "    }\n");
+		}
+		out.write("]\n");
+	}
+
+	/**
+	 * @return value as a JSON number, or null if it is NaN (e.g. the error of a single iteration)
+	 */
+	private static String number(double value) {
+		return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.6f", value);
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static int[] parseList(String value) {
+		String[] parts = value.split(",");
+		int[] list = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			list[i] = Integer.parseInt(parts[i].trim());
+		}
+		return list;
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	private static class Workload {
+		/** true if the call changes its state, so setup must be repeated before every call */
+		final boolean perCall;
+		/** true if the call computes probabilities of a game in progress, which setup returns */
+		final boolean probabilities;
+		final BiFunction<Deck, SplittableRandom, Object> setup;
+		final ToLongBiFunction<Deck, Object> call;
+
+		Workload(boolean perCall, boolean probabilities, BiFunction<Deck, SplittableRandom, Object> setup,
+				ToLongBiFunction<Deck, Object> call) {
+			this.perCall = perCall;
+			this.probabilities = probabilities;
+			this.setup = setup;
+			this.call = call;
+		}
+	}
+
+	/**
+	 * Game size being benchmarked. Cards are split between suspects, places and weapons in the same 6:9:6
+	 * proportion as the original game.
+	 */
+	private static class Deck {
+		final int numberPlayers;
+		final int numberCards;
+		final int numberSuspects;
+		final int numberPlaces;
+		final int numberWeapons;
+		/** Probability model set on every game, or null to leave the default */
+		final ClueSolver.ProbabilityModel model;
+
+		Deck(int numberPlayers, int numberCards, ClueSolver.ProbabilityModel model) {
+			this.numberPlayers = numberPlayers;
+			this.numberCards = numberCards;
+			this.model = model;
+			this.numberSuspects = Math.max(1, numberCards*6/21);
+			this.numberWeapons = numberSuspects;
+			this.numberPlaces = numberCards - 2*numberSuspects;
+			if (numberPlaces < 1) {
+				throw new IllegalArgumentException("Deck must have at least 3 cards");
+			}
+		}
+
+		ClueSolver newGame(long seed) {
+			ClueSolver game = new ClueSolver(numberPlayers, numberSuspects, numberPlaces, numberWeapons, seed);
+			game.setMessagesEnabled(false);
+			if (model != null) {
+				game.setProbabilityModel(model);
+			}
+			return game;
+		}
+	}
+
+	private static class Result {
+		final String name;
+		final Deck deck;
+		/** Average microseconds per call of each measurement iteration */
+		final double[] scores;
+		/** Models which answered in the measurement iterations, empty if the benchmark computes no probabilities */
+		final Set<ClueSolver.ProbabilityModel> modelsUsed;
+
+		Result(String name, Deck deck, double[] scores, Set<ClueSolver.ProbabilityModel> modelsUsed) {
+			this.name = name;
+			this.deck = deck;
+			this.scores = scores;
+			this.modelsUsed = modelsUsed;
+		}
+
+		/**
+		 * @return the models which answered, joined by "/" if it changed between iterations, or "-" if none
+		 */
+		String getModelUsed() {
+			if (modelsUsed.isEmpty()) {
+				return "-";
+			}
+			StringBuilder used = new StringBuilder();
+			for (ClueSolver.ProbabilityModel model : modelsUsed) {
+				used.append(used.length() == 0 ? "" : "/").append(model);
+			}
+			return used.toString();
+		}
+
+		double getScore() {
+			double total = 0;
+			for (double score : scores) {
+				total += score;
+			}
+			return scores.length == 0 ? Double.NaN : total/scores.length;
+		}
+
+		/**
+		 * @return half width of the 99.9% confidence interval around the score, treating iterations as independent
+		 */
+		double getError() {
+			if (scores.length < 2) {
+				return Double.NaN;
+			}
+			double mean = getScore();
+			double variance = 0;
+			for (double score : scores) {
+				variance += (score - mean)*(score - mean);
+			}
+			return Z*Math.sqrt(variance/(scores.length - 1)/scores.length);
+		}
+	}
+}
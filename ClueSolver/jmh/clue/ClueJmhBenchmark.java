@@ -0,0 +1,201 @@
+package clue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The workloads of {@link ClueBenchmark} under JMH, for when its forking and profilers are wanted. Built by the bench
+ * profile of the Maven build: mvn -P bench package, then java -jar target/benchmarks.jar.
+ * <p>
+ * Benchmarks which compute probabilities pin the {@link ClueSolver.ProbabilityModel} with a parameter, and count
+ * the calls each model answered as secondary results, since a game too large for the model set falls back to a less
+ * exact one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class ClueJmhBenchmark {
+
+	/**
+	 * Rounds of opponent turns played before measuring benchmarks that need a game in progress.
+	 */
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Game size being benchmarked, split 6:9:6 like {@link ClueBenchmark}'s decks.
+	 */
+	@State(Scope.Thread)
+	public static class Deck {
+		@Param({"3", "4", "6"})
+		public int players;
+		@Param({"21", "210", "2100"})
+		public int cards;
+		SplittableRandom rand;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			rand = new SplittableRandom(players*31L + cards);
+		}
+
+		ClueSolver newGame() {
+			int suspects = Math.max(1, cards*6/21);
+			ClueSolver game = new ClueSolver(players, suspects, cards - 2*suspects, suspects, rand.nextLong());
+			game.setMessagesEnabled(false);
+			return game;
+		}
+	}
+
+	/**
+	 * A freshly dealt game for every call.
+	 */
+	@State(Scope.Thread)
+	public static class Dealt {
+		ClueSolver game;
+
+		@Setup(Level.Invocation)
+		public void setup(Deck deck) {
+			game = deck.newGame();
+		}
+	}
+
+	/**
+	 * A started game for every call.
+	 */
+	@State(Scope.Thread)
+	public static class Started {
+		ClueSolver game;
+
+		@Setup(Level.Invocation)
+		public void setup(Deck deck) {
+			game = deck.newGame();
+			game.startGame();
+		}
+	}
+
+	/**
+	 * A game after {@link #ROUNDS} rounds of opponent turns, with a card Player 1 holds. Recording that card again
+	 * drops the cached probabilities without changing anything else, so every call computes them.
+	 */
+	@State(Scope.Thread)
+	public static class InProgress {
+		@Param({"HEURISTIC", "SAMPLED", "EXACT"})
+		public ClueSolver.ProbabilityModel model;
+		ClueSolver game;
+		int heldCard;
+
+		@Setup(Level.Iteration)
+		public void setup(Deck deck) {
+			game = deck.newGame();
+			game.setProbabilityModel(model);
+			game.startGame();
+			playRounds(game);
+			CardKnowledge knowledge = game.getKnowledge();
+			heldCard = 0;
+			while (!knowledge.isHeld(heldCard, 0)) {
+				heldCard++;
+			}
+		}
+	}
+
+	/**
+	 * Number of calls answered by each model, reported by JMH as secondary results of the benchmarks using it.
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class ModelUsed {
+		public long heuristic;
+		public long sampled;
+		public long exact;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			heuristic = 0;
+			sampled = 0;
+			exact = 0;
+		}
+
+		void record(ClueSolver game) {
+			switch (game.getProbabilityModelUsed()) {
+			case HEURISTIC:
+				heuristic++;
+				break;
+			case SAMPLED:
+				sampled++;
+				break;
+			default:
+				exact++;
+				break;
+			}
+		}
+	}
+
+	@Benchmark
+	public int deal(Deck deck) {
+		ClueSolver game = deck.newGame();
+		game.startGame();
+		return game.getKnowledge().getFreeSlots(0);
+	}
+
+	@Benchmark
+	public int startGame(Dealt dealt) {
+		dealt.game.startGame();
+		return dealt.game.getKnowledge().getFreeSlots(0);
+	}
+
+	@Benchmark
+	public long opponentTurns(Started started) {
+		return playRounds(started.game);
+	}
+
+	@Benchmark
+	public double probability(InProgress state, ModelUsed used) {
+		ClueSolver game = state.game;
+		game.assumeHolds(0, state.heldCard);
+		int numberLocations = game.getNumberPlayers() + 3;
+		int numberCards = game.getNumberSuspects() + game.getNumberPlaces() + game.getNumberWeapons();
+		double total = 0;
+		for (int card = 0; card < numberCards; card++) {
+			int cardType = game.getCardType(card);
+			for (int location = 0; location < numberLocations; location++) {
+				total += game.getProbability(card, cardType, location);
+			}
+		}
+		used.record(game);
+		return total;
+	}
+
+	@Benchmark
+	public int wcspExport(InProgress state, ModelUsed used) {
+		state.game.assumeHolds(0, state.heldCard);
+		int length = new ClueFileWriter(state.game).getInputString().length();
+		used.record(state.game);
+		return length;
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static long playRounds(ClueSolver game) {
+		for (int round = 0; round < ROUNDS && !game.isGameOver(); round++) {
+			game.endPlayer1Turn();
+			game.simulateOpenentTurns();
+		}
+		return game.getSuggestionConstraints().size();
+	}
+}
@@ -0,0 +1,482 @@
+package clue;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Advises Player 1 whether to accuse now or keep suggesting, from how likely the most likely case file is and how
+ * soon an opponent is expected to solve the game first.
+ * <p>
+ * The probability of each (suspect, place, weapon) case file is exact where that is cheap: the two card types with
+ * the fewest candidates are fixed in a fork of the game for each pair of candidates, and each fork is counted by a
+ * {@link ClueExactSolver}, giving the number of deals with that pair and the share of them with each card of the
+ * third type. Counting is limited to a number of states in proportion to the time limit, so whether a game is
+ * counted depends only on its state and the time limit, never on how fast the machine is at the moment. Games which
+ * would need more are estimated from deals drawn with a {@link ClueSampler} for the rest of the time limit instead.
+ * If the game is too large to draw any deal in time, the case file cards are taken to be independent, each type
+ * distributed by the probability of each of its cards being in the case file: exact if the game could be counted, else
+ * from {@link ClueSolver#getProbabilityMatrix()}. An answer is always given, so the advisor can be called every turn of
+ * bulk simulations.
+ * <p>
+ * Waiting wins if Player 1 learns the rest of the case file before any opponent wins. Player 1 is taken to need the
+ * entropy of the case file divided by {@link #setBitsPerRound(double)} more rounds, and each opponent to win on any
+ * one turn with a fixed chance: a built-in bot suggests at random, so wins with a chance of one in the number of case
+ * files, and a bot with a {@link BotPolicy} is given a chance of one in the number of case files it has not ruled out
+ * if the game tracks what every player knows (which only a simulation can see), or is treated as a built-in bot
+ * otherwise. {@link #setOpponentRisk(double)} replaces the estimate.
+ */
+public class AccusationAdvisor {
+
+	/**
+	 * States {@link ClueExactSolver} may count for each millisecond of the time limit. Counting takes well under a
+	 * microsecond per state, so the time left over is enough to draw deals if counting is given up.
+	 */
+	private static final long STATES_PER_MILLISECOND = 500;
+
+	private ClueSolver data;
+	private ClueSampler sampler;
+	private int deals;
+	private long timeLimitMillis;
+	private double bitsPerRound;
+	private double opponentRisk;
+
+	public AccusationAdvisor(ClueSolver data) {
+		this(data, new SplittableRandom());
+	}
+
+	/**
+	 * @param data
+	 * @param rand source of randomness used to draw deals, when the case file cannot be counted exactly
+	 */
+	public AccusationAdvisor(ClueSolver data, SplittableRandom rand) {
+		this.data = data;
+		this.sampler = new ClueSampler(data, rand);
+		this.deals = 2000;
+		this.timeLimitMillis = 6;
+		this.bitsPerRound = 1;
+		this.opponentRisk = -1;
+	}
+
+	/**
+	 * @param threads number of worker threads used to draw deals, defaults to the number of cores, or 1 if created on a
+	 * thread of a caller which is already parallel (see {@link ClueSampler#defaultThreads()})
+	 */
+	public void setThreads(int threads) {
+		sampler.setThreads(threads);
+	}
+
+	/**
+	 * @param deals number of consistent deals drawn when the case file is not counted exactly, defaults to 2000
+	 */
+	public void setDeals(int deals) {
+		if (deals < 1) {
+			throw new IllegalArgumentException("Must draw at least 1 deal");
+		}
+		this.deals = deals;
+	}
+
+	/**
+	 * @param timeLimitMillis time {@link #advise()} may spend counting and drawing deals, defaults to 6 so the whole
+	 * call, including starting and stopping the workers and the odd pause for garbage collection, stays under 10
+	 * milliseconds. Also sets how many states exact counting may use.
+	 */
+	public void setTimeLimit(long timeLimitMillis) {
+		if (timeLimitMillis < 1) {
+			throw new IllegalArgumentException("Time limit must be at least 1 millisecond");
+		}
+		this.timeLimitMillis = timeLimitMillis;
+	}
+
+	/**
+	 * @param bitsPerRound bits of entropy about the case file Player 1 is expected to learn each round, defaults to 1
+	 */
+	public void setBitsPerRound(double bitsPerRound) {
+		if (!(bitsPerRound > 0)) {
+			throw new IllegalArgumentException("Must learn a positive number of bits per round");
+		}
+		this.bitsPerRound = bitsPerRound;
+	}
+
+	/**
+	 * @param opponentRisk chance that some opponent wins during one round of turns, or -1 (the default) to estimate it
+	 * from the opponents as described above
+	 */
+	public void setOpponentRisk(double opponentRisk) {
+		if (opponentRisk != -1 && !(opponentRisk >= 0 && opponentRisk <= 1)) {
+			throw new IllegalArgumentException("Opponent risk must be between 0 and 1, or -1 to estimate it");
+		}
+		this.opponentRisk = opponentRisk;
+	}
+
+	/**
+	 * Finds the most likely case file and whether accusing it now beats waiting. The game must not be changed while
+	 * this call is running.
+	 * @return the advice, with the figures it was based on
+	 * @throws IllegalStateException if no consistent deal can be found
+	 */
+	public Advice advise() {
+		long start = System.nanoTime();
+		long maxStates = timeLimitMillis*STATES_PER_MILLISECOND;
+		ClueExactSolver solver = new ClueExactSolver(data);
+		solver.setMaxStates(ClueSolver.EXACT_MAX_STATES);
+		solver.setMaxStatesCounted(Math.max(1, maxStates/2));
+		double[] probabilities = null;
+		try {
+			probabilities = solver.solve();
+		} catch (IllegalStateException e) {
+			//Too large to count, and for an inconsistent game the sampler gives the error
+		}
+
+		Posterior posterior = null;
+		if (probabilities != null) {
+			posterior = exactPosterior(probabilities, solver.getStatesCounted(), maxStates);
+		}
+		if (posterior == null) {
+			long remaining = (start + timeLimitMillis*1000000L - System.nanoTime())/1000000L;
+			posterior = sampledPosterior(Math.max(1, remaining));
+		}
+		if (posterior == null) {
+			posterior = independentPosterior(probabilities != null ? probabilities : data.getProbabilityMatrix());
+		}
+
+		double entropy = posterior.entropy();
+		double risk = opponentRisk != -1 ? opponentRisk : estimateOpponentRisk();
+		double roundsToSolve = entropy/bitsPerRound;
+		double winIfWaiting = Math.pow(1 - risk, roundsToSolve);
+		return new Advice(posterior.best, posterior.bestWeight/posterior.total, posterior.exact, posterior.samples,
+				entropy, roundsToSolve, risk, winIfWaiting);
+	}
+
+	/**
+	 * Result of {@link AccusationAdvisor#advise()}.
+	 */
+	public static class Advice {
+		private final int[] accusation;
+		private final double probability;
+		private final boolean exact;
+		private final int samples;
+		private final double entropy;
+		private final double roundsToSolve;
+		private final double opponentRisk;
+		private final double winIfWaiting;
+
+		Advice(int[] accusation, double probability, boolean exact, int samples, double entropy, double roundsToSolve,
+				double opponentRisk, double winIfWaiting) {
+			this.accusation = accusation;
+			this.probability = probability;
+			this.exact = exact;
+			this.samples = samples;
+			this.entropy = entropy;
+			this.roundsToSolve = roundsToSolve;
+			this.opponentRisk = opponentRisk;
+			this.winIfWaiting = winIfWaiting;
+		}
+
+		/**
+		 * @return {suspect, place, weapon} most likely to be the case file
+		 */
+		public int[] getAccusation() {
+			return Arrays.copyOf(accusation, accusation.length);
+		}
+
+		/**
+		 * @return probability that {@link #getAccusation()} is the case file, i.e. of winning by accusing now
+		 */
+		public double getProbability() {
+			return probability;
+		}
+
+		/**
+		 * @return true if the probabilities were counted exactly, false if estimated from sampled deals or from each
+		 * card's probability of being in the case file
+		 */
+		public boolean isExact() {
+			return exact;
+		}
+
+		/**
+		 * @return number of deals the probabilities were estimated from, 0 if they were not sampled
+		 */
+		public int getSamples() {
+			return samples;
+		}
+
+		/**
+		 * @return entropy of the case file, in bits
+		 */
+		public double getEntropy() {
+			return entropy;
+		}
+
+		/**
+		 * @return number of rounds Player 1 is expected to need to know the case file
+		 */
+		public double getRoundsToSolve() {
+			return roundsToSolve;
+		}
+
+		/**
+		 * @return chance that some opponent wins during one round of turns
+		 */
+		public double getOpponentRisk() {
+			return opponentRisk;
+		}
+
+		/**
+		 * @return estimated chance of winning by waiting until the case file is known
+		 */
+		public double getWinIfWaiting() {
+			return winIfWaiting;
+		}
+
+		/**
+		 * @return true if accusing now is at least as likely to win as waiting
+		 */
+		public boolean shouldAccuse() {
+			return probability >= winIfWaiting;
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * Counts the deals with each case file, by fixing the case file cards of the two types with fewest candidates.
+	 * @param probabilities exact probabilities of the game, from {@link ClueExactSolver#solve()}
+	 * @param states number of states counted to find them
+	 * @param maxStates number of states the game and its forks may count altogether
+	 * @return the case file distribution, or null if it needs more states
+	 */
+	private Posterior exactPosterior(double[] probabilities, long states, long maxStates) {
+		int numberPlayers = data.getNumberPlayers();
+		int numberLocations = numberPlayers + 3;
+		int[] firstCard = {0, data.getNumberSuspects(), data.getNumberSuspects() + data.getNumberPlaces(),
+				data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons()};
+		int[][] candidates = new int[3][];
+		for (int cardType = 0; cardType < 3; cardType++) {
+			int[] cards = new int[firstCard[cardType + 1] - firstCard[cardType]];
+			int count = 0;
+			for (int card = firstCard[cardType]; card < firstCard[cardType + 1]; card++) {
+				if (probabilities[card*numberLocations + numberPlayers + cardType] > 0) {
+					cards[count++] = card;
+				}
+			}
+			candidates[cardType] = Arrays.copyOf(cards, count);
+		}
+
+		//Fix the two types with fewest candidates, so there are fewest forks to count
+		int third = 0;
+		for (int cardType = 1; cardType < 3; cardType++) {
+			if (candidates[cardType].length > candidates[third].length) {
+				third = cardType;
+			}
+		}
+		int first = third == 0 ? 1 : 0;
+		int second = 3 - third - first;
+		long pairs = ((long) candidates[first].length)*candidates[second].length;
+		//Each fork has two more cards fixed, and in practice reaches under three quarters of the game's states
+		if (pairs > 1 && pairs*states*3/4 > maxStates - states) {
+			return null;
+		}
+
+		Posterior posterior = new Posterior(true, 0);
+		int[] caseFile = new int[3];
+		for (int a : candidates[first]) {
+			for (int b : candidates[second]) {
+				double count = 1;
+				double[] conditional = probabilities;
+				if (pairs > 1) {
+					ClueSolver fork = data.fork();
+					fork.assumeHolds(numberPlayers + first, a);
+					fork.assumeHolds(numberPlayers + second, b);
+					if (fork.getKnowledge().hasContradiction()) {
+						continue;
+					}
+					long left = maxStates - states;
+					if (left < 1) {
+						return null;
+					}
+					ClueExactSolver forkSolver = new ClueExactSolver(fork);
+					forkSolver.setMaxStatesCounted(left);
+					try {
+						conditional = forkSolver.solve();
+					} catch (IllegalStateException e) {
+						if (forkSolver.getStatesCounted() > left) {
+							return null;
+						}
+						//No deal has both cards in the case file
+						continue;
+					} finally {
+						states += forkSolver.getStatesCounted();
+					}
+					count = forkSolver.getSolutionCount();
+				}
+				caseFile[first] = a;
+				caseFile[second] = b;
+				for (int c : candidates[third]) {
+					caseFile[third] = c;
+					posterior.add(caseFile, count*conditional[c*numberLocations + numberPlayers + third]);
+				}
+			}
+		}
+		return posterior;
+	}
+
+	/**
+	 * Estimates the case file distribution from the case files of sampled deals.
+	 * @return the case file distribution, or null if no deal was drawn in time
+	 */
+	private Posterior sampledPosterior(long timeLimitMillis) {
+		int[][] sampled = sampler.drawDeals(deals, timeLimitMillis);
+		if (sampled.length == 0) {
+			return null;
+		}
+		int numberPlayers = data.getNumberPlayers();
+		int numberSuspects = data.getNumberSuspects();
+		int numberPlaces = data.getNumberPlaces();
+		int numberWeapons = data.getNumberWeapons();
+
+		//Sort deals by case file, so each run of equal keys is one case file
+		long[] keys = new long[sampled.length];
+		int[] caseFile = new int[3];
+		for (int d = 0; d < sampled.length; d++) {
+			int[] deal = sampled[d];
+			for (int card = 0; card < deal.length; card++) {
+				if (deal[card] >= numberPlayers) {
+					caseFile[deal[card] - numberPlayers] = card;
+				}
+			}
+			keys[d] = (((long) caseFile[0])*numberPlaces + caseFile[1] - numberSuspects)*numberWeapons + caseFile[2]
+					- numberSuspects - numberPlaces;
+		}
+		Arrays.sort(keys);
+
+		Posterior posterior = new Posterior(false, sampled.length);
+		int run = 0;
+		for (int d = 0; d < keys.length; d++) {
+			run++;
+			if (d == keys.length - 1 || keys[d] != keys[d + 1]) {
+				caseFile[0] = (int) (keys[d]/((long) numberPlaces*numberWeapons));
+				caseFile[1] = numberSuspects + (int) ((keys[d]/numberWeapons)%numberPlaces);
+				caseFile[2] = numberSuspects + numberPlaces + (int) (keys[d]%numberWeapons);
+				posterior.add(caseFile, run);
+				run = 0;
+			}
+		}
+		return posterior;
+	}
+
+	/**
+	 * Treats the case file cards as independent, each type distributed by the probability of each of its cards being
+	 * in the case file. Only the most likely case file and the entropy are needed, and for independent types they are
+	 * the most likely card of each type and the sum of the entropies of the types, so no case file is listed.
+	 * @param probabilities probability of every card being in every location, as from
+	 * {@link ClueSolver#getProbabilityMatrix()}
+	 * @return the case file distribution
+	 */
+	private Posterior independentPosterior(double[] probabilities) {
+		int numberPlayers = data.getNumberPlayers();
+		int numberLocations = numberPlayers + 3;
+		int numberCards = data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons();
+		int[] best = new int[3];
+		double[] bestProbability = new double[3];
+		double[] total = new double[3];
+		double[] weightedLog = new double[3];
+		for (int card = 0; card < numberCards; card++) {
+			int cardType = data.getCardType(card);
+			double probability = probabilities[card*numberLocations + numberPlayers + cardType];
+			if (probability <= 0) {
+				continue;
+			}
+			if (probability > bestProbability[cardType]) {
+				bestProbability[cardType] = probability;
+				best[cardType] = card;
+			}
+			total[cardType] += probability;
+			weightedLog[cardType] += probability*Math.log(probability)/Math.log(2);
+		}
+		double entropy = 0;
+		double bestWeight = 1;
+		for (int cardType = 0; cardType < 3; cardType++) {
+			//Entropy of the type, with its probabilities normalised to add up to 1
+			entropy += Math.log(total[cardType])/Math.log(2) - weightedLog[cardType]/total[cardType];
+			bestWeight *= bestProbability[cardType]/total[cardType];
+		}
+		return Posterior.of(best, bestWeight, entropy);
+	}
+
+	/**
+	 * @return chance that at least one opponent wins during the next round of turns
+	 */
+	private double estimateOpponentRisk() {
+		double caseFiles = ((double) data.getNumberSuspects())*data.getNumberPlaces()*data.getNumberWeapons();
+		double noneWin = 1;
+		for (int player = 1; player < data.getNumberPlayers(); player++) {
+			double chance = 1/caseFiles;
+			if (data.hasBotPolicy(player) && data.isPlayerKnowledgeTracked()) {
+				chance = 1.0/data.getPlayerKnowledge(player).getCaseFileCombinations();
+			}
+			noneWin *= 1 - chance;
+		}
+		return 1 - noneWin;
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	/**
+	 * Distribution of the case file, added one case file at a time with a weight proportional to its probability.
+	 * Keeps only the most likely case file and what the entropy needs, not the whole distribution.
+	 */
+	private static class Posterior {
+		final boolean exact;
+		final int samples;
+		int[] best;
+		double bestWeight;
+		double total;
+		/** Sum of weight*log2(weight) */
+		private double weightedLog;
+
+		Posterior(boolean exact, int samples) {
+			this.exact = exact;
+			this.samples = samples;
+			this.best = new int[3];
+			this.bestWeight = 0;
+			this.total = 0;
+			this.weightedLog = 0;
+		}
+
+		/**
+		 * @return a distribution with a total weight of 1, whose most likely case file is best with probability
+		 * bestWeight, and with the given entropy, which is all that is used of it
+		 */
+		static Posterior of(int[] best, double bestWeight, double entropy) {
+			Posterior posterior = new Posterior(false, 0);
+			posterior.best = Arrays.copyOf(best, 3);
+			posterior.bestWeight = bestWeight;
+			posterior.total = 1;
+			posterior.weightedLog = -entropy;
+			return posterior;
+		}
+
+		void add(int[] caseFile, double weight) {
+			if (weight <= 0) {
+				return;
+			}
+			if (weight > bestWeight) {
+				bestWeight = weight;
+				best = Arrays.copyOf(caseFile, 3);
+			}
+			total += weight;
+			weightedLog += weight*Math.log(weight)/Math.log(2);
+		}
+
+		/**
+		 * @return entropy in bits, from H = log2(total) - sum(w*log2(w))/total
+		 */
+		double entropy() {
+			return Math.max(0, Math.log(total)/Math.log(2) - weightedLog/total);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package clue;
+
+/**
+ * Decides a bot's moves in a {@link ClueSolver} game: what to suggest, which card to reveal when refuting a
+ * suggestion and when to accuse. Set for a player with {@link ClueSolver#setBotPolicy(int, BotPolicy)}; players
+ * without one play as the built-in bots, which suggest uniformly random cards. A new policy is created for every
+ * player of every game, so implementations may keep per-game state, and they should draw any randomness from their
+ * own generator rather than the game's.
+ * <p>
+ * A bot may look at its own hand through {@link ClueSolver#hasCard(int, int)}. Nothing stops a policy reading the
+ * rest of the deal, but one which does is not playing Clue.
+ */
+public interface BotPolicy {
+
+	/**
+	 * Called at the start of each of player's turns.
+	 * @param game
+	 * @param player
+	 * @return {suspect, place, weapon} to suggest
+	 */
+	int[] chooseSuggestion(ClueSolver game, int player);
+
+	/**
+	 * Called when player has to refute suggester's suggestion.
+	 * @param game
+	 * @param player
+	 * @param suggester
+	 * @param held the cards of the suggestion player holds (one to three of them), in suspect, place, weapon order
+	 * @return the card to reveal to suggester, one of held
+	 */
+	int chooseReveal(ClueSolver game, int player, int suggester, int[] held);
+
+	/**
+	 * Called after player's suggestion has been answered. A correct accusation wins the game; a wrong one ends it
+	 * with no winner, as a wrong accusation by Player 1 does.
+	 * @param game
+	 * @param player
+	 * @param revealer player who refuted the suggestion, or -1 if no one could
+	 * @param card card revealer showed to player, or -1 if no one could
+	 * @return {suspect, place, weapon} to accuse, or null to end the turn without accusing
+	 */
+	int[] chooseAccusation(ClueSolver game, int player, int revealer, int card);
+}
@@ -0,0 +1,375 @@
+package clue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Everything known about the location of each card, stored as bit masks. Locations are numbered the same way as
+ * in {@link ClueSolver}: {Player1, ..., PlayerN, Suspect Case File, Places Case File, Weapons Case File}.
+ * <p>
+ * Known cards and restrictions are kept as one bit set per location, and each card additionally keeps a mask of the
+ * locations it may still be in, so membership tests and updates are single bit operations and never allocate.
+ * Only supports games where the number of locations fits in a long (at most 61 players).
+ */
+public class CardKnowledge {
+
+	/**
+	 * Maximum number of locations (players plus three case file slots).
+	 */
+	public static final int MAX_LOCATIONS = Long.SIZE;
+
+	/**
+	 * Maximum number of players, leaving room for the three case file slots among {@link #MAX_LOCATIONS}.
+	 */
+	public static final int MAX_PLAYERS = MAX_LOCATIONS - 3;
+
+	private final int numberPlayers;
+	private final int numberSuspects;
+	private final int numberPlaces;
+	private final int numberCards;
+	private final int numberLocations;
+
+	/**
+	 * Number of longs in the bit set of a single location.
+	 */
+	private final int words;
+
+	/**
+	 * For each location, bit set of cards known to be in that location. Location i uses words [i*words, (i+1)*words).
+	 */
+	private final long[] held;
+
+	/**
+	 * For each location, bit set of cards known not to be in that location. Laid out the same as {@link #held}.
+	 */
+	private final long[] restricted;
+
+	/**
+	 * For each card, bit mask of the locations that have not been ruled out.
+	 */
+	private final long[] possible;
+
+	/**
+	 * For each location, the number of free slots (unknown cards) it has left. Each case file slot starts with one.
+	 */
+	private final int[] freeSlots;
+
+	/**
+	 * For each type {Suspects, Places, Weapons}, the number of cards whose location is still unknown.
+	 */
+	private final int[] unknownCount;
+
+	/**
+	 * True once updates have been made which cannot all be true, e.g. a card ruled out of every location.
+	 */
+	private boolean contradiction;
+
+	/**
+	 * Creates knowledge for the start of a game, where no card locations are known.
+	 * @param numberPlayers
+	 * @param numberSuspects
+	 * @param numberPlaces
+	 * @param numberWeapons
+	 * @param handSizes number of cards dealt to each player
+	 */
+	public CardKnowledge(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons, int[] handSizes) {
+		if (numberPlayers > MAX_PLAYERS) {
+			throw new IllegalArgumentException("At most " + MAX_PLAYERS + " players are supported");
+		}
+		this.numberPlayers = numberPlayers;
+		this.numberSuspects = numberSuspects;
+		this.numberPlaces = numberPlaces;
+		this.numberCards = numberSuspects + numberPlaces + numberWeapons;
+		this.numberLocations = numberPlayers + 3;
+		this.words = (numberCards + Long.SIZE - 1) / Long.SIZE;
+		this.held = new long[numberLocations*words];
+		this.restricted = new long[numberLocations*words];
+		this.possible = new long[numberCards];
+		this.freeSlots = Arrays.copyOf(handSizes, numberLocations);
+		this.unknownCount = new int[] {numberSuspects, numberPlaces, numberWeapons};
+
+		long allLocations = (numberLocations == Long.SIZE) ? -1L : (1L << numberLocations) - 1;
+		Arrays.fill(possible, allLocations);
+		
+		//Each case file slot holds exactly one card of its own type
+		for (int i = 0; i < 3; i++) {
+			freeSlots[numberPlayers + i] = 1;
+		}
+		for (int card = 0; card < numberCards; card++) {
+			for (int i = 0; i < 3; i++) {
+				if (i != cardType(card)) {
+					restrict(numberPlayers + i, card);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates an independent copy of other. Only the bit masks and counters are copied, so this takes a handful of
+	 * array copies regardless of how much is known.
+	 * @param other
+	 */
+	public CardKnowledge(CardKnowledge other) {
+		this.numberPlayers = other.numberPlayers;
+		this.numberSuspects = other.numberSuspects;
+		this.numberPlaces = other.numberPlaces;
+		this.numberCards = other.numberCards;
+		this.numberLocations = other.numberLocations;
+		this.words = other.words;
+		this.held = other.held.clone();
+		this.restricted = other.restricted.clone();
+		this.possible = other.possible.clone();
+		this.freeSlots = other.freeSlots.clone();
+		this.unknownCount = other.unknownCount.clone();
+		this.contradiction = other.contradiction;
+	}
+
+	/*
+	 * --------------------------------------------------------------------------
+	 * Queries
+	 * --------------------------------------------------------------------------
+	 */
+
+	public int getNumberPlayers() {
+		return numberPlayers;
+	}
+
+	public int getNumberCards() {
+		return numberCards;
+	}
+
+	public int getNumberLocations() {
+		return numberLocations;
+	}
+
+	/**
+	 * @return Number of longs used by the bit set of one location.
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * @param card
+	 * @param location
+	 * @return true if card is known to be in location
+	 */
+	public boolean isHeld(int card, int location) {
+		return (held[location*words + (card >>> 6)] & (1L << card)) != 0;
+	}
+
+	/**
+	 * @param card
+	 * @param location
+	 * @return true if card is known not to be in location
+	 */
+	public boolean isRestricted(int card, int location) {
+		return (possible[card] & (1L << location)) == 0;
+	}
+
+	/**
+	 * @param card
+	 * @return true if card is known to be in some player's hand or the case file
+	 */
+	public boolean isKnown(int card) {
+		return getKnownLocation(card) != -1;
+	}
+
+	/**
+	 * @param card
+	 * @return location known to hold card, or -1 if its location is not known
+	 */
+	public int getKnownLocation(int card) {
+		long mask = possible[card];
+		if (Long.bitCount(mask) == 1) {
+			int location = Long.numberOfTrailingZeros(mask);
+			if (isHeld(card, location)) {
+				return location;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param card
+	 * @return bit mask of locations card has not been ruled out of
+	 */
+	public long getPossibleLocations(int card) {
+		return possible[card];
+	}
+
+	/**
+	 * @param location
+	 * @return number of cards in player's hand (or case file slot) that are still unknown
+	 */
+	public int getFreeSlots(int location) {
+		return freeSlots[location];
+	}
+	
+	/**
+	 * @param location
+	 * @param word index of a long within the location's bit set
+	 * @return bit set of cards that have not been ruled out of location but are not yet known to be there
+	 */
+	public long getUndecided(int location, int word) {
+		int index = location*words + word;
+		long undecided = ~(held[index] | restricted[index]);
+		int remaining = numberCards - word*Long.SIZE;
+		if (remaining < Long.SIZE) {
+			undecided &= (1L << remaining) - 1;
+		}
+		return undecided;
+	}
+
+	/**
+	 * @param location
+	 * @param word index of a long within the location's bit set
+	 * @return bit set of cards known to be in location
+	 */
+	public long getHeld(int location, int word) {
+		return held[location*words + word];
+	}
+
+	/**
+	 * @param location
+	 * @param word index of a long within the location's bit set
+	 * @return bit set of cards known not to be in location
+	 */
+	public long getRestricted(int location, int word) {
+		return restricted[location*words + word];
+	}
+
+	/**
+	 * @param cardType {Suspect = 0, Place = 1, Weapon = 2}
+	 * @return number of cards of the type whose location is still unknown
+	 */
+	public int getUnknownCount(int cardType) {
+		return unknownCount[cardType];
+	}
+
+	/**
+	 * Never true for knowledge of a real game, only for hypothetical updates (see {@link ClueSolver#fork()}).
+	 * @return true if the updates made so far cannot all be true, so no deal is consistent with them
+	 */
+	public boolean hasContradiction() {
+		return contradiction;
+	}
+
+	/**
+	 * @return one set of held cards per player, in the form used by {@link ClueSolver#getHands()}
+	 */
+	public List<HashSet<Integer>> handsAsSets() {
+		return asSets(held, numberPlayers);
+	}
+
+	/**
+	 * @return one set of restricted cards per location, in the form used by {@link ClueSolver#getRestrictions()}.
+	 * Case file slots leave out the cards of other types, which are restricted from the start but were never learned.
+	 */
+	public List<HashSet<Integer>> restrictionsAsSets() {
+		List<HashSet<Integer>> sets = asSets(restricted, numberLocations);
+		for (int i = 0; i < 3; i++) {
+			final int cardType = i;
+			sets.get(numberPlayers + i).removeIf(card -> cardType(card) != cardType);
+		}
+		return sets;
+	}
+
+	/**
+	 * @return free slots of each player, in the form used by {@link ClueSolver#getFreeSlots()}
+	 */
+	public List<Integer> freeSlotsAsList() {
+		List<Integer> list = new ArrayList<Integer>(numberPlayers);
+		for (int i = 0; i < numberPlayers; i++) {
+			list.add(freeSlots[i]);
+		}
+		return list;
+	}
+
+	/*
+	 * --------------------------------------------------------------------------
+	 * Updates (only made by the game itself)
+	 * --------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Records that card is not in location.
+	 * @return true if this is new information
+	 */
+	boolean restrict(int location, int card) {
+		long bit = 1L << location;
+		if ((possible[card] & bit) == 0) {
+			return false;
+		}
+		possible[card] &= ~bit;
+		restricted[location*words + (card >>> 6)] |= 1L << card;
+		if (possible[card] == 0) {
+			contradiction = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Records that player (or case file slot) holds card, using up one of their free slots and restricting the card
+	 * from every other location.
+	 * @return true if this is new information
+	 */
+	boolean addToHand(int location, int card) {
+		int index = location*words + (card >>> 6);
+		long bit = 1L << card;
+		if ((held[index] & bit) != 0) {
+			return false;
+		}
+		held[index] |= bit;
+		if (--freeSlots[location] < 0) {
+			contradiction = true;
+		}
+		unknownCount[cardType(card)]--;
+		for (int i = 0; i < numberLocations; i++) {
+			if (i != location) {
+				restrict(i, card);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records that the updates made so far cannot all be true.
+	 */
+	void markContradiction() {
+		contradiction = true;
+	}
+
+	/*
+	 * ----------------------
+	 * Private Helper Functions
+	 * ----------------------
+	 */
+
+	private int cardType(int card) {
+		if (card < numberSuspects) {
+			return 0;
+		}
+		else if (card < numberSuspects + numberPlaces) {
+			return 1;
+		}
+		return 2;
+	}
+
+	private List<HashSet<Integer>> asSets(long[] bits, int locations) {
+		List<HashSet<Integer>> sets = new ArrayList<HashSet<Integer>>(locations);
+		for (int i = 0; i < locations; i++) {
+			HashSet<Integer> set = new HashSet<Integer>();
+			for (int w = 0; w < words; w++) {
+				long word = bits[i*words + w];
+				while (word != 0) {
+					set.add(w*Long.SIZE + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			sets.add(set);
+		}
+		return sets;
+	}
+}
@@ -0,0 +1,444 @@
+package clue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Computes exact probabilities for the location of every card from {@link ClueSolver} game data, without
+ * writing a WCSP file for an external solver. Every deal consistent with the game state (known hands,
+ * restrictions, remaining free slots, one card of each type in the case file and every suggestion
+ * constraint) is equally likely, so the probability of a card being in a location is the number of
+ * consistent deals placing it there divided by the total number of consistent deals.
+ * <p>
+ * Deals are counted rather than enumerated. Unknown cards are placed one at a time and deals are grouped by
+ * the free slots left in each location plus which open suggestion constraints have already been satisfied,
+ * so the work is proportional to the number of distinct such states rather than the number of deals.
+ */
+public class ClueExactSolver {
+
+	private ClueSolver data;
+
+	/**
+	 * Number of consistent deals found by the last call to {@link #solve()}.
+	 */
+	private double solutionCount;
+
+	/**
+	 * Number of states reached by the forward pass of the last call to {@link #solve()}.
+	 */
+	private long statesCounted;
+	private long maxStatesCounted;
+
+	/**
+	 * Whether the last call to {@link #solve()} gave up because the game is too large, rather than inconsistent.
+	 */
+	private boolean tooLarge;
+
+	/**
+	 * Largest state space {@link #solve()} will count, see {@link #setMaxStates(long)}.
+	 */
+	private long maxStates;
+
+	public ClueExactSolver(ClueSolver data) {
+		this.data = data;
+		this.solutionCount = 0;
+		this.statesCounted = 0;
+		this.maxStatesCounted = Long.MAX_VALUE;
+		this.tooLarge = false;
+		this.maxStates = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Bounds the work of {@link #solve()}. The number of possible states (free slots left in each location and open
+	 * suggestion constraints) is at most the product of their ranges, so games where that product exceeds maxStates
+	 * are refused before any counting is done, and the states counted are at most maxStates per unknown card.
+	 * @param maxStates defaults to no limit
+	 */
+	public void setMaxStates(long maxStates) {
+		if (maxStates < 1) {
+			throw new IllegalArgumentException("Must allow at least 1 state");
+		}
+		this.maxStates = maxStates;
+	}
+
+	/**
+	 * Bounds the work of {@link #solve()} by the states it actually reaches rather than by the size of the state
+	 * space, see {@link #getStatesCounted()}. Solving gives up as soon as the forward pass has reached more.
+	 * @param maxStatesCounted defaults to no limit
+	 */
+	void setMaxStatesCounted(long maxStatesCounted) {
+		if (maxStatesCounted < 1) {
+			throw new IllegalArgumentException("Must allow at least 1 state");
+		}
+		this.maxStatesCounted = maxStatesCounted;
+	}
+
+	/**
+	 * @return Number of deals consistent with the game state found by the last call to {@link #solve()}.
+	 */
+	public double getSolutionCount() {
+		return solutionCount;
+	}
+
+	/**
+	 * @return true if the last call to {@link #solve()} failed because the game is too large to count, false if it
+	 * succeeded or no deal is consistent with the game state
+	 */
+	public boolean isTooLarge() {
+		return tooLarge;
+	}
+
+	/**
+	 * @return number of states reached by the forward pass of the last call to {@link #solve()}, which its time is
+	 * proportional to. Unlike the time, it is the same on every machine and every run.
+	 */
+	long getStatesCounted() {
+		return statesCounted;
+	}
+
+	/**
+	 * Computes the probability of every card being in every location. Result is indexed the same way as
+	 * the WCSP variables written by {@link ClueFileWriter}, i.e. card*(numberPlayers+3) + location.
+	 * @return probabilities for every (card, location) pair
+	 * @throws IllegalStateException if no deal is consistent with the game state, or the game is too large
+	 * to be counted exactly (see {@link #setMaxStates(long)})
+	 */
+	public double[] solve() {
+		solutionCount = 0;
+		statesCounted = 0;
+		tooLarge = false;
+		int numberPlayers = data.getNumberPlayers();
+		int numberLocations = numberPlayers + 3;
+		int numberCards = data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons();
+		CardKnowledge knowledge = data.getKnowledge();
+
+		double[] probabilities = new double[numberCards*numberLocations];
+
+		//Cards already known to be in a hand are fixed, only the rest need to be placed
+		int[] knownLocation = new int[numberCards];
+		int[] unknownCards = new int[numberCards];
+		int[] position = new int[numberCards];
+		int numberUnknown = 0;
+		for (int card = 0; card < numberCards; card++) {
+			knownLocation[card] = knowledge.getKnownLocation(card);
+			position[card] = -1;
+			if (knownLocation[card] != -1) {
+				probabilities[card*numberLocations + knownLocation[card]] = 1;
+			}
+			else {
+				position[card] = numberUnknown;
+				unknownCards[numberUnknown++] = card;
+			}
+		}
+
+		//Every free hand slot and every case file slot not already known must be filled by exactly one unknown card
+		int[] capacity = new int[numberLocations];
+		long[] radix = new long[numberLocations];
+		long range = 1;
+		for (int i = 0; i < numberLocations; i++) {
+			capacity[i] = knowledge.getFreeSlots(i);
+			radix[i] = range;
+			range = multiplyOrFail(range, capacity[i] + 1);
+		}
+
+		//Locations each unknown card may still be in
+		int[][] allowed = new int[numberUnknown][];
+		for (int k = 0; k < numberUnknown; k++) {
+			int card = unknownCards[k];
+			int[] locations = new int[numberLocations];
+			int count = 0;
+			for (int i = 0; i < numberLocations; i++) {
+				if (capacity[i] == 0 || knowledge.isRestricted(card, i)) {
+					continue;
+				}
+				if (i >= numberPlayers && data.getCardType(card) != (i - numberPlayers)) {
+					continue;
+				}
+				locations[count++] = i;
+			}
+			allowed[k] = Arrays.copyOf(locations, count);
+		}
+
+		//Suggestion constraints not already satisfied by a known card. Each one is only tracked while it is
+		//open (between its first and last candidate card), so bits are shared between constraints that never overlap.
+		long[][] satisfies = new long[numberUnknown][numberLocations];
+		long[] closing = new long[numberUnknown];
+		List<int[]> open = openConstraints(position, knownLocation, knowledge);
+		if (open == null) {
+			throw inconsistent();
+		}
+		long[] slotFreeAfter = new long[Long.SIZE];
+		int slotsUsed = 0;
+		for (int[] constraint : open) {
+			int player = constraint[0];
+			int first = constraint[1];
+			int last = constraint[constraint.length-1];
+			int slot = 0;
+			while (slot < slotsUsed && slotFreeAfter[slot] >= first) {
+				slot++;
+			}
+			if (slot == slotsUsed) {
+				if (slotsUsed == Long.SIZE - 1) {
+					throw tooLarge("Too many open suggestion constraints for exact solving");
+				}
+				slotsUsed++;
+			}
+			slotFreeAfter[slot] = last;
+			long bit = 1L << slot;
+			for (int i = 1; i < constraint.length; i++) {
+				satisfies[constraint[i]][player] |= bit;
+			}
+			closing[last] |= bit;
+		}
+		long maskRange = 1L << slotsUsed;
+		if (multiplyOrFail(range, maskRange) > maxStates) {
+			throw tooLarge("Game has too many states for exact solving");
+		}
+
+		//Forward pass: number of ways to place the first k unknown cards reaching each state
+		long start = 0;
+		for (int i = 0; i < numberLocations; i++) {
+			start += capacity[i]*radix[i];
+		}
+		StateTable[] forward = new StateTable[numberUnknown + 1];
+		forward[0] = new StateTable(1);
+		forward[0].add(start*maskRange, 1);
+		for (int k = 0; k < numberUnknown; k++) {
+			StateTable current = forward[k];
+			StateTable next = new StateTable(current.size()*2);
+			for (int slot = 0; slot < current.capacity(); slot++) {
+				long key = current.keyAt(slot);
+				if (key == StateTable.EMPTY) {
+					continue;
+				}
+				double ways = current.valueAt(slot);
+				for (int location : allowed[k]) {
+					long nextKey = transition(key, location, k, capacity, radix, maskRange, satisfies, closing);
+					if (nextKey != StateTable.EMPTY) {
+						next.add(nextKey, ways);
+					}
+				}
+			}
+			forward[k+1] = next;
+			statesCounted += next.size();
+			if (statesCounted > maxStatesCounted) {
+				throw tooLarge("Game has too many states for exact solving");
+			}
+		}
+
+		//All slots must be filled and all constraints satisfied once every card is placed
+		solutionCount = forward[numberUnknown].get(0);
+		if (solutionCount == 0) {
+			throw inconsistent();
+		}
+
+		//Backward pass: number of ways to complete the deal from each state, combined with the forward
+		//count to give the number of deals using each (card, location) transition
+		StateTable backward = new StateTable(1);
+		backward.add(0, 1);
+		for (int k = numberUnknown - 1; k >= 0; k--) {
+			StateTable current = forward[k];
+			StateTable previous = new StateTable(current.size());
+			int card = unknownCards[k];
+			for (int slot = 0; slot < current.capacity(); slot++) {
+				long key = current.keyAt(slot);
+				if (key == StateTable.EMPTY) {
+					continue;
+				}
+				double ways = current.valueAt(slot);
+				double completions = 0;
+				for (int location : allowed[k]) {
+					long nextKey = transition(key, location, k, capacity, radix, maskRange, satisfies, closing);
+					if (nextKey == StateTable.EMPTY) {
+						continue;
+					}
+					double remaining = backward.get(nextKey);
+					completions += remaining;
+					probabilities[card*numberLocations + location] += ways*remaining;
+				}
+				if (completions != 0) {
+					previous.add(key, completions);
+				}
+			}
+			backward = previous;
+			forward[k+1] = null;
+		}
+
+		for (int k = 0; k < numberUnknown; k++) {
+			int card = unknownCards[k];
+			for (int location : allowed[k]) {
+				probabilities[card*numberLocations + location] /= solutionCount;
+			}
+		}
+		return probabilities;
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * Converts the open suggestion constraints into constraints on unknown cards. Constraints already satisfied by a
+	 * known card are dropped and duplicates are merged.
+	 * @return list of {player, position of each candidate card...} sorted by first position, or null if a
+	 * constraint can no longer be satisfied
+	 */
+	private List<int[]> openConstraints(int[] position, int[] knownLocation, CardKnowledge knowledge) {
+		List<int[]> open = new ArrayList<int[]>();
+		HashSet<List<Integer>> seen = new HashSet<List<Integer>>();
+		SuggestionConstraints suggestions = data.getConstraints();
+		for (int s = 0; s < suggestions.size(); s++) {
+			if (suggestions.isSatisfied(s)) {
+				continue;
+			}
+			int player = suggestions.player(s);
+			boolean satisfied = false;
+			List<Integer> candidates = new ArrayList<Integer>();
+			candidates.add(player);
+			for (int i = 0; i < 3; i++) {
+				int card = suggestions.card(s, i);
+				if (knownLocation[card] == player) {
+					satisfied = true;
+				}
+				else if (knownLocation[card] == -1 && !knowledge.isRestricted(card, player)) {
+					candidates.add(position[card]);
+				}
+			}
+			if (satisfied || !seen.add(candidates)) {
+				continue;
+			}
+			if (candidates.size() == 1) {
+				return null;
+			}
+			int[] constraint = new int[candidates.size()];
+			for (int i = 0; i < constraint.length; i++) {
+				constraint[i] = candidates.get(i);
+			}
+			Arrays.sort(constraint, 1, constraint.length);
+			open.add(constraint);
+		}
+		open.sort((a, b) -> Integer.compare(a[1], b[1]));
+		return open;
+	}
+
+	/**
+	 * Places unknown card k in location, returning the resulting state or {@link StateTable#EMPTY} if the location
+	 * is full or a constraint closing at this card is left unsatisfied.
+	 */
+	private static long transition(long key, int location, int k, int[] capacity, long[] radix, long maskRange,
+			long[][] satisfies, long[] closing) {
+		long code = key / maskRange;
+		long mask = key % maskRange;
+		if ((code / radix[location]) % (capacity[location] + 1) == 0) {
+			return StateTable.EMPTY;
+		}
+		mask |= satisfies[k][location];
+		if ((mask & closing[k]) != closing[k]) {
+			return StateTable.EMPTY;
+		}
+		mask &= ~closing[k];
+		return (code - radix[location])*maskRange + mask;
+	}
+
+	private IllegalStateException inconsistent() {
+		solutionCount = 0;
+		return new IllegalStateException("No deal is consistent with the game state");
+	}
+
+	private IllegalStateException tooLarge(String message) {
+		tooLarge = true;
+		return new IllegalStateException(message);
+	}
+
+	private long multiplyOrFail(long a, long b) {
+		if (b != 0 && a > Long.MAX_VALUE / b) {
+			throw tooLarge("Game is too large for exact solving");
+		}
+		return a*b;
+	}
+
+	/**
+	 * Open addressing map from non-negative state keys to deal counts. Avoids boxing every state in a HashMap.
+	 */
+	private static class StateTable {
+		static final long EMPTY = -1;
+
+		private long[] keys;
+		private double[] values;
+		private int size;
+
+		StateTable(int expected) {
+			int tableSize = Integer.highestOneBit(Math.max(4, expected*2) - 1) << 1;
+			keys = new long[tableSize];
+			values = new double[tableSize];
+			Arrays.fill(keys, EMPTY);
+			size = 0;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int capacity() {
+			return keys.length;
+		}
+
+		long keyAt(int slot) {
+			return keys[slot];
+		}
+
+		double valueAt(int slot) {
+			return values[slot];
+		}
+
+		double get(long key) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (keys[slot] != EMPTY) {
+				if (keys[slot] == key) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return 0;
+		}
+
+		void add(long key, double value) {
+			if (2*(size + 1) > keys.length) {
+				grow();
+			}
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (keys[slot] != EMPTY) {
+				if (keys[slot] == key) {
+					values[slot] += value;
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = value;
+			size++;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			double[] oldValues = values;
+			keys = new long[oldKeys.length*2];
+			values = new double[oldValues.length*2];
+			Arrays.fill(keys, EMPTY);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					add(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -1,5 +1,18 @@
 package clue;
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Formatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Generates a WCSP Lyft input data from {@link ClueSolver} game data. Used to solve top k
@@ -9,6 +22,17 @@ import java.util.List;
  */
 public class ClueFileWriter {
 	
+	/**
+	 * Largest tuple matrix, in characters, kept in {@link #TUPLES_CACHE}.
+	 */
+	private static final int MAX_CACHED_TUPLES = 1 << 16;
+	
+	/**
+	 * Text of each mutual exclusion tuple matrix by number of columns, see {@link #createTuplesMatrix(Writer, int)}.
+	 * Never modified once added.
+	 */
+	private static final Map<Integer, char[]> TUPLES_CACHE = new ConcurrentHashMap<Integer, char[]>();
+	
 	private ClueSolver data;
 	int constraintCounter;
 	double globalMax;
@@ -24,201 +48,289 @@ public class ClueFileWriter {
 	 * @return
 	 */
 	public String getInputString() {
-		String stringBuilder = "";
-		stringBuilder += initializeVariables();
-		stringBuilder += oneEachLocation();
-		stringBuilder += caseFiles();
-		stringBuilder += suggestionConstraints();
-		//Rounding up global max to an int because Top K Solutions program requires an int
-		String max = Integer.toString((int) Math.ceil(globalMax));
-		max = max.replaceAll("\n", "");
-		stringBuilder = stringBuilder.replaceAll("-", max);
-		stringBuilder = prepend() + stringBuilder;
-		return stringBuilder;
+		StringWriter writer = new StringWriter();
+		try {
+			writeTo(writer);
+		} catch (IOException e) {
+			//StringWriter never throws
+			throw new UncheckedIOException(e);
+		}
+		return writer.toString();
 	}
 	
-	/*
-	 * ------------------------Private helper functions-------------------------------------------------
+	/**
+	 * Writes the full header and body of the data file to the given path, replacing any existing file.
+	 * @param path
+	 * @throws IOException
 	 */
+	public void writeTo(Path path) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writeTo(writer);
+		}
+	}
 	
 	/**
-	 * Returns the header to the input data file. Should be added last, as the header contains the global maximum
-	 * which can only be calculated after all constraints have been added.
-	 * @return
+	 * Writes the full header and body of the data file to the given stream. The stream is flushed but not closed.
+	 * @param out
+	 * @throws IOException
 	 */
-	private String prepend() {
-		int numberLocations = data.getNumberPlayers() + 3;
-		int numberCards = data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons();
-		//Rounding up global max to an int because Top K Solutions program requires an int
-		String stringBuilder = "ClueGame " + (numberLocations*numberCards) + " 2 " + constraintCounter + " " + (int) Math.ceil(globalMax) + "\n";
-		stringBuilder += "2";
-		for (int i = 0; i < ((numberLocations*numberCards)-1); i++) {
-			stringBuilder += " 2";
+	public void writeTo(OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		writeTo(writer);
+		writer.flush();
+	}
+	
+	/**
+	 * Streams the full header and body of the data file to the given writer in a single pass. Weights are computed
+	 * up front so the global maximum is known before the header is written, meaning no part of the file has to be
+	 * buffered. The writer is flushed but not closed.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(Writer out) throws IOException {
+		if (!ClueMetrics.isEnabled()) {
+			writeExport(out);
+			return;
 		}
-		stringBuilder += "\n";
-		return stringBuilder;
+		long start = System.nanoTime();
+		CountingWriter counter = new CountingWriter(out);
+		writeExport(counter);
+		ClueMetrics.EXPORT.record(System.nanoTime() - start);
+		ClueMetrics.EXPORT_CHARS.add(counter.getCount());
 	}
 	
+	/*
+	 * ------------------------Functions shared with IncrementalClueFileWriter-------------------------------------
+	 */
 	
 	/**
-	 * Initializes all variables where each variable represents one possible location for each of the cards.
-	 * @return
+	 * Writes the full header and body using already computed weights, with max as the cost of forbidden tuples.
+	 * @param out
+	 * @param weights from {@link #computeWeights()}
+	 * @param max global maximum, at least the sum of the highest weight of every variable
+	 * @throws IOException
 	 */
-	private String initializeVariables() {
-		String builder = "";
+	void writeModel(Writer out, double[] weights, String max) throws IOException {
+		constraintCounter = 0;
+		prepend(out, getTotalConstraints(), max);
 		
+		//"-" is a placeholder for the global maximum in the body of the file
+		Writer body = new MaxSubstitutingWriter(out, max);
+		initializeVariables(body, weights);
+		oneEachLocation(body);
+		caseFiles(body);
+		suggestionConstraints(body);
+		body.flush();
+	}
+	
+	/**
+	 * @return number of constraints in the full file
+	 */
+	int getTotalConstraints() {
+		int numberLocations = data.getNumberPlayers() + 3;
+		int numberCards = data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons();
+		//One constraint for each variable, one for each card, one for each case file slot and one per suggestion
+		return numberCards*numberLocations + numberCards + 3 + data.getConstraints().size();
+	}
+	
+	/**
+	 * Computes the {false, true} weight pair of every variable and sets the global maximum to their total.
+	 * @return weights indexed as [2*variable] for false and [2*variable + 1] for true
+	 */
+	double[] computeWeights() {
+		globalMax = 0;
 		int numberPlayers = data.getNumberPlayers();
-		int numberSuspects = data.getNumberSuspects();
-		int numberPlaces = data.getNumberPlaces();
-		int numberWeapons = data.getNumberWeapons();
 		int numberLocations = numberPlayers + 3;
-		int numberCards = numberSuspects + numberPlaces + numberWeapons;
+		int numberCards = data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons();
 		
+		double[] probabilities = data.getProbabilityMatrix();
+		double[] weights = new double[2*numberCards*numberLocations];
 		for (int i = 0; i < numberCards; i++) {
 			for (int j = 0; j < numberLocations; j++) {
-				String constraint = "";
-
-				double weightTrue = probToWeight(data.getProbability(i, data.getCardType(i), j));
-				double weightFalse = probToWeight(1 - data.getProbability(i, data.getCardType(i), j));
-				String wTrue = "";
-				String wFalse = "";
-				//"-" represent probability of 0 but needs to be replaced by global maximum after
-				//all constraints have been entered. 
-				if (weightTrue == -1) {
-					wTrue = "-\n";
-				}
-				else {
-					wTrue = String.format("%.5g%n", weightTrue);
-				}
-				if (weightFalse == -1) {
-					wFalse = "-\n";
-				}
-				else {
-					wFalse = String.format("%.5g%n", weightFalse);
-				}
+				double probability = probabilities[i*numberLocations + j];
+				double weightTrue = probToWeight(probability);
+				double weightFalse = probToWeight(1 - probability);
 				int cardNumber = i*numberLocations + j;
-				constraint += 1 + " " + cardNumber + " " + 0 + " " + 2 + "\n";
-				constraint += 0 + " " + wFalse;
-				constraint += 1 + " " +  wTrue;
-				
-				builder += constraint;
+				weights[2*cardNumber] = weightFalse;
+				weights[2*cardNumber + 1] = weightTrue;
 				globalMax += Math.max(weightTrue, weightFalse);
-				constraintCounter++;
 			}
 		}
-		return builder;
-		
+		return weights;
 	}
 	
 	/**
-	 * Adds constraint that each card must be in one and only one location. However, this location can be anywhere.
-	 * @return
+	 * Writes the unary constraint giving the weights of one variable. "-" is written for a probability of 0.
+	 * @param out
+	 * @param formatter formats onto out
+	 * @param weights from {@link #computeWeights()}
+	 * @param cardNumber variable
+	 * @throws IOException
 	 */
-	private String oneEachLocation() {
-		int numberPlayers = data.getNumberPlayers();
-		int numberSuspects = data.getNumberSuspects();
-		int numberPlaces = data.getNumberPlaces();
-		int numberWeapons = data.getNumberWeapons();
-		int numberLocations = numberPlayers + 3;
-		
-		String stringBuilder = "";
-		
-		for (int i = 0; i < numberSuspects; i++) {
-			stringBuilder += numberLocations;
-			for (int j = 0; j < numberLocations; j++) {
-				stringBuilder += " " + (i*numberLocations+j);
-			}
-			stringBuilder += " - " + numberLocations + "\n";
-			stringBuilder += createTuplesMatrix(numberLocations);
+	void writeVariable(Writer out, Formatter formatter, double[] weights, int cardNumber) throws IOException {
+		out.write("1 " + cardNumber + " 0 2\n");
+		out.write("0 ");
+		writeWeight(out, formatter, weights[2*cardNumber]);
+		out.write("1 ");
+		writeWeight(out, formatter, weights[2*cardNumber + 1]);
+	}
+	
+	/**
+	 * Writes the constraint that player holds at least one of the cards of a suggestion.
+	 * @param out
+	 * @param suggestion {player, suspect, place, weapon} packed by {@link GameStateFormat#pack(int, int, int, int)}
+	 * @throws IOException
+	 */
+	void writeSuggestion(Writer out, long suggestion) throws IOException {
+		int numberLocations = data.getNumberPlayers() + 3;
+		int player = GameStateFormat.unpackPlayer(suggestion);
+		int suspect = GameStateFormat.unpackCard(suggestion, 0);
+		int place = GameStateFormat.unpackCard(suggestion, 1);
+		int weapon = GameStateFormat.unpackCard(suggestion, 2);
+		out.write("3 " + (suspect*numberLocations+player) + " "
+				+ (place*numberLocations+player) + " " + (weapon*numberLocations+player)
+				+ " " + "0 1\n");
+		out.write("0 0 0 -\n");
+	}
+	
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+	
+	/**
+	 * Computes the weights and writes the whole file, for {@link #writeTo(Writer)}.
+	 */
+	private void writeExport(Writer out) throws IOException {
+		double[] weights = computeWeights();
+		//Rounding up global max to an int because Top K Solutions program requires an int
+		writeModel(out, weights, Integer.toString((int) Math.ceil(globalMax)));
+	}
+	
+	/**
+	 * Writes the header to the input data file. The header contains the global maximum, so all weights must be
+	 * computed before it is written.
+	 * @param out
+	 * @param totalConstraints
+	 * @param max
+	 * @throws IOException
+	 */
+	private void prepend(Writer out, int totalConstraints, String max) throws IOException {
+		int numberLocations = data.getNumberPlayers() + 3;
+		int numberCards = data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons();
+		out.write("ClueGame " + (numberLocations*numberCards) + " 2 " + totalConstraints + " " + max + "\n");
+		out.write("2");
+		for (int i = 0; i < ((numberLocations*numberCards)-1); i++) {
+			out.write(" 2");
+		}
+		out.write("\n");
+	}
+	
+	/**
+	 * Initializes all variables where each variable represents one possible location for each of the cards.
+	 * @param out
+	 * @param weights
+	 * @throws IOException
+	 */
+	private void initializeVariables(Writer out, double[] weights) throws IOException {
+		Formatter formatter = new Formatter(out);
+		int numberVariables = weights.length/2;
+		for (int cardNumber = 0; cardNumber < numberVariables; cardNumber++) {
+			writeVariable(out, formatter, weights, cardNumber);
 			constraintCounter++;
 		}
-		
-		for (int i = numberSuspects; i < numberSuspects + numberPlaces; i++) {
-			stringBuilder += numberLocations;
-			for (int j = 0; j < numberLocations; j++) {
-				stringBuilder += " " + (i*numberLocations+j);
+		formatter.flush();
+	}
+	
+	/**
+	 * Writes a single weight followed by a line break.
+	 * "-" represent probability of 0 and is replaced by the global maximum as it is written.
+	 */
+	private void writeWeight(Writer out, Formatter formatter, double weight) throws IOException {
+		if (weight == -1) {
+			out.write("-\n");
+		}
+		else {
+			formatter.format("%.5g%n", weight);
+			if (formatter.ioException() != null) {
+				throw formatter.ioException();
 			}
-			stringBuilder += " - " + numberLocations + "\n";
-			stringBuilder += createTuplesMatrix(numberLocations);
-			constraintCounter++;
 		}
+	}
+	
+	/**
+	 * Adds constraint that each card must be in one and only one location. However, this location can be anywhere.
+	 * @param out
+	 * @throws IOException
+	 */
+	private void oneEachLocation(Writer out) throws IOException {
+		int numberPlayers = data.getNumberPlayers();
+		int numberCards = data.getNumberSuspects() + data.getNumberPlaces() + data.getNumberWeapons();
+		int numberLocations = numberPlayers + 3;
 		
-		for (int i = numberSuspects+numberPlaces; i < numberSuspects+numberPlaces+numberWeapons; i++) {
-			stringBuilder += numberLocations;
+		StringBuilder header = new StringBuilder();
+		for (int i = 0; i < numberCards; i++) {
+			header.setLength(0);
+			header.append(numberLocations);
 			for (int j = 0; j < numberLocations; j++) {
-				stringBuilder += " " + (i*numberLocations+j);
+				header.append(' ').append(i*numberLocations+j);
 			}
-			stringBuilder += " - " + numberLocations + "\n";
-			stringBuilder += createTuplesMatrix(numberLocations);
+			header.append(" - ").append(numberLocations).append('\n');
+			out.append(header);
+			createTuplesMatrix(out, numberLocations);
 			constraintCounter++;
 		}
-		
-		return stringBuilder;
 	}
 	
 	/**
 	 * Adds constraints related to the case files. Each case file slot can only hold a specific type of card (Suspect,
 	 * Weapon, Place) and each slot must hold one and only card.
-	 * @return
+	 * @param out
+	 * @throws IOException
 	 */
-	private String caseFiles() {
+	private void caseFiles(Writer out) throws IOException {
 		int numberPlayers = data.getNumberPlayers();
 		int numberSuspects = data.getNumberSuspects();
 		int numberPlaces = data.getNumberPlaces();
 		int numberWeapons = data.getNumberWeapons();
 		int numberLocations = numberPlayers + 3;
 		
-		String stringBuilder = "";
-		stringBuilder += numberSuspects;
+		out.write(Integer.toString(numberSuspects));
 		for (int i = 0; i < numberSuspects; i++) {
-			stringBuilder += " " + (i*numberLocations+(numberLocations-3));
+			out.write(" " + (i*numberLocations+(numberLocations-3)));
 		}
-		stringBuilder += " - " + numberSuspects + "\n";
-		stringBuilder += createTuplesMatrix(numberSuspects);
+		out.write(" - " + numberSuspects + "\n");
+		createTuplesMatrix(out, numberSuspects);
 		constraintCounter++;
 		
-		stringBuilder += numberPlaces;
+		out.write(Integer.toString(numberPlaces));
 		for (int i = numberSuspects; i < numberSuspects + numberPlaces; i++) {
-			stringBuilder += " " + (i*numberLocations+(numberLocations-2));
+			out.write(" " + (i*numberLocations+(numberLocations-2)));
 		}
-		stringBuilder += " - " + numberPlaces + "\n";
-		stringBuilder += createTuplesMatrix(numberPlaces);
+		out.write(" - " + numberPlaces + "\n");
+		createTuplesMatrix(out, numberPlaces);
 		constraintCounter++;
 		
-		stringBuilder += numberWeapons;
+		out.write(Integer.toString(numberWeapons));
 		for (int i = numberSuspects + numberPlaces; i < numberSuspects + numberPlaces + numberWeapons; i++) {
-			stringBuilder += " " + (i*numberLocations+(numberLocations-1));
+			out.write(" " + (i*numberLocations+(numberLocations-1)));
 		}
-		stringBuilder += " - " + numberWeapons + "\n";
-		stringBuilder += createTuplesMatrix(numberWeapons);
+		out.write(" - " + numberWeapons + "\n");
+		createTuplesMatrix(out, numberWeapons);
 		constraintCounter++;
-		
-		return stringBuilder;
 	}
 	
 	/**
 	 * Converts suggestion information into constraints, i.e. whenever a player passes
 	 * on a suggestion they must not hold any of three cards from the suggestion
-	 * @return
+	 * @param out
+	 * @throws IOException
 	 */
-	private String suggestionConstraints() {
-		List<List<Integer>> suggestions = data.getSuggestionConstraints();
-		int numberLocations = data.getNumberPlayers() + 3;
-
-		String stringBuilder = "";
-		for (int i = 0; i < suggestions.size(); i++) {
-			int player = suggestions.get(i).get(0);
-			int suspect = suggestions.get(i).get(1);
-			int place = suggestions.get(i).get(2);
-			int weapon = suggestions.get(i).get(3);
-			stringBuilder += "3 " + (suspect*numberLocations+player) + " "
-					+ (place*numberLocations+player) + " " + (weapon*numberLocations+player)
-					+ " " + "0 1\n";
-			stringBuilder += "0 0 0 -\n";
+	private void suggestionConstraints(Writer out) throws IOException {
+		SuggestionConstraints constraints = data.getConstraints();
+		for (int i = 0; i < constraints.size(); i++) {
+			writeSuggestion(out, constraints.get(i));
 			constraintCounter++;
 		}
-		
-		return stringBuilder;
 	}
 
 // This section of code currently unused
@@ -237,23 +349,130 @@ public class ClueFileWriter {
 	 * tuples have a weight of 0, and all other tuples should
 	 * be defaulted to global maximum or a large number in constraint
 	 * header.
+	 * <p>
+	 * The text only depends on the number of columns, so blocks up to {@link #MAX_CACHED_TUPLES} characters are built
+	 * once and shared by every export. Larger blocks are written a row at a time from one reused row.
+	 * @param out
 	 * @param columns
-	 * @return
+	 * @throws IOException
 	 */
-	private String createTuplesMatrix(int columns) {
-		String stringBuilder = "";
-		for (int i = 0; i < columns; i++) {
-			for (int j = 0; j < columns; j++) {
-				if (i == j) {
-					stringBuilder += "1 ";
+	private void createTuplesMatrix(Writer out, int columns) throws IOException {
+		int rowLength = 2*columns + 2;
+		if ((long) rowLength*columns <= MAX_CACHED_TUPLES) {
+			char[] block = TUPLES_CACHE.get(columns);
+			if (block == null) {
+				block = new char[rowLength*columns];
+				for (int i = 0; i < columns; i++) {
+					fillTuplesRow(block, i*rowLength, columns, i);
 				}
-				else {
-					stringBuilder += "0 ";
+				TUPLES_CACHE.putIfAbsent(columns, block);
+			}
+			out.write(block);
+		}
+		else {
+			char[] row = new char[rowLength];
+			fillTuplesRow(row, 0, columns, -1);
+			for (int i = 0; i < columns; i++) {
+				row[2*i] = '1';
+				out.write(row);
+				row[2*i] = '0';
+			}
+		}
+	}
+	
+	/**
+	 * Writes the tuple "0 0 ... 1 ... 0 0\n" with the 1 at position one (none if -1) into buffer at offset.
+	 */
+	private static void fillTuplesRow(char[] buffer, int offset, int columns, int one) {
+		for (int j = 0; j <= columns; j++) {
+			buffer[offset + 2*j] = (j == one) ? '1' : '0';
+			buffer[offset + 2*j + 1] = ' ';
+		}
+		buffer[offset + 2*columns + 1] = '\n';
+	}
+	
+	/**
+	 * Writer which replaces every "-" placeholder with the global maximum as text passes through. Equivalent to
+	 * running replaceAll("-", max) over the finished body, without holding the body in memory.
+	 */
+	static class MaxSubstitutingWriter extends FilterWriter {
+		private final String max;
+		
+		MaxSubstitutingWriter(Writer out, String max) {
+			super(out);
+			this.max = max;
+		}
+		
+		@Override
+		public void write(int c) throws IOException {
+			if (c == '-') {
+				out.write(max);
+			}
+			else {
+				out.write(c);
+			}
+		}
+		
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			int start = off;
+			int end = off + len;
+			for (int i = off; i < end; i++) {
+				if (cbuf[i] == '-') {
+					out.write(cbuf, start, i - start);
+					out.write(max);
+					start = i + 1;
 				}
 			}
-			stringBuilder += "0\n";
+			out.write(cbuf, start, end - start);
+		}
+		
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			int start = off;
+			int end = off + len;
+			int dash = str.indexOf('-', start);
+			while (dash != -1 && dash < end) {
+				out.write(str, start, dash - start);
+				out.write(max);
+				start = dash + 1;
+				dash = str.indexOf('-', start);
+			}
+			out.write(str, start, end - start);
+		}
+	}
+	
+	/**
+	 * Writer which counts the characters passing through it, for {@link ClueMetrics}.
+	 */
+	static class CountingWriter extends FilterWriter {
+		private long count;
+		
+		CountingWriter(Writer out) {
+			super(out);
+		}
+		
+		long getCount() {
+			return count;
+		}
+		
+		@Override
+		public void write(int c) throws IOException {
+			out.write(c);
+			count++;
+		}
+		
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			out.write(cbuf, off, len);
+			count += len;
+		}
+		
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			out.write(str, off, len);
+			count += len;
 		}
-		return stringBuilder;
 	}
 	
 	/**
@@ -0,0 +1,322 @@
+package clue;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and histograms for the hot paths of {@link ClueSolver} and {@link ClueFileWriter}, for finding
+ * regressions and sizing capacity. Collection is off by default; while it is off each instrumented call costs one
+ * read of a flag. Metrics can be written as JSON or in the Prometheus text format (see {@link ClueServer}'s
+ * {@code /metrics/prometheus}).
+ * <p>
+ * Every metric is safe to update from any number of threads at once without locking. Other code can register its
+ * own metrics with {@link #counter(String, String)} and {@link #histogram(String, String, boolean)}.
+ */
+public final class ClueMetrics {
+
+	private static final Map<String, Metric> METRICS = new LinkedHashMap<String, Metric>();
+	private static volatile boolean enabled;
+
+	static final Counter SUGGESTIONS = counter("clue_suggestions_total", "Suggestions made by Player 1 and bots");
+	static final Counter DEDUCTIONS = counter("clue_deductions_total", "Facts deduced by knowledge propagation");
+	static final Histogram PROPAGATION = histogram("clue_propagation_seconds",
+			"Time to propagate what was learned from an event", true);
+	static final Histogram PROBABILITY = histogram("clue_probability_matrix_seconds",
+			"Time to recompute the probability matrix", true);
+	static final Histogram EXPORT = histogram("clue_export_seconds", "Time to write a full WCSP file", true);
+	static final Histogram DELTA_EXPORT = histogram("clue_export_delta_seconds",
+			"Time of each IncrementalClueFileWriter export, delta or full", true);
+	static final Counter EXPORT_CHARS = counter("clue_export_chars_total",
+			"Characters of WCSP files and deltas written");
+
+	private ClueMetrics() {
+	}
+
+	/**
+	 * @param enabled true to start collecting metrics, false to stop. Values already collected are kept.
+	 */
+	public static void setEnabled(boolean enabled) {
+		ClueMetrics.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param name Prometheus metric name, conventionally ending in _total
+	 * @param help one line description
+	 * @return the counter with this name, registering it if it is new
+	 */
+	public static Counter counter(String name, String help) {
+		return (Counter) register(name, new Counter(name, help));
+	}
+
+	/**
+	 * @param name Prometheus metric name
+	 * @param help one line description
+	 * @param timer true if values are durations in nanoseconds, which are reported in seconds
+	 * @return the histogram with this name, registering it if it is new
+	 */
+	public static Histogram histogram(String name, String help, boolean timer) {
+		return (Histogram) register(name, new Histogram(name, help, timer));
+	}
+
+	/**
+	 * Sets every metric back to zero.
+	 */
+	public static void reset() {
+		for (Metric metric : metrics()) {
+			metric.reset();
+		}
+	}
+
+	/**
+	 * @return every metric as one JSON object keyed by name
+	 */
+	public static String getJson() {
+		StringWriter out = new StringWriter();
+		try {
+			writeJson(out);
+		} catch (IOException e) {
+			//StringWriter never throws
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	public static void writeJson(Writer out) throws IOException {
+		out.write("{");
+		boolean first = true;
+		for (Metric metric : metrics()) {
+			out.write(first ? "\n" : ",\n");
+			out.write("  \"" + metric.name + "\": ");
+			metric.writeJson(out);
+			first = false;
+		}
+		out.write("\n}\n");
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text exposition format. Histograms are written as summaries with the
+	 * 0.5, 0.9 and 0.99 quantiles.
+	 */
+	public static void writePrometheus(Writer out) throws IOException {
+		for (Metric metric : metrics()) {
+			metric.writePrometheus(out);
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static synchronized Metric register(String name, Metric metric) {
+		Metric existing = METRICS.get(name);
+		if (existing == null) {
+			METRICS.put(name, metric);
+			return metric;
+		}
+		if (existing.getClass() != metric.getClass()) {
+			throw new IllegalArgumentException("Metric " + name + " is already registered as another type");
+		}
+		return existing;
+	}
+
+	private static synchronized List<Metric> metrics() {
+		return new ArrayList<Metric>(METRICS.values());
+	}
+
+	private static String number(double value) {
+		return String.format(Locale.ROOT, "%.9g", value);
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	abstract static class Metric {
+		final String name;
+		final String help;
+
+		Metric(String name, String help) {
+			this.name = name;
+			this.help = help;
+		}
+
+		abstract void reset();
+
+		abstract void writeJson(Writer out) throws IOException;
+
+		abstract void writePrometheus(Writer out) throws IOException;
+	}
+
+	/**
+	 * Count which only goes up.
+	 */
+	public static final class Counter extends Metric {
+		private final LongAdder count = new LongAdder();
+
+		private Counter(String name, String help) {
+			super(name, help);
+		}
+
+		public void increment() {
+			count.increment();
+		}
+
+		public void add(long amount) {
+			count.add(amount);
+		}
+
+		public long get() {
+			return count.sum();
+		}
+
+		@Override
+		void reset() {
+			count.reset();
+		}
+
+		@Override
+		void writeJson(Writer out) throws IOException {
+			out.write("{\"type\": \"counter\", \"value\": " + get() + "}");
+		}
+
+		@Override
+		void writePrometheus(Writer out) throws IOException {
+			out.write("# HELP " + name + " " + help + "\n# TYPE " + name + " counter\n" + name + " " + get() + "\n");
+		}
+	}
+
+	/**
+	 * Distribution of non-negative values, counted in buckets which are exact below 8 and then split each power of
+	 * two into 8, so a bucket is at most 12.5% wider than its lower bound. Recording is a few atomic additions,
+	 * with no locking.
+	 */
+	public static final class Histogram extends Metric {
+		private static final int SUB_BUCKETS = 8;
+		private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+		private final boolean timer;
+		private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS*(Long.SIZE - 2));
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		private Histogram(String name, String help, boolean timer) {
+			super(name, help);
+			this.timer = timer;
+		}
+
+		/**
+		 * @param value in nanoseconds if this is a timer; negative values are recorded as 0
+		 */
+		public void record(long value) {
+			value = Math.max(0, value);
+			counts.incrementAndGet(bucket(value));
+			count.increment();
+			sum.add(value);
+			long previous;
+			while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {
+			}
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getSum() {
+			return sum.sum();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * @param fraction between 0 and 1
+		 * @return upper bound of the bucket holding the given fraction of recorded values, or 0 if there are none
+		 */
+		public long getPercentile(double fraction) {
+			long total = 0;
+			long[] snapshot = new long[counts.length()];
+			for (int i = 0; i < snapshot.length; i++) {
+				snapshot[i] = counts.get(i);
+				total += snapshot[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction*total));
+			long seen = 0;
+			for (int i = 0; i < snapshot.length; i++) {
+				seen += snapshot[i];
+				if (seen >= rank) {
+					return Math.min(upperBound(i), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		@Override
+		void reset() {
+			for (int i = 0; i < counts.length(); i++) {
+				counts.set(i, 0);
+			}
+			count.reset();
+			sum.reset();
+			max.set(0);
+		}
+
+		@Override
+		void writeJson(Writer out) throws IOException {
+			out.write("{\"type\": \"" + (timer ? "timer" : "histogram") + "\", \"count\": " + getCount() + ", \"sum\": "
+					+ number(scale(getSum())));
+			for (double quantile : QUANTILES) {
+				out.write(", \"p" + Math.round(quantile*100) + "\": " + number(scale(getPercentile(quantile))));
+			}
+			out.write(", \"max\": " + number(scale(getMax())) + (timer ? ", \"unit\": \"seconds\"}" : "}"));
+		}
+
+		@Override
+		void writePrometheus(Writer out) throws IOException {
+			out.write("# HELP " + name + " " + help + "\n# TYPE " + name + " summary\n");
+			for (double quantile : QUANTILES) {
+				out.write(name + "{quantile=\"" + quantile + "\"} " + number(scale(getPercentile(quantile))) + "\n");
+			}
+			out.write(name + "_sum " + number(scale(getSum())) + "\n" + name + "_count " + getCount() + "\n");
+		}
+
+		private double scale(long value) {
+			return timer ? value/1e9 : value;
+		}
+
+		private static int bucket(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+			return SUB_BUCKETS*(exponent - 2) + sub;
+		}
+
+		private static long upperBound(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			int exponent = bucket/SUB_BUCKETS + 2;
+			long sub = bucket % SUB_BUCKETS;
+			return ((SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+		}
+	}
+}
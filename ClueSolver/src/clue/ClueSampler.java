@@ -0,0 +1,744 @@
+package clue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the probability of every card being in every location from {@link ClueSolver} game data by sampling
+ * deals consistent with the game state. Unlike {@link ClueExactSolver}, the cost depends on the sample budget rather
+ * than the size of the deck, so it can be used for custom games with hundreds of cards.
+ * <p>
+ * Each worker runs an independent Markov chain over consistent deals. A step proposes swapping the locations of two
+ * unknown cards (or rotating three), and is accepted if the resulting deal is still consistent, so every consistent
+ * deal is equally likely in the long run. Chains run in parallel and the spread of their estimates gives the confidence
+ * interval. Callers which are already parallel, such as the workers of {@link ClueSimulation}, {@link ClueTournament}
+ * and {@link ClueServer}, run the chains on their own thread by default, so the cores are not split further.
+ * <p>
+ * A time limit covers everything, including finding each chain's first deal and discarding its early samples, so
+ * calls return within it however large the deck, with no samples if the deck is too large to start sampling in time.
+ * A step limit (see {@link #setMaxSteps(long)}) bounds the work instead of the time, so that a sampler given a seeded
+ * generator and no time limit draws the same samples on every machine and every run.
+ */
+public class ClueSampler {
+
+	/**
+	 * z value of the reported confidence interval (95%).
+	 */
+	private static final double Z = 1.96;
+	
+	/**
+	 * Number of independent chains without a time limit, so the spread between their estimates is itself reliable.
+	 * It does not depend on the number of threads, so neither do the samples.
+	 */
+	private static final int CHAINS = 16;
+
+	/**
+	 * Steps each chain takes to discard its early samples, which still depend on its first deal, in units of the steps
+	 * between two samples.
+	 */
+	private static final int BURN_IN = 25;
+
+	/**
+	 * True on threads made by {@link #callerThreads(String)}.
+	 */
+	private static final ThreadLocal<Boolean> PARALLEL_CALLER = ThreadLocal.withInitial(() -> false);
+
+	/**
+	 * Worker threads shared by every sampler and by {@link SuggestionRecommender}, so a call does not pay for starting
+	 * threads. There is one per core however many calls run at once, and work beyond that waits its turn. Threads are
+	 * daemons and end after a minute without work. They are made by {@link #callerThreads(String)}, so anything
+	 * sampled from a task already running here stays on that task's thread instead of waiting on the same pool.
+	 */
+	static final ExecutorService WORKERS;
+	static {
+		int cores = Runtime.getRuntime().availableProcessors();
+		ThreadFactory threads = callerThreads("clue-sampler");
+		ThreadPoolExecutor workers = new ThreadPoolExecutor(cores, cores, 1, TimeUnit.MINUTES,
+				new LinkedBlockingQueue<Runnable>(), task -> {
+					Thread thread = threads.newThread(task);
+					thread.setDaemon(true);
+					return thread;
+				});
+		workers.allowCoreThreadTimeOut(true);
+		WORKERS = workers;
+	}
+
+	private ClueSolver data;
+	private SplittableRandom rand;
+	private int threads;
+	private long maxSteps;
+
+	public ClueSampler(ClueSolver data) {
+		this(data, new SplittableRandom());
+	}
+
+	/**
+	 * @param data
+	 * @param rand source of randomness, split into one generator per chain
+	 */
+	public ClueSampler(ClueSolver data, SplittableRandom rand) {
+		this.data = data;
+		this.rand = rand;
+		this.threads = defaultThreads();
+		this.maxSteps = Long.MAX_VALUE;
+	}
+
+	/**
+	 * @param threads number of worker threads used by {@link #sample(long, long)}, defaults to
+	 * {@link #defaultThreads()}
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Must use at least 1 thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Bounds the steps taken by each call across all chains, counting the repairs that find each chain's first deal
+	 * and the steps discarding its early samples, so the work of a call does not depend on how fast the machine is.
+	 * Calls where this leaves a chain too few steps to discard its early samples and take one sample, which happens
+	 * when there are too many unknown cards, sample nothing without taking any step.
+	 * @param maxSteps defaults to no limit
+	 */
+	public void setMaxSteps(long maxSteps) {
+		if (maxSteps < 1) {
+			throw new IllegalArgumentException("Must allow at least 1 step");
+		}
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * Samples consistent deals until either budget runs out. The game state is read once up front, so the game must
+	 * not be changed while this call is running.
+	 * @param maxSamples maximum number of deals to sample across all workers
+	 * @param timeLimitMillis maximum time to spend, including finding a first consistent deal, or 0 for no limit
+	 * @return estimated probabilities with confidence intervals
+	 * @throws IllegalStateException if no consistent deal can be found, or none was sampled within the time or step
+	 * limit
+	 */
+	public Estimate sample(long maxSamples, long timeLimitMillis) {
+		Estimate estimate = trySample(maxSamples, timeLimitMillis);
+		if (estimate == null) {
+			throw new IllegalStateException("Sample budget too small to draw any deals");
+		}
+		return estimate;
+	}
+
+	/**
+	 * Same as {@link #sample(long, long)}, for callers with a fallback when the deck is too large to sample in time.
+	 * @return estimated probabilities, or null if no deal was sampled within the time or step limit
+	 * @throws IllegalStateException if no consistent deal can be found
+	 */
+	Estimate trySample(long maxSamples, long timeLimitMillis) {
+		long deadline = deadline(timeLimitMillis);
+		Problem problem = new Problem(data);
+		int chains = chains(timeLimitMillis);
+		if (!canSample(problem, chains)) {
+			return null;
+		}
+		Chain[] run = new Chain[chains];
+		for (int i = 0; i < chains; i++) {
+			long chainSamples = maxSamples/chains + (i < maxSamples%chains ? 1 : 0);
+			run[i] = new Chain(problem, rand.split(), chainSamples, maxSteps/chains, deadline, null);
+		}
+		return problem.estimate(runChains(run));
+	}
+
+	/**
+	 * Draws whole consistent deals rather than counting them, for callers which need to know how cards are placed
+	 * together, e.g. to predict how a suggestion will be answered. The game must not be changed while this call is
+	 * running.
+	 * @param maxDeals maximum number of deals to draw across all workers
+	 * @param timeLimitMillis maximum time to spend, including finding a first consistent deal, or 0 for no limit
+	 * @return deals drawn, each giving the location of every card (known or not). Empty if the time or step limit ran
+	 * out before any deal was drawn.
+	 * @throws IllegalStateException if no consistent deal can be found
+	 */
+	public int[][] drawDeals(int maxDeals, long timeLimitMillis) {
+		long deadline = deadline(timeLimitMillis);
+		Problem problem = new Problem(data);
+		int chains = chains(timeLimitMillis);
+		if (!canSample(problem, chains)) {
+			return new int[0][];
+		}
+		Chain[] run = new Chain[chains];
+		int[][][] chainDeals = new int[chains][][];
+		for (int i = 0; i < chains; i++) {
+			chainDeals[i] = new int[maxDeals/chains + (i < maxDeals%chains ? 1 : 0)][];
+			run[i] = new Chain(problem, rand.split(), chainDeals[i].length, maxSteps/chains, deadline, chainDeals[i]);
+		}
+		long[][] counts = runChains(run);
+		int total = 0;
+		for (long[] chainCounts : counts) {
+			total += chainCounts[chainCounts.length - 1];
+		}
+		int[][] deals = new int[total][];
+		int next = 0;
+		for (int i = 0; i < chains; i++) {
+			int drawn = (int) counts[i][counts[i].length - 1];
+			System.arraycopy(chainDeals[i], 0, deals, next, drawn);
+			next += drawn;
+		}
+		return deals;
+	}
+
+	/**
+	 * Result of {@link ClueSampler#sample(long, long)}. Arrays are indexed the same way as
+	 * {@link ClueSolver#getProbabilityMatrix()}.
+	 */
+	public static class Estimate {
+		private final double[] probabilities;
+		private final double[] confidence;
+		private final long samples;
+
+		Estimate(double[] probabilities, double[] confidence, long samples) {
+			this.probabilities = probabilities;
+			this.confidence = confidence;
+			this.samples = samples;
+		}
+
+		/**
+		 * @return estimated probability of every card being in every location
+		 */
+		public double[] getProbabilities() {
+			return probabilities;
+		}
+
+		/**
+		 * @return half width of the 95% confidence interval around each probability
+		 */
+		public double[] getConfidence() {
+			return confidence;
+		}
+
+		/**
+		 * @return number of deals sampled
+		 */
+		public long getSamples() {
+			return samples;
+		}
+	}
+
+	/**
+	 * @return number of threads samplers and {@link SuggestionRecommender} use unless told otherwise when created on
+	 * the current thread: 1 on a thread of a caller which already runs one task per core, i.e. one made by
+	 * {@link #callerThreads(String)} or in a fork-join pool, and the number of cores otherwise
+	 */
+	static int defaultThreads() {
+		if (PARALLEL_CALLER.get() || ForkJoinTask.inForkJoinPool()) {
+			return 1;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return factory for the worker threads of a caller which runs its own tasks in parallel, on which samplers
+	 * default to a single thread
+	 */
+	static ThreadFactory callerThreads(String name) {
+		return task -> new Thread(() -> {
+			PARALLEL_CALLER.set(true);
+			task.run();
+		}, name);
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static long deadline(long timeLimitMillis) {
+		if (timeLimitMillis < 0) {
+			throw new IllegalArgumentException("Time limit must not be negative");
+		}
+		return timeLimitMillis == 0 ? Long.MAX_VALUE : System.nanoTime() + timeLimitMillis*1000000L;
+	}
+
+	/**
+	 * @return number of chains to run. Without a time limit there are {@link #CHAINS}, so the spread between them is
+	 * reliable; with one there is a chain per thread, since chains sharing a thread run one after another and each has
+	 * to find a first deal and burn in before it samples anything.
+	 */
+	private int chains(long timeLimitMillis) {
+		return timeLimitMillis == 0 ? CHAINS : threads;
+	}
+
+	/**
+	 * @return false if {@link #maxSteps} leaves each chain too few steps to burn in and take one sample
+	 */
+	private boolean canSample(Problem problem, int chains) {
+		return maxSteps/chains >= (BURN_IN + 1L)*problem.stepsPerSample();
+	}
+
+	/**
+	 * Runs the chains on up to {@link #threads} of the shared {@link #WORKERS}, each worker running its share of the
+	 * chains in turn, or on the calling thread if there is only one.
+	 * @return the result of each chain's {@link Chain#run()}
+	 */
+	private long[][] runChains(Chain[] chains) {
+		int workers = Math.min(threads, chains.length);
+		long[][] counts = new long[chains.length][];
+		if (workers == 1) {
+			for (int i = 0; i < chains.length; i++) {
+				counts[i] = chains[i].run();
+			}
+			return counts;
+		}
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		try {
+			for (int w = 0; w < workers; w++) {
+				int first = w;
+				results.add(WORKERS.submit(() -> {
+					for (int i = first; i < chains.length; i += workers) {
+						counts[i] = chains[i].run();
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+			return counts;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sampling", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<?> result : results) {
+				result.cancel(true);
+			}
+		}
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	/**
+	 * Snapshot of the game state in the form used by the chains. Only unknown cards are sampled.
+	 */
+	private static class Problem {
+		final int numberLocations;
+		final int numberCards;
+		final int[] knownLocation;
+		final int[] unknownCards;
+		final int[] capacity;
+		/** Bit mask of allowed locations for each unknown card */
+		final long[] allowed;
+		/** Constraints as {player, position of each candidate card...} */
+		final int[][] constraints;
+		/** For each unknown card, indexes into constraints */
+		final int[][] constraintsByCard;
+
+		Problem(ClueSolver data) {
+			CardKnowledge knowledge = data.getKnowledge();
+			numberLocations = knowledge.getNumberLocations();
+			numberCards = knowledge.getNumberCards();
+			knownLocation = new int[numberCards];
+			int[] position = new int[numberCards];
+			int numberUnknown = 0;
+			for (int card = 0; card < numberCards; card++) {
+				knownLocation[card] = knowledge.getKnownLocation(card);
+				position[card] = (knownLocation[card] == -1) ? numberUnknown++ : -1;
+			}
+			unknownCards = new int[numberUnknown];
+			allowed = new long[numberUnknown];
+			for (int card = 0; card < numberCards; card++) {
+				if (position[card] != -1) {
+					unknownCards[position[card]] = card;
+					allowed[position[card]] = knowledge.getPossibleLocations(card);
+				}
+			}
+			capacity = new int[numberLocations];
+			for (int i = 0; i < numberLocations; i++) {
+				capacity[i] = knowledge.getFreeSlots(i);
+			}
+
+			List<int[]> open = new ArrayList<int[]>();
+			SuggestionConstraints suggestions = data.getConstraints();
+			for (int s = 0; s < suggestions.size(); s++) {
+				if (suggestions.isSatisfied(s)) {
+					continue;
+				}
+				int player = suggestions.player(s);
+				int[] constraint = new int[4];
+				constraint[0] = player;
+				int length = 1;
+				boolean satisfied = false;
+				for (int i = 0; i < 3; i++) {
+					int card = suggestions.card(s, i);
+					if (knownLocation[card] == player) {
+						satisfied = true;
+					}
+					else if (position[card] != -1 && (allowed[position[card]] & (1L << player)) != 0) {
+						constraint[length++] = position[card];
+					}
+				}
+				if (!satisfied) {
+					if (length == 1) {
+						throw new IllegalStateException("No deal is consistent with the game state");
+					}
+					int[] trimmed = new int[length];
+					System.arraycopy(constraint, 0, trimmed, 0, length);
+					open.add(trimmed);
+				}
+			}
+			constraints = open.toArray(new int[open.size()][]);
+
+			int[] count = new int[numberUnknown];
+			for (int[] constraint : constraints) {
+				for (int i = 1; i < constraint.length; i++) {
+					count[constraint[i]]++;
+				}
+			}
+			constraintsByCard = new int[numberUnknown][];
+			for (int k = 0; k < numberUnknown; k++) {
+				constraintsByCard[k] = new int[count[k]];
+				count[k] = 0;
+			}
+			for (int c = 0; c < constraints.length; c++) {
+				for (int i = 1; i < constraints[c].length; i++) {
+					int k = constraints[c][i];
+					constraintsByCard[k][count[k]++] = c;
+				}
+			}
+		}
+
+		/**
+		 * @return steps taken between two samples, enough for every card to have had several chances to move
+		 */
+		int stepsPerSample() {
+			return Math.max(1, 4*unknownCards.length);
+		}
+
+		/**
+		 * Combines the (card, location) counts of every chain into probabilities and confidence intervals.
+		 * @return the estimate, or null if no chain sampled anything
+		 */
+		Estimate estimate(long[][] counts) {
+			int size = numberCards*numberLocations;
+			double[] probabilities = new double[size];
+			double[] confidence = new double[size];
+			long samples = 0;
+			int chains = 0;
+			for (long[] chainCounts : counts) {
+				if (chainCounts[size] > 0) {
+					samples += chainCounts[size];
+					chains++;
+				}
+			}
+			for (int card = 0; card < numberCards; card++) {
+				if (knownLocation[card] != -1) {
+					probabilities[card*numberLocations + knownLocation[card]] = 1;
+				}
+			}
+			if (samples == 0) {
+				return null;
+			}
+			for (int k = 0; k < unknownCards.length; k++) {
+				int offset = unknownCards[k]*numberLocations;
+				for (int location = 0; location < numberLocations; location++) {
+					if ((allowed[k] & (1L << location)) == 0) {
+						continue;
+					}
+					double total = 0;
+					for (long[] chainCounts : counts) {
+						total += chainCounts[offset + location];
+					}
+					double mean = total/samples;
+					//Spread between chain estimates, which accounts for correlation between samples of one chain
+					double variance = 0;
+					for (long[] chainCounts : counts) {
+						long chainSamples = chainCounts[size];
+						if (chainSamples > 0) {
+							double difference = ((double) chainCounts[offset + location])/chainSamples - mean;
+							variance += difference*difference;
+						}
+					}
+					probabilities[offset + location] = mean;
+					if (chains > 1) {
+						confidence[offset + location] = Z*Math.sqrt(variance/(chains - 1)/chains);
+					}
+					else {
+						confidence[offset + location] = Z*Math.sqrt(mean*(1 - mean)/samples);
+					}
+				}
+			}
+			return new Estimate(probabilities, confidence, samples);
+		}
+	}
+
+	/**
+	 * One Markov chain over consistent deals, run on a single worker thread.
+	 */
+	private static class Chain {
+		/** Probability of accepting a repair step that adds a violation, to avoid getting stuck */
+		private static final double UPHILL = 0.05;
+
+		private final Problem problem;
+		private final SplittableRandom rand;
+		private final long maxSamples;
+		private final long maxSteps;
+		private final long deadline;
+		/** Steps and repairs taken so far */
+		private long steps;
+		/** Current location of each unknown card */
+		private final int[] location;
+		/** If not null, every sampled deal is stored here instead of being counted */
+		private final int[][] deals;
+
+		Chain(Problem problem, SplittableRandom rand, long maxSamples, long maxSteps, long deadline, int[][] deals) {
+			this.problem = problem;
+			this.rand = rand;
+			this.maxSamples = maxSamples;
+			this.maxSteps = maxSteps;
+			this.deadline = deadline;
+			this.location = new int[problem.unknownCards.length];
+			this.deals = deals;
+		}
+
+		/**
+		 * @return number of samples placing each card in each location (all zero when storing deals), followed by the
+		 * number of samples
+		 */
+		long[] run() {
+			int numberLocations = problem.numberLocations;
+			long[] counts = new long[problem.numberCards*numberLocations + 1];
+			int numberUnknown = location.length;
+			if (maxSamples == 0 || !findConsistentDeal()) {
+				return counts;
+			}
+
+			int stepsPerSample = problem.stepsPerSample();
+			//Discard early samples which still depend on the starting deal
+			for (int i = 0; i < BURN_IN; i++) {
+				if (isOutOfTime() || steps + stepsPerSample > maxSteps) {
+					return counts;
+				}
+				for (int j = 0; j < stepsPerSample; j++) {
+					step();
+				}
+			}
+			long samples = 0;
+			while (samples < maxSamples && !isOutOfTime() && steps + stepsPerSample <= maxSteps) {
+				for (int i = 0; i < stepsPerSample; i++) {
+					step();
+				}
+				if (deals != null) {
+					int[] deal = problem.knownLocation.clone();
+					for (int k = 0; k < numberUnknown; k++) {
+						deal[problem.unknownCards[k]] = location[k];
+					}
+					deals[(int) samples] = deal;
+				}
+				else {
+					for (int k = 0; k < numberUnknown; k++) {
+						counts[problem.unknownCards[k]*numberLocations + location[k]]++;
+					}
+				}
+				samples++;
+			}
+			counts[counts.length - 1] = samples;
+			return counts;
+		}
+
+		/**
+		 * Proposes either swapping two unknown cards or rotating three, keeping the move only if the deal stays
+		 * consistent. Rotations connect deals that no single swap can reach without breaking a constraint.
+		 */
+		private void step() {
+			steps++;
+			int numberUnknown = location.length;
+			if (numberUnknown < 2) {
+				return;
+			}
+			int a = rand.nextInt(numberUnknown);
+			int b = rand.nextInt(numberUnknown);
+			int locationA = location[a];
+			int locationB = location[b];
+			if (numberUnknown > 2 && rand.nextBoolean()) {
+				int c = rand.nextInt(numberUnknown);
+				int locationC = location[c];
+				if (a == b || b == c || a == c || !isAllowed(a, locationB) || !isAllowed(b, locationC)
+						|| !isAllowed(c, locationA)) {
+					return;
+				}
+				location[a] = locationB;
+				location[b] = locationC;
+				location[c] = locationA;
+				if (unsatisfied(a) > 0 || unsatisfied(b) > 0 || unsatisfied(c) > 0) {
+					location[a] = locationA;
+					location[b] = locationB;
+					location[c] = locationC;
+				}
+				return;
+			}
+			if (locationA == locationB || !isAllowed(a, locationB) || !isAllowed(b, locationA)) {
+				return;
+			}
+			location[a] = locationB;
+			location[b] = locationA;
+			if (unsatisfied(a) > 0 || unsatisfied(b) > 0) {
+				location[a] = locationA;
+				location[b] = locationB;
+			}
+		}
+
+		/**
+		 * Deals unknown cards randomly into the free slots, then repairs the deal by swapping cards until it breaks
+		 * no restrictions or suggestion constraints.
+		 * @return false if the time or step limit ran out first
+		 */
+		private boolean findConsistentDeal() {
+			int numberUnknown = location.length;
+			int numberLocations = problem.numberLocations;
+			int[] remaining = problem.capacity.clone();
+			int[] order = new int[numberUnknown];
+			for (int k = 0; k < numberUnknown; k++) {
+				order[k] = k;
+			}
+			for (int k = numberUnknown - 1; k > 0; k--) {
+				int j = rand.nextInt(k + 1);
+				int swap = order[k];
+				order[k] = order[j];
+				order[j] = swap;
+			}
+			for (int k : order) {
+				location[k] = pickLocation(remaining, problem.allowed[k], numberLocations);
+				if (location[k] == -1) {
+					location[k] = pickLocation(remaining, -1L, numberLocations);
+				}
+				if (location[k] == -1) {
+					throw new IllegalStateException("No deal is consistent with the game state");
+				}
+				remaining[location[k]]--;
+			}
+
+			int violations = 0;
+			for (int k = 0; k < numberUnknown; k++) {
+				violations += isAllowed(k, location[k]) ? 0 : 1;
+			}
+			for (int[] constraint : problem.constraints) {
+				violations += isSatisfied(constraint) ? 0 : 1;
+			}
+			long maxRepairs = 1000L*(numberUnknown + problem.constraints.length) + 100000L;
+			for (long i = 0; violations > 0 && i < maxRepairs; i++) {
+				if (isOutOfTime() || steps++ >= maxSteps) {
+					return false;
+				}
+				int a = pickViolating();
+				int b = rand.nextInt(numberUnknown);
+				if (location[a] == location[b]) {
+					continue;
+				}
+				int before = localViolations(a, b);
+				swap(a, b);
+				int change = localViolations(a, b) - before;
+				if (change > 0 && rand.nextDouble() >= UPHILL) {
+					swap(a, b);
+				}
+				else {
+					violations += change;
+				}
+			}
+			if (violations > 0) {
+				throw new IllegalStateException("No deal is consistent with the game state");
+			}
+			return true;
+		}
+
+		/**
+		 * @return true once the deadline has passed, or the call this chain runs for has been abandoned
+		 */
+		private boolean isOutOfTime() {
+			return System.nanoTime() > deadline || Thread.currentThread().isInterrupted();
+		}
+
+		private int pickLocation(int[] remaining, long allowedMask, int numberLocations) {
+			int options = 0;
+			for (int i = 0; i < numberLocations; i++) {
+				if (remaining[i] > 0 && (allowedMask & (1L << i)) != 0) {
+					options++;
+				}
+			}
+			if (options == 0) {
+				return -1;
+			}
+			int choice = rand.nextInt(options);
+			for (int i = 0; i < numberLocations; i++) {
+				if (remaining[i] > 0 && (allowedMask & (1L << i)) != 0 && choice-- == 0) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return a random card which is in a disallowed location or part of an unsatisfied constraint
+		 */
+		private int pickViolating() {
+			int chosen = -1;
+			int seen = 0;
+			for (int k = 0; k < location.length; k++) {
+				if (!isAllowed(k, location[k]) && rand.nextInt(++seen) == 0) {
+					chosen = k;
+				}
+			}
+			for (int[] constraint : problem.constraints) {
+				if (!isSatisfied(constraint)) {
+					for (int i = 1; i < constraint.length; i++) {
+						if (rand.nextInt(++seen) == 0) {
+							chosen = constraint[i];
+						}
+					}
+				}
+			}
+			return chosen;
+		}
+
+		private int localViolations(int a, int b) {
+			int violations = (isAllowed(a, location[a]) ? 0 : 1) + (isAllowed(b, location[b]) ? 0 : 1);
+			return violations + unsatisfied(a) + unsatisfied(b);
+		}
+
+		private int unsatisfied(int k) {
+			int count = 0;
+			for (int c : problem.constraintsByCard[k]) {
+				if (!isSatisfied(problem.constraints[c])) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		private boolean isSatisfied(int[] constraint) {
+			for (int i = 1; i < constraint.length; i++) {
+				if (location[constraint[i]] == constraint[0]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean isAllowed(int k, int loc) {
+			return (problem.allowed[k] & (1L << loc)) != 0;
+		}
+
+		private void swap(int a, int b) {
+			int temp = location[a];
+			location[a] = location[b];
+			location[b] = temp;
+		}
+	}
+}
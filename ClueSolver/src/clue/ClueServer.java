@@ -0,0 +1,547 @@
+package clue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP service hosting many independent {@link ClueSolver} games, one per session, so several users (or
+ * programs) can play at once. The server only listens on the loopback address. Responses are JSON, except for the
+ * Prometheus metrics.
+ * <pre>
+ * POST   /games?players=n[&amp;suspects=s&amp;places=p&amp;weapons=w][&amp;seed=x]   new started game: {"id", "hand"}
+ * POST   /games/{id}/suggest?suspect=s&amp;place=p&amp;weapon=w               Player 1's suggestion: {"messages", ...}
+ * POST   /games/{id}/accuse?suspect=s&amp;place=p&amp;weapon=w                Player 1's accusation: {"messages", ...}
+ * POST   /games/{id}/end                                               ends Player 1's turn and plays the bots' turns
+ * GET    /games/{id}/probability                                       probability of every card in every location,
+ *                                                                      and the model which computed it
+ * DELETE /games/{id}                                                   ends the session
+ * GET    /metrics                                                      request counts and latency percentiles
+ * GET    /metrics/solver                                               every {@link ClueMetrics} metric as JSON
+ * GET    /metrics/prometheus                                           the same, in Prometheus text format
+ * </pre>
+ * Requests are handled by a fixed pool of worker threads. Each session's game is only touched while holding that
+ * session's lock, so requests to one session are applied one at a time, while requests to different sessions never
+ * wait for each other. Sessions not used for the idle timeout are evicted by a background sweep.
+ * <p>
+ * Latency of each endpoint is recorded in a lock-free {@link ClueMetrics.Histogram}, from which {@code /metrics}
+ * reports the median, 99th percentile and maximum. These histograms are registered with ClueMetrics, so they are
+ * shared by every server in the process, and are recorded whether or not ClueMetrics collection is enabled.
+ */
+public class ClueServer {
+
+	/**
+	 * Largest deck a session may ask for, so one request cannot use up the server's memory.
+	 */
+	private static final int MAX_CARDS = 10000;
+
+	private static final String[] ENDPOINTS = {"create", "suggest", "accuse", "end", "probability", "delete",
+			"metrics", "error"};
+
+	private int port;
+	private int threads;
+	private long idleTimeoutMillis;
+	private int maxSessions;
+
+	private HttpServer server;
+	private ExecutorService pool;
+	private ScheduledExecutorService sweeper;
+	private final Map<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+	//Slots taken by live sessions and games still being created, so concurrent creates cannot pass maxSessions
+	private final AtomicInteger sessionSlots = new AtomicInteger();
+	private final AtomicLong nextId = new AtomicLong(1);
+	private final AtomicLong evicted = new AtomicLong();
+	private final Map<String, ClueMetrics.Histogram> latencies = new LinkedHashMap<String, ClueMetrics.Histogram>();
+
+	/**
+	 * Creates a server for the given port (0 for any free port). Defaults: one worker thread per core, sessions
+	 * evicted after 30 minutes idle, at most 10000 sessions.
+	 * @param port
+	 */
+	public ClueServer(int port) {
+		this.port = port;
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.idleTimeoutMillis = 30*60*1000L;
+		this.maxSessions = 10000;
+		for (String endpoint : ENDPOINTS) {
+			latencies.put(endpoint, ClueMetrics.histogram("clue_server_" + endpoint + "_seconds",
+					"Time to handle " + endpoint + " requests", true));
+		}
+	}
+
+	/**
+	 * @param threads number of worker threads handling requests, defaults to the number of cores. Samplers used while
+	 * handling a request default to a single thread, see {@link ClueSampler#defaultThreads()}.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Must use at least 1 thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @param idleTimeoutMillis sessions not used for this long are evicted
+	 */
+	public void setIdleTimeout(long idleTimeoutMillis) {
+		if (idleTimeoutMillis < 1) {
+			throw new IllegalArgumentException("Idle timeout must be positive");
+		}
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * @param maxSessions number of sessions after which new games are refused until some end or are evicted
+	 */
+	public void setMaxSessions(int maxSessions) {
+		if (maxSessions < 1) {
+			throw new IllegalArgumentException("Must allow at least 1 session");
+		}
+		this.maxSessions = maxSessions;
+	}
+
+	/**
+	 * Starts listening on the loopback address.
+	 * @throws IOException if the port cannot be bound
+	 */
+	public void start() throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Server already started");
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		pool = Executors.newFixedThreadPool(threads, ClueSampler.callerThreads("ClueServer worker"));
+		server.setExecutor(pool);
+		server.createContext("/", this::handle);
+		server.start();
+
+		sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ClueServer idle sweeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1, Math.min(idleTimeoutMillis/4, 60*1000L));
+		sweeper.scheduleAtFixedRate(this::evictIdleSessions, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops accepting requests, waits up to delaySeconds for requests being handled to finish, and drops every
+	 * session.
+	 * @param delaySeconds
+	 */
+	public void stop(int delaySeconds) {
+		if (server == null) {
+			return;
+		}
+		server.stop(delaySeconds);
+		sweeper.shutdownNow();
+		pool.shutdownNow();
+		sessions.clear();
+		sessionSlots.set(0);
+		server = null;
+	}
+
+	/**
+	 * @return port the server is listening on, useful after starting on port 0
+	 */
+	public int getPort() {
+		return server == null ? port : server.getAddress().getPort();
+	}
+
+	/**
+	 * @return number of sessions currently open
+	 */
+	public int getSessions() {
+		return sessions.size();
+	}
+
+	/**
+	 * Runs a server until the process is stopped.
+	 * Arguments: [port [threads [idleTimeoutSeconds]]]
+	 */
+	public static void main(String[] args) throws IOException {
+		ClueServer server = new ClueServer(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+		if (args.length > 1) {
+			server.setThreads(Integer.parseInt(args[1]));
+		}
+		if (args.length > 2) {
+			server.setIdleTimeout(Long.parseLong(args[2])*1000);
+		}
+		server.start();
+		System.out.println("Clue server listening on http://localhost:" + server.getPort() + "/");
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private void handle(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		String endpoint = "error";
+		int status;
+		String body;
+		String contentType = "application/json; charset=utf-8";
+		try {
+			//Requests carry their parameters in the query string; discard any body so the connection can be reused
+			try (InputStream in = exchange.getRequestBody()) {
+				byte[] skip = new byte[4096];
+				while (in.read(skip) != -1) {
+				}
+			}
+			String method = exchange.getRequestMethod();
+			String[] path = exchange.getRequestURI().getPath().split("/");
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+			if (path.length == 2 && path[1].equals("metrics")) {
+				endpoint = "metrics";
+				checkMethod(method, "GET");
+				body = metricsJson();
+			}
+			else if (path.length == 3 && path[1].equals("metrics") && path[2].equals("solver")) {
+				endpoint = "metrics";
+				checkMethod(method, "GET");
+				body = ClueMetrics.getJson();
+			}
+			else if (path.length == 3 && path[1].equals("metrics") && path[2].equals("prometheus")) {
+				endpoint = "metrics";
+				checkMethod(method, "GET");
+				body = prometheusText();
+				contentType = "text/plain; version=0.0.4; charset=utf-8";
+			}
+			else if (path.length == 2 && path[1].equals("games")) {
+				endpoint = "create";
+				checkMethod(method, "POST");
+				body = createGame(query);
+			}
+			else if ((path.length == 3 || path.length == 4) && path[1].equals("games")) {
+				Session session = sessions.get(parseId(path[2]));
+				if (session == null) {
+					throw new RequestException(404, "No game " + path[2]);
+				}
+				session.lastUsed = System.nanoTime();
+				if (path.length == 3) {
+					endpoint = "delete";
+					checkMethod(method, "DELETE");
+					if (sessions.remove(parseId(path[2]), session)) {
+						sessionSlots.decrementAndGet();
+					}
+					body = "{\"deleted\":true}";
+				}
+				else {
+					endpoint = path[3];
+					body = handleGame(session, path[3], method, query);
+				}
+			}
+			else {
+				throw new RequestException(404, "No such endpoint");
+			}
+			status = 200;
+		} catch (RequestException e) {
+			contentType = "application/json; charset=utf-8";
+			status = e.status;
+			body = "{\"error\":" + quote(e.getMessage()) + "}";
+		} catch (IllegalArgumentException e) {
+			contentType = "application/json; charset=utf-8";
+			status = 400;
+			body = "{\"error\":" + quote(e.getMessage()) + "}";
+		} catch (RuntimeException e) {
+			contentType = "application/json; charset=utf-8";
+			status = 500;
+			body = "{\"error\":" + quote(String.valueOf(e)) + "}";
+		}
+
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+		ClueMetrics.Histogram histogram = latencies.get(endpoint);
+		(histogram == null ? latencies.get("error") : histogram).record(System.nanoTime() - start);
+	}
+
+	private String createGame(Map<String, String> query) {
+		if (sessionSlots.incrementAndGet() > maxSessions) {
+			sessionSlots.decrementAndGet();
+			throw new RequestException(503, "Too many sessions, try again later");
+		}
+		boolean created = false;
+		try {
+			String json = startSession(query);
+			created = true;
+			return json;
+		} finally {
+			if (!created) {
+				sessionSlots.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Builds and starts the game asked for and stores its session, once {@link #createGame(Map)} has reserved a slot.
+	 * @return the new game's id and player 1's hand, as JSON
+	 */
+	private String startSession(Map<String, String> query) {
+		int players = intParameter(query, "players");
+		if (players < 2) {
+			throw new IllegalArgumentException("Must have at least 2 players");
+		}
+		if (players > CardKnowledge.MAX_PLAYERS) {
+			throw new IllegalArgumentException("At most " + CardKnowledge.MAX_PLAYERS + " players are supported");
+		}
+		boolean defaultGame = !query.containsKey("suspects") && !query.containsKey("places")
+				&& !query.containsKey("weapons");
+		int suspects = defaultGame ? 6 : intParameter(query, "suspects");
+		int places = defaultGame ? 9 : intParameter(query, "places");
+		int weapons = defaultGame ? 6 : intParameter(query, "weapons");
+		if (suspects < 1 || places < 1 || weapons < 1) {
+			throw new IllegalArgumentException("Must have at least 1 suspect, place and weapon");
+		}
+		if ((long) suspects + places + weapons > MAX_CARDS) {
+			throw new IllegalArgumentException("At most " + MAX_CARDS + " cards are supported");
+		}
+		String seed = query.get("seed");
+		ClueSolver game;
+		if (defaultGame) {
+			game = (seed == null) ? new ClueSolver(players) : new ClueSolver(players, parseLong(seed, "seed"));
+		}
+		else if (seed == null) {
+			game = new ClueSolver(players, suspects, places, weapons);
+		}
+		else {
+			game = new ClueSolver(players, suspects, places, weapons, parseLong(seed, "seed"));
+		}
+		game.startGame();
+
+		long id = nextId.getAndIncrement();
+		sessions.put(id, new Session(game));
+		StringBuilder json = new StringBuilder();
+		json.append("{\"id\":").append(id).append(",\"hand\":[");
+		boolean first = true;
+		for (int card : game.getHands().get(0)) {
+			json.append(first ? "" : ",").append(card);
+			first = false;
+		}
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * Applies one request to a session's game, holding the session's lock.
+	 */
+	private String handleGame(Session session, String action, String method, Map<String, String> query) {
+		synchronized (session) {
+			ClueSolver game = session.game;
+			String messages;
+			switch (action) {
+			case "suggest":
+				checkMethod(method, "POST");
+				messages = game.enterPlayer1Turn(intParameter(query, "suspect"), intParameter(query, "place"),
+						intParameter(query, "weapon"));
+				break;
+			case "accuse":
+				checkMethod(method, "POST");
+				messages = game.accuse(intParameter(query, "suspect"), intParameter(query, "place"),
+						intParameter(query, "weapon"));
+				break;
+			case "end":
+				checkMethod(method, "POST");
+				game.endPlayer1Turn();
+				messages = game.simulateOpenentTurns();
+				break;
+			case "probability":
+				checkMethod(method, "GET");
+				return probabilityJson(game);
+			default:
+				throw new RequestException(404, "No such endpoint");
+			}
+			return "{\"messages\":" + quote(messages) + ",\"gameOver\":" + game.isGameOver() + ",\"winner\":"
+					+ game.getWinner() + "}";
+		}
+	}
+
+	private static String probabilityJson(ClueSolver game) {
+		int numberLocations = game.getNumberPlayers() + 3;
+		double[] matrix = game.getProbabilityMatrix();
+		StringBuilder json = new StringBuilder(matrix.length*8 + 64);
+		json.append("{\"locations\":").append(numberLocations).append(",\"model\":")
+				.append(quote(game.getProbabilityModelUsed().name())).append(",\"probabilities\":[");
+		for (int i = 0; i < matrix.length; i++) {
+			if (i % numberLocations == 0) {
+				json.append(i == 0 ? "[" : "],[");
+			}
+			else {
+				json.append(',');
+			}
+			json.append(matrix[i]);
+		}
+		return json.append(matrix.length == 0 ? "]}" : "]]}").toString();
+	}
+
+	private String metricsJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"sessions\":").append(sessions.size()).append(",\"evicted\":").append(evicted.get())
+				.append(",\"endpoints\":{");
+		boolean first = true;
+		for (Map.Entry<String, ClueMetrics.Histogram> entry : latencies.entrySet()) {
+			ClueMetrics.Histogram histogram = entry.getValue();
+			json.append(first ? "" : ",").append(quote(entry.getKey())).append(":{\"count\":")
+					.append(histogram.getCount())
+					.append(String.format(Locale.ROOT, ",\"p50Micros\":%.1f,\"p99Micros\":%.1f,\"maxMicros\":%.1f}",
+							histogram.getPercentile(0.5)/1000.0, histogram.getPercentile(0.99)/1000.0,
+							histogram.getMax()/1000.0));
+			first = false;
+		}
+		return json.append("}}").toString();
+	}
+
+	private String prometheusText() {
+		StringWriter out = new StringWriter();
+		out.write("# HELP clue_server_sessions Sessions currently open\n# TYPE clue_server_sessions gauge\n"
+				+ "clue_server_sessions " + sessions.size() + "\n");
+		out.write("# HELP clue_server_evicted_total Sessions evicted for being idle\n"
+				+ "# TYPE clue_server_evicted_total counter\nclue_server_evicted_total " + evicted.get() + "\n");
+		try {
+			ClueMetrics.writePrometheus(out);
+		} catch (IOException e) {
+			//StringWriter never throws
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	private void evictIdleSessions() {
+		long now = System.nanoTime();
+		long timeout = idleTimeoutMillis*1000000L;
+		for (Map.Entry<Long, Session> entry : sessions.entrySet()) {
+			if (now - entry.getValue().lastUsed > timeout && sessions.remove(entry.getKey(), entry.getValue())) {
+				sessionSlots.decrementAndGet();
+				evicted.incrementAndGet();
+			}
+		}
+	}
+
+	private static void checkMethod(String method, String expected) {
+		if (!method.equals(expected)) {
+			throw new RequestException(405, "Use " + expected);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<String, String>();
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return query;
+		}
+		try {
+			for (String pair : rawQuery.split("&")) {
+				int equals = pair.indexOf('=');
+				if (equals > 0) {
+					query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+				}
+			}
+		} catch (UnsupportedEncodingException e) {
+			//UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+		return query;
+	}
+
+	private static int intParameter(Map<String, String> query, String name) {
+		String value = query.get(name);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing parameter " + name);
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter " + name + " must be an integer");
+		}
+	}
+
+	private static long parseLong(String value, String name) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter " + name + " must be an integer");
+		}
+	}
+
+	private static long parseId(String id) {
+		try {
+			return Long.parseLong(id);
+		} catch (NumberFormatException e) {
+			throw new RequestException(404, "No game " + id);
+		}
+	}
+
+	private static String quote(String text) {
+		StringBuilder json = new StringBuilder(text.length() + 2);
+		json.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					json.append(c);
+				}
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	private static class Session {
+		final ClueSolver game;
+		/** System.nanoTime() of the last request */
+		volatile long lastUsed;
+
+		Session(ClueSolver game) {
+			this.game = game;
+			this.lastUsed = System.nanoTime();
+		}
+	}
+
+	private static class RequestException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+}
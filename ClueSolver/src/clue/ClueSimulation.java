@@ -0,0 +1,315 @@
+package clue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Plays complete {@link ClueSolver} games without a user, with Player 1's moves decided by a {@link Player1Strategy},
+ * so strategies can be evaluated over many games. Games are split between worker threads, each playing its own
+ * games on its own ClueSolver instances, and the results are combined once every game has finished.
+ */
+public class ClueSimulation {
+
+	private int numberPlayers;
+	private int numberSuspects;
+	private int numberPlaces;
+	private int numberWeapons;
+	private Supplier<Player1Strategy> strategies;
+	private int threads;
+	
+	/**
+	 * Seed of the first game. Game i is dealt and played from seed + i, so any game can be replayed on its own.
+	 */
+	private long seed;
+
+	/**
+	 * Games where Player 1 has not accused after this many of their turns are counted as unfinished.
+	 */
+	private int maxTurns;
+
+	/**
+	 * Simulates games using the original 21 cards.
+	 * @param numberPlayers
+	 * @param strategies creates the strategy for each game
+	 */
+	public ClueSimulation(int numberPlayers, Supplier<Player1Strategy> strategies) {
+		this(numberPlayers, 6, 9, 6, strategies);
+	}
+
+	/**
+	 * Simulates games with a custom number of cards.
+	 * @param strategies creates the strategy for each game
+	 */
+	public ClueSimulation(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons,
+			Supplier<Player1Strategy> strategies) {
+		this.numberPlayers = numberPlayers;
+		this.numberSuspects = numberSuspects;
+		this.numberPlaces = numberPlaces;
+		this.numberWeapons = numberWeapons;
+		this.strategies = strategies;
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.maxTurns = 1000;
+		this.seed = new SplittableRandom().nextLong();
+	}
+	
+	/**
+	 * @param seed seed of the first game, so that a run can be reproduced exactly
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * @return Seed of the first game. Game i uses seed + i.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param threads number of worker threads, defaults to the number of cores. Samplers used by the games on them
+	 * default to a single thread, see {@link ClueSampler#defaultThreads()}.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Must use at least 1 thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @param maxTurns number of Player 1 turns after which a game is abandoned as unfinished
+	 */
+	public void setMaxTurns(int maxTurns) {
+		if (maxTurns < 1) {
+			throw new IllegalArgumentException("Must allow at least 1 turn");
+		}
+		this.maxTurns = maxTurns;
+	}
+
+	/**
+	 * Plays the given number of games to completion.
+	 * @param games
+	 * @return combined results of every game
+	 */
+	public Report run(int games) {
+		long start = System.nanoTime();
+		int workers = Math.max(1, Math.min(threads, games));
+		ExecutorService pool = Executors.newFixedThreadPool(workers, ClueSampler.callerThreads("clue-simulation"));
+		List<Future<Report>> results = new ArrayList<Future<Report>>();
+		try {
+			int firstGame = 0;
+			for (int i = 0; i < workers; i++) {
+				int workerGames = games/workers + (i < games%workers ? 1 : 0);
+				int workerFirstGame = firstGame;
+				results.add(pool.submit(() -> playGames(workerFirstGame, workerGames)));
+				firstGame += workerGames;
+			}
+			Report report = new Report(maxTurns);
+			for (Future<Report> result : results) {
+				report.add(result.get());
+			}
+			report.elapsedNanos = System.nanoTime() - start;
+			return report;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while simulating", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs a simulation from the command line and prints the report.
+	 * Arguments: games numberPlayers [numberSuspects numberPlaces numberWeapons]
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 5) {
+			System.out.println("Usage: ClueSimulation games numberPlayers [numberSuspects numberPlaces numberWeapons]");
+			return;
+		}
+		int games = Integer.parseInt(args[0]);
+		int numberPlayers = Integer.parseInt(args[1]);
+		ClueSimulation simulation;
+		if (args.length == 5) {
+			simulation = new ClueSimulation(numberPlayers, Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+					Integer.parseInt(args[4]), DeductiveStrategy::new);
+		}
+		else {
+			simulation = new ClueSimulation(numberPlayers, DeductiveStrategy::new);
+		}
+		System.out.println("Seed: " + simulation.getSeed());
+		System.out.println(simulation.run(games));
+	}
+
+	/**
+	 * Combined results of simulated games.
+	 */
+	public static class Report {
+		private long games;
+		private long wins;
+		private long losses;
+		private long botWins;
+		private long unfinished;
+		private long elapsedNanos;
+
+		/**
+		 * Number of games Player 1 won on each turn, index 0 being their first turn.
+		 */
+		private long[] turnsToSolve;
+
+		Report(int maxTurns) {
+			this.turnsToSolve = new long[maxTurns];
+		}
+
+		public long getGames() {
+			return games;
+		}
+
+		/**
+		 * @return Number of games Player 1 won by correctly accusing.
+		 */
+		public long getWins() {
+			return wins;
+		}
+
+		/**
+		 * @return Number of games Player 1 lost by accusing wrongly.
+		 */
+		public long getLosses() {
+			return losses;
+		}
+
+		/**
+		 * @return Number of games a bot won before Player 1 accused.
+		 */
+		public long getBotWins() {
+			return botWins;
+		}
+
+		/**
+		 * @return Number of games abandoned after the maximum number of turns.
+		 */
+		public long getUnfinished() {
+			return unfinished;
+		}
+
+		public double getWinRate() {
+			return games == 0 ? 0 : ((double) wins)/games;
+		}
+
+		public double getGamesPerSecond() {
+			return elapsedNanos == 0 ? 0 : games/(elapsedNanos/1e9);
+		}
+
+		/**
+		 * @return Copy of the number of games won on each of Player 1's turns (index 0 is the first turn).
+		 */
+		public long[] getTurnsToSolve() {
+			return Arrays.copyOf(turnsToSolve, turnsToSolve.length);
+		}
+
+		/**
+		 * @param percentile between 0 and 100
+		 * @return number of turns within which the given percentage of Player 1's wins happened, or 0 if there were none
+		 */
+		public int getTurnsToSolvePercentile(double percentile) {
+			long target = (long) Math.ceil(wins*percentile/100.0);
+			long seen = 0;
+			for (int i = 0; i < turnsToSolve.length; i++) {
+				seen += turnsToSolve[i];
+				if (seen >= target && seen > 0) {
+					return i + 1;
+				}
+			}
+			return 0;
+		}
+
+		public double getMeanTurnsToSolve() {
+			double total = 0;
+			for (int i = 0; i < turnsToSolve.length; i++) {
+				total += (i + 1)*turnsToSolve[i];
+			}
+			return wins == 0 ? 0 : total/wins;
+		}
+
+		@Override
+		public String toString() {
+			return "Games: " + games + " (" + String.format("%.1f", getGamesPerSecond()) + " games/sec)\n"
+					+ "Wins: " + wins + " (" + String.format("%.2f", 100*getWinRate()) + "%), wrong accusations: "
+					+ losses + ", bot wins: " + botWins + ", unfinished: " + unfinished + "\n"
+					+ "Turns to solve: mean " + String.format("%.2f", getMeanTurnsToSolve()) + ", median "
+					+ getTurnsToSolvePercentile(50) + ", 90th percentile " + getTurnsToSolvePercentile(90)
+					+ ", max " + getTurnsToSolvePercentile(100) + "\n";
+		}
+
+		private void add(Report other) {
+			games += other.games;
+			wins += other.wins;
+			losses += other.losses;
+			botWins += other.botWins;
+			unfinished += other.unfinished;
+			for (int i = 0; i < turnsToSolve.length; i++) {
+				turnsToSolve[i] += other.turnsToSolve[i];
+			}
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private Report playGames(int firstGame, int games) {
+		Report report = new Report(maxTurns);
+		for (int i = firstGame; i < firstGame + games; i++) {
+			playGame(seed + i, report);
+		}
+		return report;
+	}
+
+	/**
+	 * Plays one game from start to finish, recording its outcome in report.
+	 */
+	private void playGame(long gameSeed, Report report) {
+		ClueSolver game = new ClueSolver(numberPlayers, numberSuspects, numberPlaces, numberWeapons, gameSeed);
+		Player1Strategy strategy = strategies.get();
+		game.setMessagesEnabled(false);
+		game.startGame();
+		report.games++;
+
+		for (int turn = 0; turn < maxTurns; turn++) {
+			int[] suggestion = strategy.chooseSuggestion(game);
+			game.enterPlayer1Turn(suggestion[0], suggestion[1], suggestion[2]);
+			int[] accusation = strategy.chooseAccusation(game);
+			if (accusation != null) {
+				game.accuse(accusation[0], accusation[1], accusation[2]);
+				if (game.getWinner() == 0) {
+					report.wins++;
+					report.turnsToSolve[turn]++;
+				}
+				else {
+					report.losses++;
+				}
+				return;
+			}
+			game.endPlayer1Turn();
+			game.simulateOpenentTurns();
+			if (game.isGameOver()) {
+				report.botWins++;
+				return;
+			}
+		}
+		report.unfinished++;
+	}
+}
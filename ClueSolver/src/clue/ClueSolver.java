@@ -2,9 +2,9 @@ package clue;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
 
 /**
  * Simulator for the board game Clue played from the perspective of Player 1 against
@@ -25,6 +25,57 @@ public class ClueSolver {
 			"Library", "Study", "Hall", "Lounge", "Dining Room", "Candlestick", "Knife", "Lead Pipe",
 			"Revolver", "Rope", "Monkey Wrench"};
 	
+	/**
+	 * How {@link ClueSolver#getProbabilityMatrix()} and {@link ClueSolver#getProbability(int, int, int)} compute
+	 * probabilities.
+	 */
+	public enum ProbabilityModel {
+		/**
+		 * Each unknown card is spread over the locations it may be in by their free slots, and over the case file
+		 * uniformly. Cheap for any deck size, but ignores suggestion constraints and how hand sizes tie cards
+		 * together, so it is not calibrated.
+		 */
+		HEURISTIC,
+		/**
+		 * Probabilities estimated from deals consistent with the game state drawn by a {@link ClueSampler}, within
+		 * {@link ClueSolver#SAMPLED_MAX_STEPS}. The sampler's generator is seeded from the game's own and the state
+		 * being estimated, so seeded games, and saved copies of them, get the same estimates on every run. Games with too many unknown cards to draw any deal within
+		 * the steps use {@link #HEURISTIC} without sampling.
+		 */
+		SAMPLED,
+		/**
+		 * Exact probabilities over every deal consistent with the game state, from {@link ClueExactSolver}. Games
+		 * too large to count (see {@link ClueSolver#EXACT_MAX_STATES} and {@link ClueSolver#EXACT_MAX_STATES_COUNTED})
+		 * use {@link #SAMPLED} until enough is known to count them.
+		 */
+		EXACT
+	}
+	
+	/**
+	 * State space limit of {@link ProbabilityModel#EXACT}, bounding the time and memory of one recomputation (about a
+	 * millisecond on the original deck).
+	 */
+	public static final long EXACT_MAX_STATES = 1 << 20;
+	
+	/**
+	 * Limit of {@link ProbabilityModel#EXACT} on the states actually counted, so games whose state space is within
+	 * {@link #EXACT_MAX_STATES} but which would still take long to count give up early. The original deck never needs
+	 * more than a tenth of it. It is a count rather than a time, so whether a game is counted exactly is the same on
+	 * every machine.
+	 */
+	public static final long EXACT_MAX_STATES_COUNTED = 1 << 17;
+	
+	/**
+	 * Step limit of {@link ProbabilityModel#SAMPLED} (see {@link ClueSampler#setMaxSteps(long)}), bounding the work
+	 * of one recomputation however large the deck. Unlike a time limit, it gives the same estimate on every machine.
+	 */
+	public static final long SAMPLED_MAX_STEPS = 1 << 18;
+	
+	/**
+	 * Deals drawn by one recomputation with {@link ProbabilityModel#SAMPLED}, if the step limit allows.
+	 */
+	public static final long SAMPLED_MAX_SAMPLES = 4000;
+	
 	private int numberPlayers;
 	private int numberSuspects;
 	private int numberPlaces;
@@ -40,14 +91,43 @@ public class ClueSolver {
 	 * True if game is over (Player 1 (you) has won or lost...game is irrelevant after)
 	 */
 	private boolean gameOver;
+	
+	/**
+	 * Source of all randomness in the game (dealing and bot moves), so a game can be replayed from its seed.
+	 */
+	private SplittableRandom rand;
+	
+	/**
+	 * Seed of the randomness of {@link ProbabilityModel#SAMPLED}, drawn from a generator split from {@link #rand}
+	 * once the cards are dealt, so computing probabilities never changes the bot moves drawn from rand. Each
+	 * estimate mixes in the state it is for (see {@link #samplerRandom()}), so it does not depend on how many were
+	 * computed before, which saved games do not record.
+	 */
+	private long samplerSeed;
+	
+	/**
+	 * Seed {@link #rand} was created from, if {@link #seeded}. Saved with the game so its draws can be replayed.
+	 */
+	private long seed;
+	private boolean seeded;
+	
+	/**
+	 * Number of suggestions made by built-in bots, each of which drew three numbers from {@link #rand}. Bots with a
+	 * {@link BotPolicy} draw nothing from it.
+	 */
+	private long botSuggestions;
+	
+	/**
+	 * Player who correctly guessed the case file, or -1 if no one has (yet).
+	 */
+	private int winner;
 
 
 	/**
-	 * Holds all cards each player is assigned as well as those in the case file. Solution for proper function of AI opponents.
-	 * Should only be accessed by user for verification of WCSP solver results. Index 0 refers to player 1 with the last
-	 * index referring to the content of the weapons case file slot.
+	 * Holds the location each card was dealt to, using the same location numbering as {@link #getProbability(int, int, int)}.
+	 * Solution for proper function of AI opponents. Should only be accessed by user for verification of WCSP solver results.
 	 */
-	private List<HashSet<Integer>> solution;
+	private int[] solution;
 
 
 	/**
@@ -62,40 +142,65 @@ public class ClueSolver {
 	private boolean suggestionMade;
 	
 	/**
-	 * For each set {Suspects, Places, Weapons} holds the cards for which location is still unknown.
+	 * Everything known about card locations from Player 1's perspective: the cards each player is known to hold,
+	 * the number of free slots (unknown cards) in each hand, the cards each player and case file slot must not be
+	 * holding and the number of cards of each type whose location is still unknown.
 	 */
-	private List<HashSet<Integer>> unknowns;
+	private CardKnowledge knowledge;
 	
 	/**
-	 * For each player, holds a set of the cards they are known to hold.
+	 * Makes every update to {@link #knowledge} and deduces whatever else follows from it after each event.
 	 */
-	private List<HashSet<Integer>> hands;
+	private KnowledgePropagator propagator;
+	
+
 	
 	/**
-	 * For each player, holds the number of free slots (unknown cards) in their hand 
+	 * Everything that has happened so far, turned into an explanation of what moves are occurring each turn only
+	 * when {@link #getGameMessages()} is called. Empty when messages are disabled.
 	 */
-	private List<Integer> freeSlots;
+	private List<GameEvent> events;
 	
 	/**
-	 * For each player as well as the the three case file slots, 
-	 * holds a set of cards that they must not be holding (information is obtained as game is played)
+	 * Text of the first {@link #renderedEvents} events, so each event is only rendered once.
 	 */
-	private List<HashSet<Integer>> restrictions;
+	private StringBuilder gameMessages;
+	private int renderedEvents;
 	
 	/**
-	 * Keeps track of when players admit to a suggestion in the format {Suspect, Place, Weapon},
-	 * so that the constraint that the player must hold at least one of these three cards
-	 * can be added to the WCSP solver. Each entry is a list of ints formatted as such: {player, 
-	 * suspect, place, weapon}
+	 * If false no events are recorded and no messages are built, for headless games nobody reads.
 	 */
-	private List<List<Integer>> suggestionConstraints;
+	private boolean messagesEnabled;
 	
-
+	/**
+	 * Receives every event as it happens, whether or not messages are enabled, e.g. a {@link GameJournal}. Not copied
+	 * to forks.
+	 */
+	private Consumer<GameEvent> eventListener;
+	
+	/**
+	 * Policy of each player set with {@link #setBotPolicy(int, BotPolicy)}, null for the built-in bots. Null until
+	 * one is set; not copied to forks, since policies keep per-game state.
+	 */
+	private BotPolicy[] botPolicies;
 	
 	/**
-	 * A string that holds a growing explanation of what moves are occurring each turn.
+	 * What each player knows, if {@link #setPlayerKnowledgeEnabled(boolean)} was set when the game started, else
+	 * null. Not copied to forks.
+	 */
+	private PlayerKnowledgeTracker playerKnowledge;
+	private boolean playerKnowledgeEnabled;
+	
+	private ProbabilityModel probabilityModel;
+	
+	/**
+	 * Cached result of {@link #getProbabilityMatrix()}. Set to null by every event that changes the game state.
+	 */
+	private double[] probabilityMatrix;
+	/**
+	 * Model which computed {@link #probabilityMatrix}.
 	 */
-	private String gameMessages;
+	private ProbabilityModel probabilityMatrixModel;
 	
 
 	
@@ -134,31 +239,222 @@ public class ClueSolver {
 	}
 	
 	/**
-	 * @return Unmodifiable copy of {@link #hands}.
+	 * @return Unmodifiable copy of the cards each player is known to hold.
 	 */
 	public List<HashSet<Integer>> getHands() {
-		return Collections.unmodifiableList(hands);
+		return Collections.unmodifiableList(knowledge.handsAsSets());
 	}
 	
 	/**
-	 * @return Unmodifiable copy of {@link ClueSolver#solution}. 
+	 * @return Unmodifiable copy of {@link ClueSolver#solution}, as one set of cards per location. Index 0 refers to
+	 * player 1 with the last index referring to the content of the weapons case file slot.
 	 */
 	public List<HashSet<Integer>> getSolution() {
-		return Collections.unmodifiableList(solution);
+		List<HashSet<Integer>> locations = new ArrayList<HashSet<Integer>>();
+		for (int i = 0; i < numberPlayers + 3; i++) {
+			locations.add(new HashSet<Integer>());
+		}
+		for (int card = 0; card < solution.length; card++) {
+			locations.get(solution[card]).add(card);
+		}
+		return Collections.unmodifiableList(locations);
+	}
+	
+	/**
+	 * @return Unmodifiable copy of the number of free slots (unknown cards) in each player's hand.
+	 */
+	public List<Integer> getFreeSlots() {
+		return Collections.unmodifiableList(knowledge.freeSlotsAsList());
+	}
+	
+	/**
+	 * @return Unmodifiable copy of the cards each player and case file slot must not be holding. A case file slot only
+	 * lists cards of its own type, as cards of other types can never be in it.
+	 */
+	public List<HashSet<Integer>> getRestrictions() {
+		return Collections.unmodifiableList(knowledge.restrictionsAsSets());
+	}
+	
+	/**
+	 * @return {@link #knowledge}, the bit mask representation of everything known about card locations. Only the
+	 * game itself may update it.
+	 */
+	public CardKnowledge getKnowledge() {
+		return knowledge;
 	}
 	
 	/**
-	 * @return Unmodifiable copy of {@link ClueSolver#suggestionConstraints}. 
+	 * Keeps track of when players admit to a suggestion in the format {Suspect, Place, Weapon},
+	 * so that the constraint that the player must hold at least one of these three cards
+	 * can be added to the WCSP solver.
+	 * @return Unmodifiable view of every suggestion constraint so far, each formatted as {player, suspect, place,
+	 * weapon}, including those since satisfied by a known card
 	 */
 	public List<List<Integer>> getSuggestionConstraints() {
-		return Collections.unmodifiableList(suggestionConstraints);
+		return propagator.getConstraints().asList();
+	}
+	
+	/**
+	 * @return the suggestion constraints in packed form, with indexes of those still open. Must not be kept past
+	 * the next event.
+	 */
+	SuggestionConstraints getConstraints() {
+		return propagator.getConstraints();
+	}
+	
+	/**
+	 * @return Public getter for {@link #gameOver}
+	 */
+	public boolean isGameOver() {
+		return gameOver;
 	}
 	
 	/**
-	 * @return Public getter for {@link #gameMessages}
+	 * @return Public getter for {@link #winner}
+	 */
+	public int getWinner() {
+		return winner;
+	}
+	
+	/**
+	 * @return Explanation of every move so far, rendered from {@link #events}
 	 */
 	public String getGameMessages() {
-		return this.gameMessages;
+		renderEvents(events.size());
+		return this.gameMessages.toString();
+	}
+	
+	/**
+	 * @return Unmodifiable copy of {@link #events} as Player 1 saw them, so the card another player revealed to a
+	 * third is left out (see {@link GameEvent#getCard()})
+	 */
+	public List<GameEvent> getEvents() {
+		List<GameEvent> seen = new ArrayList<GameEvent>(events.size());
+		for (GameEvent event : events) {
+			seen.add(event.withoutHiddenCard());
+		}
+		return Collections.unmodifiableList(seen);
+	}
+	
+	/**
+	 * Enables or disables game messages. While disabled no events are recorded, and the methods which return
+	 * messages return an empty string, so headless games spend no time formatting text.
+	 * @param messagesEnabled
+	 */
+	public void setMessagesEnabled(boolean messagesEnabled) {
+		this.messagesEnabled = messagesEnabled;
+	}
+	
+	/**
+	 * @param probabilityModel how probabilities are computed, defaults to {@link ProbabilityModel#EXACT}
+	 */
+	public void setProbabilityModel(ProbabilityModel probabilityModel) {
+		if (probabilityModel != this.probabilityModel) {
+			this.probabilityModel = probabilityModel;
+			probabilityMatrix = null;
+		}
+	}
+	
+	public ProbabilityModel getProbabilityModel() {
+		return probabilityModel;
+	}
+	
+	/**
+	 * @return model which computed the current {@link #getProbabilityMatrix()}: the one set for this game, or a less
+	 * exact one if the game is too large for it. Computes the probabilities if they are not cached.
+	 */
+	public ProbabilityModel getProbabilityModelUsed() {
+		getProbabilityMatrix();
+		return probabilityMatrixModel;
+	}
+	
+	/**
+	 * Sets the listener which is given every event of the game as it happens, including the
+	 * {@link GameEvent.Type#START} and {@link GameEvent.Type#END_TURN} events that have no message. Events reach the
+	 * listener even while messages are disabled. They are given in full, hidden cards included, for recording the
+	 * game (see {@link GameJournal}); use {@link #getEvents()} for what Player 1 may be shown.
+	 * @param eventListener listener, or null for none
+	 */
+	public void setEventListener(Consumer<GameEvent> eventListener) {
+		this.eventListener = eventListener;
+	}
+	
+	/**
+	 * Sets the policy deciding player's moves in place of the built-in bot, which suggests uniformly random cards,
+	 * reveals the card Player 1 already knows it holds where it can and wins as soon as it suggests the case file.
+	 * Player 1's turns are still entered through {@link #enterPlayer1Turn(int, int, int)}, so for player 0 only the
+	 * policy's choice of card to reveal is used.
+	 * <p>
+	 * Policies are not saved with the game. Bots with a policy do not draw from the game's random generator, and
+	 * saved games and journals record which suggestions did, so a seeded game reloaded from either goes on from the
+	 * same point of its random sequence once its policies are set again.
+	 * @param player
+	 * @param policy policy, or null for the built-in bot
+	 */
+	public void setBotPolicy(int player, BotPolicy policy) {
+		if (player < 0 || player >= numberPlayers) {
+			throw new IllegalArgumentException("No player " + player + " in a " + numberPlayers + " player game");
+		}
+		if (botPolicies == null) {
+			botPolicies = new BotPolicy[numberPlayers];
+		}
+		botPolicies[player] = policy;
+	}
+	
+	/**
+	 * Sets whether the game keeps track of what every player knows, not just Player 1, for
+	 * {@link #getPlayerKnowledge(int)}. Takes effect when the game is started with {@link #startGame()}; off by
+	 * default, as it adds to the cost of every suggestion.
+	 * <p>
+	 * Forks keep tracking. The setting is saved by {@link GameStateFormat}, and a {@link GameJournal} opened before
+	 * the game started rebuilds what every player knows when it is replayed. A snapshot of a game already started
+	 * does not hold what each player was shown, so games loaded from one do not track.
+	 * @param playerKnowledgeEnabled
+	 */
+	public void setPlayerKnowledgeEnabled(boolean playerKnowledgeEnabled) {
+		this.playerKnowledgeEnabled = playerKnowledgeEnabled;
+	}
+	
+	/**
+	 * @param player
+	 * @return everything player knows, from their hand, the cards shown to them and every player's passes and
+	 * refutations. Kept up to date as the game goes on.
+	 * @throws IllegalStateException unless {@link #setPlayerKnowledgeEnabled(boolean)} was set when the game started,
+	 * and the game was not loaded from a snapshot taken after that
+	 */
+	public PlayerKnowledge getPlayerKnowledge(int player) {
+		if (playerKnowledge == null) {
+			throw new IllegalStateException("Player knowledge is not tracked for this game");
+		}
+		return playerKnowledge.get(player);
+	}
+	
+	/**
+	 * @return true if player was dealt card. Meant for {@link BotPolicy} implementations, which see their own hands.
+	 */
+	public boolean hasCard(int player, int card) {
+		return solution[card] == player;
+	}
+
+	/**
+	 * @return true if player plays by a {@link BotPolicy} rather than as the built-in bot
+	 */
+	boolean hasBotPolicy(int player) {
+		return getBotPolicy(player) != null;
+	}
+
+	/**
+	 * @return the setting of {@link #setPlayerKnowledgeEnabled(boolean)}
+	 */
+	boolean isPlayerKnowledgeEnabled() {
+		return playerKnowledgeEnabled;
+	}
+
+	/**
+	 * @return true if {@link #getPlayerKnowledge(int)} can be called, i.e. the game was started with tracking on
+	 */
+	boolean isPlayerKnowledgeTracked() {
+		return playerKnowledge != null;
 	}
 
 	/**
@@ -186,19 +482,22 @@ public class ClueSolver {
 	 * @param card integer between 0 and (numberSuspects + numberPlaces + numberWeapons-1)
 	 * @param cardType integer between 0-2 {Suspects, Places, Weapons}
 	 * @param location integer between 0-(numberPlayers+2) {Player1, ..., PlayerN, Suspect Case File, Places Case File, Weapons Case File)
-	 * @return numerical probability given card is in given location depending on game state information from Player 1's perspective
+	 * @return numerical probability given card is in given location depending on game state information from Player 1's perspective,
+	 * computed by the {@link ProbabilityModel} set for this game
 	 */
 	public double getProbability(int card, int cardType, int location) {
+		if (probabilityModel != ProbabilityModel.HEURISTIC) {
+			return getProbabilityMatrix()[card*(numberPlayers + 3) + location];
+		}
+		
 		//Card cannot be in this location
-		if (restrictions.get(location).contains(card)) {
+		if (knowledge.isRestricted(card, location)) {
 			return 0;
 		}
 		
-		//Card has already been discovered to be in player's hand
-		if (location < (numberPlayers)) {
-			if (hands.get(location).contains(card)) {
-				return 1;
-			}
+		//Card has already been discovered to be in player's hand (or deduced to be in the case file)
+		if (knowledge.isHeld(card, location)) {
+			return 1;
 		}
 
 		//If location is one of three case file spots, all unknown cards from that category have equal probability
@@ -207,30 +506,77 @@ public class ClueSolver {
 			if (cardType != (location - numberPlayers)) {
 				return 0;
 			}
-			double probability = ( ((double) 1) / unknowns.get(cardType).size());
+			double probability = ( ((double) 1) / knowledge.getUnknownCount(cardType));
 			return probability;
 		}
 		//Else calculate as (Probability in player's hand given card not in case file) * (Probability card is not in case file)
+		double notInCaseFile = 1.0;
+		if (!knowledge.isRestricted(card, numberPlayers + cardType)) {
+			notInCaseFile = 1.0 - ( ((double) 1) / knowledge.getUnknownCount(cardType) );
+		}
 		double possibleLocations = 0;
-		for (int i = 0; i < freeSlots.size(); i++) {
-			if (!restrictions.get(i).contains(card)) {
-				possibleLocations += freeSlots.get(i);
-			}
+		long players = knowledge.getPossibleLocations(card) & ((1L << numberPlayers) - 1);
+		while (players != 0) {
+			possibleLocations += knowledge.getFreeSlots(Long.numberOfTrailingZeros(players));
+			players &= players - 1;
 		}
 		//This means the card's location has already been discovered and it is not this location
 		if (possibleLocations == 0) {
 			return 0;
 		}
-		double probability = ( ((double) freeSlots.get(location)) / possibleLocations) * (1.0 - ( ((double) 1) / unknowns.get(cardType).size() ));
+		double probability = ( ((double) knowledge.getFreeSlots(location)) / possibleLocations) * notInCaseFile;
 		return probability;
 	}
 	
+	/**
+	 * Computes {@link #getProbability(int, int, int)} for every card and location in one pass. The result is cached
+	 * until the next suggestion, pass, admission or start of game, so repeated calls between events are free.
+	 * @return probabilities indexed as card*(numberPlayers+3) + location, the same numbering used for WCSP variables
+	 * by {@link ClueFileWriter}. Shared with later callers and must not be modified.
+	 * @throws IllegalStateException if no deal is consistent with the game state, which only a fork given impossible
+	 * assumptions can reach
+	 */
+	public double[] getProbabilityMatrix() {
+		if (probabilityMatrix == null) {
+			if (ClueMetrics.isEnabled()) {
+				long start = System.nanoTime();
+				probabilityMatrix = computeProbabilityMatrix();
+				ClueMetrics.PROBABILITY.record(System.nanoTime() - start);
+			}
+			else {
+				probabilityMatrix = computeProbabilityMatrix();
+			}
+		}
+		return probabilityMatrix;
+	}
+	
 	/**
 	 * Creates a game using the original 21 cards from the board game Clue
 	 * @param numberPlayers
 	 */
 	public ClueSolver(int numberPlayers) {
-		this(numberPlayers, 6, 9, 6);
+		this(numberPlayers, new SplittableRandom());
+	}
+	
+	/**
+	 * Creates a reproducible game using the original 21 cards. Games with the same seed and the same Player 1 moves
+	 * are dealt and played identically.
+	 * @param numberPlayers
+	 * @param seed
+	 */
+	public ClueSolver(int numberPlayers, long seed) {
+		this(numberPlayers, new SplittableRandom(seed));
+		this.seed = seed;
+		this.seeded = true;
+	}
+	
+	/**
+	 * Creates a game using the original 21 cards, drawing all randomness from rand.
+	 * @param numberPlayers
+	 * @param rand not shared with any other game (use {@link SplittableRandom#split()} to derive one per game)
+	 */
+	public ClueSolver(int numberPlayers, SplittableRandom rand) {
+		this(numberPlayers, 6, 9, 6, rand);
 		this.defaultGame = true;
 	}
 	
@@ -238,43 +584,40 @@ public class ClueSolver {
 	 * Creates a clue game with a custom number of cards
 	 */
 	public ClueSolver(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons) {
+		this(numberPlayers, numberSuspects, numberPlaces, numberWeapons, new SplittableRandom());
+	}
+	
+	/**
+	 * Creates a reproducible clue game with a custom number of cards
+	 */
+	public ClueSolver(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons, long seed) {
+		this(numberPlayers, numberSuspects, numberPlaces, numberWeapons, new SplittableRandom(seed));
+		this.seed = seed;
+		this.seeded = true;
+	}
+	
+	/**
+	 * Creates a clue game with a custom number of cards, drawing all randomness from rand.
+	 * @param rand not shared with any other game (use {@link SplittableRandom#split()} to derive one per game)
+	 */
+	public ClueSolver(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons, SplittableRandom rand) {
 		this.numberPlayers = numberPlayers;
 		this.numberSuspects = numberSuspects;
 		this.numberPlaces = numberPlaces;
 		this.numberWeapons = numberWeapons;
 		this.defaultGame = false;
 		this.gameOver = false;
+		this.winner = -1;
+		this.rand = rand;
+		this.seed = 0;
+		this.seeded = false;
+		this.botSuggestions = 0;
 		
-		this.solution = new ArrayList<HashSet<Integer>>();
-		this.unknowns = new ArrayList<HashSet<Integer>>();
-		this.hands = new ArrayList<HashSet<Integer>>();
-		this.freeSlots = new ArrayList<Integer>();
-		this.restrictions = new ArrayList<HashSet<Integer>>();
-		this.suggestionConstraints = new ArrayList<List<Integer>>();
-		this.gameMessages = "";
-		
-		//One for each category {Suspects, Places, Weapons}
-		for (int i = 0; i < 3; i++) {
-			unknowns.add(new HashSet<Integer>());
-			
-			//Populate each category with card numbers from that category
-			//All card locations are unknown at start of game
-			if (i == 0) {
-				for (int j = 0; j < numberSuspects; j++) {
-					unknowns.get(i).add(j);
-				}
-			}
-			if (i == 1) {
-				for (int j = 0; j < numberPlaces; j++) {
-					unknowns.get(i).add(numberSuspects + j);
-				}
-			}
-			if (i == 2) {
-				for (int j = 0; j < numberWeapons; j++) {
-					unknowns.get(i).add(numberSuspects + numberPlaces + j);
-				}
-			}
-		}
+		this.events = new ArrayList<GameEvent>();
+		this.gameMessages = new StringBuilder();
+		this.renderedEvents = 0;
+		this.messagesEnabled = true;
+		this.probabilityModel = ProbabilityModel.EXACT;
 		
 		//Total number of cards players can hold (3 belong in the case file)
 		int numberTotalPlayerCards = numberSuspects + numberPlaces + numberWeapons - 3;
@@ -284,161 +627,378 @@ public class ClueSolver {
 		
 		int cardsPerPlayer = numberTotalPlayerCards / numberPlayers;
 		
+		int[] handSizes = new int[numberPlayers];
 		for (int i = 0; i < numberPlayers; i++) {
-			hands.add(new HashSet<Integer>());
-			
 			if (unevenSplit > 0) {
-				freeSlots.add(cardsPerPlayer + 1);
+				handSizes[i] = cardsPerPlayer + 1;
 				unevenSplit--;
 			}
 			else {
-				freeSlots.add(cardsPerPlayer);
+				handSizes[i] = cardsPerPlayer;
 			}
-			
 		}
+		//All card locations are unknown at start of game
+		this.knowledge = new CardKnowledge(numberPlayers, numberSuspects, numberPlaces, numberWeapons, handSizes);
+		this.propagator = new KnowledgePropagator(knowledge);
 		
+		//Assign one card from each category to the case file
+		int numberCards = numberSuspects + numberPlaces + numberWeapons;
+		this.solution = new int[numberCards];
+		int suspectCF = rand.nextInt(numberSuspects);
+		int placesCF = numberSuspects + rand.nextInt(numberPlaces);
+		int weaponsCF = numberSuspects + numberPlaces + rand.nextInt(numberWeapons);
 		
-		//One for each player's hand and 3 case file spots {Suspect, Places, Weapons}
-		for (int i = 0; i < (numberPlayers + 3); i++) {
-			solution.add(new HashSet<Integer>());
-			restrictions.add(new HashSet<Integer>());
+		//Deck of the remaining cards to be split evenly between all players
+		int[] deck = new int[numberCards - 3];
+		int deckSize = 0;
+		for (int card = 0; card < numberCards; card++) {
+			if (card != suspectCF && card != placesCF && card != weaponsCF) {
+				deck[deckSize++] = card;
+			}
 		}
+		solution[suspectCF] = numberPlayers;
+		solution[placesCF] = numberPlayers+1;
+		solution[weaponsCF] = numberPlayers+2;
 		
-		//Create deck of all cards to be split among players and case file
-		int numberCards = numberSuspects + numberPlaces + numberWeapons;
-		List<Integer> deck = new ArrayList<Integer>();
-		for (int i = 0; i < numberCards; i++) {
-			deck.add(i);
+		//Deal cards one at a time in order, each drawn at random from those left (Fisher-Yates shuffle)
+		for (int i = 0; i < deckSize; i++) {
+			int randomCard = i + rand.nextInt(deckSize - i);
+			int card = deck[randomCard];
+			deck[randomCard] = deck[i];
+			deck[i] = card;
+			solution[card] = i % numberPlayers;
 		}
+		this.samplerSeed = rand.split().nextLong();
+	}
+	
+	/**
+	 * Copy of other for {@link #fork(SplittableRandom)}. The dealt cards and cached probabilities are never changed
+	 * in place, so they are shared.
+	 */
+	private ClueSolver(ClueSolver other, SplittableRandom rand) {
+		this.numberPlayers = other.numberPlayers;
+		this.numberSuspects = other.numberSuspects;
+		this.numberPlaces = other.numberPlaces;
+		this.numberWeapons = other.numberWeapons;
+		this.defaultGame = other.defaultGame;
+		this.gameOver = other.gameOver;
+		this.winner = other.winner;
+		this.rand = rand;
+		this.samplerSeed = other.samplerSeed;
+		this.seed = 0;
+		this.seeded = false;
+		this.botSuggestions = other.botSuggestions;
+		this.solution = other.solution;
+		this.currentTurn = other.currentTurn;
+		this.suggestionMade = other.suggestionMade;
 		
-		Random rand = new Random();
-		
-		//Assign one card from each category to the case file
-		Integer suspectCF = rand.nextInt(numberSuspects);
-		solution.get(numberPlayers).add(suspectCF);
-		deck.remove(suspectCF);
-		
-		Integer placesCF = numberSuspects + rand.nextInt(numberPlaces);
-		solution.get(numberPlayers+1).add(placesCF);
-		deck.remove(placesCF);
-		
-		Integer weaponsCF = numberSuspects + numberPlaces + rand.nextInt(numberWeapons);
-		solution.get(numberPlayers+2).add(weaponsCF);
-		deck.remove(weaponsCF);
+		this.knowledge = new CardKnowledge(other.knowledge);
+		this.propagator = new KnowledgePropagator(other.propagator, knowledge);
+		this.probabilityMatrix = other.probabilityMatrix;
+		this.probabilityMatrixModel = other.probabilityMatrixModel;
 		
-		//Split remaining cards evenly between all players
-		int currentPlayer = 0;
-		while (!deck.isEmpty()) {
-			//Deal cards one at a time in order
-			if (currentPlayer == numberPlayers) {
-				currentPlayer = 0;
-			}
-			
-			int randomCard = rand.nextInt(deck.size());
-			solution.get(currentPlayer).add(deck.get(randomCard));
-			deck.remove(randomCard);
-			
-			currentPlayer++;	
-		}	
+		this.events = new ArrayList<GameEvent>();
+		this.gameMessages = new StringBuilder();
+		this.renderedEvents = 0;
+		this.messagesEnabled = other.messagesEnabled;
+		this.probabilityModel = other.probabilityModel;
+		this.playerKnowledgeEnabled = other.playerKnowledgeEnabled;
+		if (other.playerKnowledge != null) {
+			this.playerKnowledge = new PlayerKnowledgeTracker(other.playerKnowledge);
+		}
+	}
+	
+	/**
+	 * Creates an independent copy of the game, e.g. for lookahead search, drawing its bot moves from a new random
+	 * generator. See {@link #fork(SplittableRandom)}.
+	 */
+	public ClueSolver fork() {
+		return fork(new SplittableRandom());
+	}
+	
+	/**
+	 * Creates an independent copy of the game which can be played on or given hypothetical updates (see
+	 * {@link #assumePass(int, int, int, int)}) without changing this game. Knowledge is copied as bit masks and
+	 * suggestion constraints are shared until either game adds one, so forking takes a handful of array copies
+	 * however far the game has gone. The fork has the same cards dealt and starts with an empty event log.
+	 * @param rand source of randomness for the fork's bot moves, not shared with any other game
+	 * @return the fork
+	 */
+	public ClueSolver fork(SplittableRandom rand) {
+		return new ClueSolver(this, rand);
+	}
+	
+	/**
+	 * Updates Player 1's knowledge as if player had been unable to refute {suspect, place, weapon}, without playing
+	 * a turn. Meant for forks explored by a search: the assumption may be impossible, which is shown by
+	 * {@link CardKnowledge#hasContradiction()}.
+	 */
+	public void assumePass(int player, int suspect, int place, int weapon) {
+		propagator.restrict(player, suspect);
+		propagator.restrict(player, place);
+		propagator.restrict(player, weapon);
+		propagator.propagate();
+		probabilityMatrix = null;
+	}
+	
+	/**
+	 * Updates Player 1's knowledge as if player had revealed card to them, without playing a turn. Meant for forks
+	 * explored by a search, see {@link #assumePass(int, int, int, int)}.
+	 */
+	public void assumeHolds(int player, int card) {
+		propagator.addToHand(player, card);
+		propagator.propagate();
+		probabilityMatrix = null;
+	}
+	
+	/**
+	 * Updates Player 1's knowledge as if player had revealed one of {suspect, place, weapon} to another player,
+	 * without playing a turn. Meant for forks explored by a search, see {@link #assumePass(int, int, int, int)}.
+	 */
+	public void assumeRefutes(int player, int suspect, int place, int weapon) {
+		addSuggestionConstraint(player, suspect, place, weapon);
 	}
 	
 	/**
 	 * Starts the game by revealing Player 1's hand and giving them the first turn
 	 */
 	public void startGame() {
-		for (int i = 0; i < solution.get(0).size(); i++) {
-			Iterator<Integer> it = solution.get(0).iterator();
-			while (it.hasNext()) {
-				Integer card = it.next();
-				hands.get(0).add(card);
-				unknowns.get(getCardType(card)).remove(card);
-				for (int j = 1; j < restrictions.size(); j++) {
-					if (!restrictions.get(j).contains(card)) {
-						restrictions.get(j).add(card);
-					}
-				}
+		for (int card = 0; card < solution.length; card++) {
+			if (solution[card] == 0) {
+				propagator.addToHand(0, card);
 			}
-			Integer remainingFree = 0;
-			freeSlots.remove(0);
-			freeSlots.add(0, remainingFree);
+		}
+		propagator.propagate();
+		probabilityMatrix = null;
+		if (playerKnowledgeEnabled) {
+			playerKnowledge = new PlayerKnowledgeTracker(numberPlayers, numberSuspects, numberPlaces, numberWeapons,
+					solution);
 		}
 		
 		currentTurn = 0;
 		suggestionMade = false;
+		publish(GameEvent.of(GameEvent.Type.START));
 	}
 	
 	public String simulateOpenentTurns() {
-		String message = "";
+		int firstEvent = events.size();
 		if (gameOver) {
-			message = "The game is already over\n";
+			log(GameEvent.of(GameEvent.Type.GAME_OVER));
 		}
 		else {
-			Random rand = new Random();
 			while(currentTurn != 0 && !this.gameOver) {
-				int randomSuspect = rand.nextInt(numberSuspects);
-				int randomPlace = numberSuspects + rand.nextInt(numberPlaces);
-				int randomWeapon = numberSuspects + numberPlaces + rand.nextInt(numberWeapons);
-				message += suggest(randomSuspect, randomPlace, randomWeapon);
+				BotPolicy policy = getBotPolicy(currentTurn);
+				if (policy == null) {
+					int randomSuspect = rand.nextInt(numberSuspects);
+					int randomPlace = numberSuspects + rand.nextInt(numberPlaces);
+					int randomWeapon = numberSuspects + numberPlaces + rand.nextInt(numberWeapons);
+					botSuggestions++;
+					suggest(randomSuspect, randomPlace, randomWeapon);
+				}
+				else {
+					int[] suggestion = checkCards(policy.chooseSuggestion(this, currentTurn), "suggested");
+					suggest(suggestion[0], suggestion[1], suggestion[2]);
+				}
 			}
 		}
-		gameMessages += message;
-		return message;
+		return messagesSince(firstEvent);
 	}
 	
 	public String enterPlayer1Turn(int suspect, int place, int weapon) {
-		String message = "";
+		int firstEvent = events.size();
 		if (gameOver) {
-			message = "The game is already over\n";
+			log(GameEvent.of(GameEvent.Type.GAME_OVER));
 		}
 		else if (currentTurn != 0) {
-			message = "Not Player 1's (your) turn!\n";
+			log(GameEvent.of(GameEvent.Type.NOT_YOUR_TURN));
 		}
 		else if (suggestionMade) {
-			message = "Player 1 (you) already made a suggestion this turn. You may make an accusation or end your turn\n";
+			log(GameEvent.of(GameEvent.Type.ALREADY_SUGGESTED));
 		}
 		else if (getCardType(suspect) != 0 || getCardType(place) != 1 || getCardType(weapon) != 2) {
-			message = "Please enter a proper suspect, place, and weapon card\n";
+			log(GameEvent.of(GameEvent.Type.IMPROPER_CARDS));
 		}
 		else {
-			message += suggest(suspect, place, weapon);
+			suggest(suspect, place, weapon);
 		}
-		gameMessages += message;
-		return message;
+		return messagesSince(firstEvent);
 	}
 	
 	public void endPlayer1Turn() {
 		if (currentTurn == 0) {
 			currentTurn++;
 			suggestionMade = false;
+			publish(GameEvent.of(GameEvent.Type.END_TURN));
 		}
 	}
 	
 	public String accuse(int suspect, int place, int weapon) {
-		String message = "";
-		HashSet<Integer> weapon_soln = solution.get(solution.size()-1);
-		HashSet<Integer> place_soln = solution.get(solution.size()-2);
-		HashSet<Integer> suspect_soln = solution.get(solution.size()-3);
-		
+		int firstEvent = events.size();
 		if (gameOver) {
-			message = "The game is already over\n";
+			log(GameEvent.of(GameEvent.Type.GAME_OVER));
 		}
 		else if (currentTurn != 0) {
-			message = "Not Player 1's (your) turn!\n";
+			log(GameEvent.of(GameEvent.Type.NOT_YOUR_TURN));
 		}
 		
 		else if (getCardType(suspect) != 0 || getCardType(place) != 1 || getCardType(weapon) != 2) {
-			message = "Please enter a proper suspect, place, and weapon card\n";
+			log(GameEvent.of(GameEvent.Type.IMPROPER_CARDS));
 		}
-		else if (suspect_soln.contains(suspect) && place_soln.contains(place) && weapon_soln.contains(weapon)) {
+		else if (isCaseFile(suspect, place, weapon)) {
 			this.gameOver = true;
-			message = "You correctly guessed the case file and WIN THE GAME!\n";
+			this.winner = 0;
+			log(new GameEvent(GameEvent.Type.ACCUSE_WIN, 0, -1, suspect, place, weapon, -1));
 		}
 		else {
 			this.gameOver = true;
-			message = "You guessed the case file wrong and LOSE THE GAME\n";
+			log(new GameEvent(GameEvent.Type.ACCUSE_LOSE, 0, -1, suspect, place, weapon, -1));
+		}
+		return messagesSince(firstEvent);
+	}
+	
+	/*
+	 * ----------------------
+	 * Saved state, used by GameStateFormat and GameJournal
+	 * ----------------------
+	 */
+	
+	boolean isDefaultGame() {
+		return defaultGame;
+	}
+	
+	/**
+	 * @return true if the game was created from a seed (and is not a fork), so its random draws can be replayed
+	 */
+	boolean hasSeed() {
+		return seeded;
+	}
+	
+	long getSeed() {
+		return seed;
+	}
+	
+	long getBotSuggestions() {
+		return botSuggestions;
+	}
+	
+	int getCurrentTurn() {
+		return currentTurn;
+	}
+	
+	boolean isSuggestionMade() {
+		return suggestionMade;
+	}
+	
+	/**
+	 * @return {@link #solution} itself, not a copy
+	 */
+	int[] getDeal() {
+		return solution;
+	}
+	
+	/**
+	 * Sets the turn state of a game being loaded. If the game has a seed, its random generator is also moved past
+	 * the draws of botSuggestions built-in bot suggestions, so it goes on to play exactly as the saved game would
+	 * have.
+	 */
+	void restoreState(int[] deal, int currentTurn, boolean suggestionMade, boolean gameOver, int winner,
+			long botSuggestions) {
+		System.arraycopy(deal, 0, solution, 0, solution.length);
+		this.currentTurn = currentTurn;
+		this.suggestionMade = suggestionMade;
+		this.gameOver = gameOver;
+		this.winner = winner;
+		if (seeded) {
+			for (long i = this.botSuggestions; i < botSuggestions; i++) {
+				rand.nextInt(numberSuspects);
+				rand.nextInt(numberPlaces);
+				rand.nextInt(numberWeapons);
+			}
 		}
-		this.gameMessages += message;
-		return message;
+		this.botSuggestions = botSuggestions;
+		probabilityMatrix = null;
+	}
+	
+	/**
+	 * Applies an event recorded from this game (or a saved copy of it) without playing it out: nobody is asked to
+	 * respond to suggestions, and facts learned are queued but not propagated until {@link #finishReplay()}. The
+	 * deduction rules only ever add facts, so propagating once at the end reaches the same knowledge as propagating
+	 * after every event did. Suggestions of built-in bots still take their random draws, so seeded games play on as
+	 * the recorded game would have.
+	 * @param event
+	 * @param policyMove true if event is a suggestion chosen by a {@link BotPolicy}, which drew no random numbers
+	 */
+	void replay(GameEvent event, boolean policyMove) {
+		int player = event.getPlayer();
+		switch (event.getType()) {
+		case START:
+			startGame();
+			return;
+		case END_TURN:
+			endPlayer1Turn();
+			return;
+		case SUGGESTION:
+			//Everyone's knowledge is brought up to date between suggestions, as during play
+			if (playerKnowledge != null) {
+				playerKnowledge.update();
+			}
+			if (player == 0) {
+				suggestionMade = true;
+			}
+			else {
+				if (!policyMove) {
+					rand.nextInt(numberSuspects);
+					rand.nextInt(numberPlaces);
+					rand.nextInt(numberWeapons);
+					botSuggestions++;
+				}
+				currentTurn = (player + 1) % numberPlayers;
+			}
+			break;
+		case PASS:
+			propagator.restrict(player, event.getSuspect());
+			propagator.restrict(player, event.getPlace());
+			propagator.restrict(player, event.getWeapon());
+			if (playerKnowledge != null) {
+				playerKnowledge.pass(player, event.getSuspect(), event.getPlace(), event.getWeapon());
+			}
+			break;
+		case REVEAL_CARD:
+			propagator.addToHand(player, event.getCard());
+			replayReveal(event);
+			break;
+		case REVEAL:
+			propagator.addConstraint(player, event.getSuspect(), event.getPlace(), event.getWeapon());
+			replayReveal(event);
+			break;
+		case BOT_WIN:
+			gameOver = true;
+			winner = player;
+			break;
+		case ACCUSE_WIN:
+			gameOver = true;
+			winner = 0;
+			break;
+		case ACCUSE_LOSE:
+		case BOT_LOSE:
+			gameOver = true;
+			break;
+		default:
+			break;
+		}
+		probabilityMatrix = null;
+		log(event);
+	}
+	
+	/**
+	 * Propagates everything learned from the events given to {@link #replay(GameEvent, boolean)}.
+	 */
+	void finishReplay() {
+		propagator.propagate();
+		if (playerKnowledge != null) {
+			playerKnowledge.update();
+		}
+		probabilityMatrix = null;
 	}
 	
 	/*
@@ -447,6 +1007,111 @@ public class ClueSolver {
 	 * ----------------------
 	 */
 	
+	/**
+	 * Records a replayed refutation for {@link #getPlayerKnowledge(int)}, if tracked.
+	 */
+	private void replayReveal(GameEvent event) {
+		if (playerKnowledge != null) {
+			playerKnowledge.reveal(event.getPlayer(), event.getOtherPlayer(), event.getSuspect(), event.getPlace(),
+					event.getWeapon(), event.getCard());
+		}
+	}
+	
+	/**
+	 * Computes the probabilities with {@link #probabilityModel}, or the next less exact model if the game is too
+	 * large for it, and records which model answered in {@link #probabilityMatrixModel}.
+	 */
+	private double[] computeProbabilityMatrix() {
+		if (probabilityModel == ProbabilityModel.EXACT) {
+			ClueExactSolver exact = new ClueExactSolver(this);
+			exact.setMaxStates(EXACT_MAX_STATES);
+			exact.setMaxStatesCounted(EXACT_MAX_STATES_COUNTED);
+			try {
+				double[] matrix = exact.solve();
+				probabilityMatrixModel = ProbabilityModel.EXACT;
+				return matrix;
+			} catch (IllegalStateException e) {
+				if (!exact.isTooLarge()) {
+					throw e;
+				}
+			}
+		}
+		if (probabilityModel != ProbabilityModel.HEURISTIC) {
+			ClueSampler sampler = new ClueSampler(this, samplerRandom());
+			sampler.setMaxSteps(SAMPLED_MAX_STEPS);
+			ClueSampler.Estimate estimate = sampler.trySample(SAMPLED_MAX_SAMPLES, 0);
+			if (estimate != null) {
+				probabilityMatrixModel = ProbabilityModel.SAMPLED;
+				return estimate.getProbabilities();
+			}
+		}
+		probabilityMatrixModel = ProbabilityModel.HEURISTIC;
+		return computeHeuristicMatrix();
+	}
+	
+	/**
+	 * @return generator for one {@link ProbabilityModel#SAMPLED} estimate, seeded from {@link #samplerSeed} and the
+	 * state of the game as saved, so a reloaded game gets the same estimate as the original
+	 */
+	private SplittableRandom samplerRandom() {
+		return new SplittableRandom(samplerSeed ^ (botSuggestions*0x9e3779b97f4a7c15L)
+				^ (propagator.getConstraints().size()*0xc2b2ae3d27d4eb4fL));
+	}
+	
+	/**
+	 * Fills in the probability matrix using the same calculation as {@link #getProbability(int, int, int)} with the
+	 * {@link ProbabilityModel#HEURISTIC} model, but only scanning each card's possible locations once rather than
+	 * once per location.
+	 * @return
+	 */
+	private double[] computeHeuristicMatrix() {
+		int numberLocations = numberPlayers + 3;
+		int numberCards = numberSuspects + numberPlaces + numberWeapons;
+		long playerMask = (1L << numberPlayers) - 1;
+		double[] matrix = new double[numberCards*numberLocations];
+		
+		for (int card = 0; card < numberCards; card++) {
+			int cardType = getCardType(card);
+			long possible = knowledge.getPossibleLocations(card);
+			double unknownCount = knowledge.getUnknownCount(cardType);
+			
+			//Only the case file slot of the card's own type can hold it
+			int caseFile = numberPlayers + cardType;
+			double notInCaseFile = 1.0;
+			if ((possible & (1L << caseFile)) != 0) {
+				notInCaseFile = 1.0 - ( ((double) 1) / unknownCount );
+			}
+			
+			double possibleLocations = 0;
+			long players = possible & playerMask;
+			while (players != 0) {
+				possibleLocations += knowledge.getFreeSlots(Long.numberOfTrailingZeros(players));
+				players &= players - 1;
+			}
+			
+			int offset = card*numberLocations;
+			players = possible & playerMask;
+			while (players != 0) {
+				int location = Long.numberOfTrailingZeros(players);
+				if (knowledge.isHeld(card, location)) {
+					matrix[offset + location] = 1;
+				}
+				else if (possibleLocations != 0) {
+					matrix[offset + location] = ( ((double) knowledge.getFreeSlots(location)) / possibleLocations) * notInCaseFile;
+				}
+				players &= players - 1;
+			}
+			
+			if (knowledge.isHeld(card, caseFile)) {
+				matrix[offset + caseFile] = 1;
+			}
+			else if ((possible & (1L << caseFile)) != 0) {
+				matrix[offset + caseFile] = ( ((double) 1) / unknownCount);
+			}
+		}
+		return matrix;
+	}
+	
 	/**
 	 * Current player makes a suggestion of case file contents, which is then passed around to other players until someone
 	 * can refute the claim or it makes it all the way back to the suggester implying the case file contents
@@ -454,61 +1119,44 @@ public class ClueSolver {
 	 * @param suspect
 	 * @param place
 	 * @param weapon
-	 * @return
 	 */
-	private String suggest(Integer suspect, Integer place, Integer weapon) {
-		String message = "";
+	private void suggest(Integer suspect, Integer place, Integer weapon) {
 		if (gameOver) {
-			message = "The game is already over\n";
-			this.gameMessages += message;
-			return message;
+			log(GameEvent.of(GameEvent.Type.GAME_OVER));
+			return;
 		}
 		
 		if (currentTurn == 0) {
 			if (suggestionMade) {
-				message = "You have already made a suggestion this turn. Please make an accusation or end your turn\n";
-				this.gameMessages += message;
-				return message;
+				log(GameEvent.of(GameEvent.Type.ALREADY_SUGGESTED));
+				return;
 			}
 		}
 		
-		if (defaultGame) {
-			if (currentTurn == 0) {
-				message += "You accuse suspect: " + cardNames[suspect] + " of using weapon: " +
-					cardNames[weapon] + " at place: " + cardNames[place] + " to commit the crime\n";
-			}
-			else {
-				message += "Player " + (currentTurn+1) + " accuses suspect: " + cardNames[suspect] + " of using weapon: " +
-					cardNames[weapon] + " at place: " + cardNames[place] + " to commit the crime\n";
-			}
-		}
-		else {
-			if (currentTurn == 0) {
-				message += "You accuse suspect: " + suspect + " of using weapon: " +
-					weapon + " at place: " + place + " to commit the crime\n";
-			}
-			else {
-				message += "Player " + (currentTurn+1) + " accuses suspect: " + suspect + " of using weapon: " +
-					weapon + " at place: " + place + " to commit the crime\n";
-			}
+		log(new GameEvent(GameEvent.Type.SUGGESTION, currentTurn, -1, suspect, place, weapon, -1));
+		if (ClueMetrics.isEnabled()) {
+			ClueMetrics.SUGGESTIONS.increment();
 		}
 		
 		int accusedPlayer = currentTurn + 1;
 		if (accusedPlayer == numberPlayers) {
 			accusedPlayer = 0;
 		}
+		int revealer = -1;
+		int revealedCard = -1;
 		//Pass suggestion around in a circle until someone admits to a card or suggestion
 		//makes the round all the way back to whoever started it
 		while (accusedPlayer != currentTurn) {
 			int accusedResponse = suggestResponse(accusedPlayer, suspect, place, weapon);
 			//Accused does not hold any of the three cards
 			if (accusedResponse == -1) {
-				message += passOnSuggest(accusedPlayer, suspect, place, weapon);
-
-							}
+				passOnSuggest(accusedPlayer, suspect, place, weapon);
+			}
 			//Accused holds one of three cards
 			else {
-				message += admitOnSuggest(currentTurn, accusedPlayer, suspect, place, weapon);
+				admitOnSuggest(currentTurn, accusedPlayer, suspect, place, weapon, accusedResponse);
+				revealer = accusedPlayer;
+				revealedCard = accusedResponse;
 				break;
 			}
 			//Pass on suggestion to next player (if no one has admitted yet)
@@ -517,11 +1165,21 @@ public class ClueSolver {
 				accusedPlayer = 0;
 			}
 		}
+		if (playerKnowledge != null) {
+			playerKnowledge.update();
+		}
 		
-		if (currentTurn != 0 && solution.get(solution.size()-3).contains(suspect) && solution.get(solution.size()-2).contains(place) 
-				&& solution.get(solution.size()-1).contains(weapon)) {
-			message += "Player " + (currentTurn+1) + " correctly guessed the contents of the case file and wins the game!\n";
+		BotPolicy policy = currentTurn == 0 ? null : getBotPolicy(currentTurn);
+		if (policy != null) {
+			int[] accusation = policy.chooseAccusation(this, currentTurn, revealer, revealedCard);
+			if (accusation != null) {
+				botAccuse(checkCards(accusation, "accused"));
+			}
+		}
+		else if (currentTurn != 0 && isCaseFile(suspect, place, weapon)) {
+			log(new GameEvent(GameEvent.Type.BOT_WIN, currentTurn, -1, suspect, place, weapon, -1));
 			this.gameOver = true;
+			this.winner = currentTurn;
 		}
 		
 		//Player 1 may still make an accusation before ending their turn
@@ -535,7 +1193,6 @@ public class ClueSolver {
 				currentTurn = 0;
 			}
 		}
-		return message;
 	}
 	
 	/**
@@ -545,38 +1202,63 @@ public class ClueSolver {
 	 * @param suspect
 	 * @param place
 	 * @param weapon
-	 * @return
 	 */
-	private String passOnSuggest(int player, Integer suspect, Integer place, Integer weapon) {
-		HashSet<Integer> playerRestrictions = restrictions.get(player);
-		if (!playerRestrictions.contains(suspect)) {
-			playerRestrictions.add(suspect);
-		}
-		if (!playerRestrictions.contains(place)) {
-			playerRestrictions.add(place);
-		}
-		if (!playerRestrictions.contains(weapon)) {
-			playerRestrictions.add(weapon);
+	private void passOnSuggest(int player, Integer suspect, Integer place, Integer weapon) {
+		propagator.restrict(player, suspect);
+		propagator.restrict(player, place);
+		propagator.restrict(player, weapon);
+		propagator.propagate();
+		probabilityMatrix = null;
+		if (playerKnowledge != null) {
+			playerKnowledge.pass(player, suspect, place, weapon);
 		}
 		
-		String message = "";
-		if (player == 0) {
-			message += "You deny holding any of the three cards\n";
+		log(new GameEvent(GameEvent.Type.PASS, player, -1, suspect, place, weapon, -1));
+	}
+	
+	/**
+	 * A bot's accusation, which wins the game if correct and otherwise ends it with no winner.
+	 */
+	private void botAccuse(int[] accusation) {
+		this.gameOver = true;
+		if (isCaseFile(accusation[0], accusation[1], accusation[2])) {
+			this.winner = currentTurn;
+			log(new GameEvent(GameEvent.Type.BOT_WIN, currentTurn, -1, accusation[0], accusation[1], accusation[2], -1));
 		}
 		else {
-			message += "Player " + (player+1) + " denies holding any of the three cards\n";
+			log(new GameEvent(GameEvent.Type.BOT_LOSE, currentTurn, -1, accusation[0], accusation[1], accusation[2], -1));
 		}
-		return message;
 	}
 	
-	private boolean hasCard(int player, Integer card) {
-		return solution.get(player).contains(card);
+	/**
+	 * @return the cards of a policy's suggestion or accusation
+	 * @throws IllegalStateException unless they are a suspect, a place and a weapon
+	 */
+	private int[] checkCards(int[] cards, String action) {
+		if (cards == null || cards.length != 3 || getCardType(cards[0]) != 0 || getCardType(cards[1]) != 1
+				|| getCardType(cards[2]) != 2) {
+			throw new IllegalStateException("Player " + (currentTurn + 1) + "'s policy " + action
+					+ " cards that are not a suspect, place and weapon");
+		}
+		return cards;
+	}
+	
+	private BotPolicy getBotPolicy(int player) {
+		return botPolicies == null ? null : botPolicies[player];
+	}
+	
+	/**
+	 * @return true if the three cards are the contents of the case file
+	 */
+	private boolean isCaseFile(int suspect, int place, int weapon) {
+		return solution[suspect] == numberPlayers && solution[place] == numberPlayers + 1
+				&& solution[weapon] == numberPlayers + 2;
 	}
 	
 	/**
 	 * If player holds one of the three cards, returns the card they hold. If the player
 	 * has previously revealed they hold one of the cards, will return the same card to simulate
-	 * strategy.
+	 * strategy. Players with a {@link BotPolicy} choose for themselves.
 	 * <p>
 	 * Returns -1 otherwise.
 	 * @param player
@@ -586,13 +1268,17 @@ public class ClueSolver {
 	 * @return
 	 */
 	private Integer suggestResponse(int player, Integer suspect, Integer place, Integer weapon) {
-		if (hands.get(player).contains(suspect)) {
+		BotPolicy policy = getBotPolicy(player);
+		if (policy != null) {
+			return policyResponse(policy, player, suspect, place, weapon);
+		}
+		if (knowledge.isHeld(suspect, player)) {
 			return suspect;
 		}
-		else if (hands.get(player).contains(place)) {
+		else if (knowledge.isHeld(place, player)) {
 			return place;
 		}
-		else if (hands.get(player).contains(weapon)) {
+		else if (knowledge.isHeld(weapon, player)) {
 			return weapon;
 		}
 		else if (hasCard(player, suspect)) {
@@ -607,6 +1293,31 @@ public class ClueSolver {
 		else return -1;
 	}
 	
+	/**
+	 * Lets policy choose which of the three cards player reveals, or returns -1 if player holds none of them.
+	 */
+	private int policyResponse(BotPolicy policy, int player, int suspect, int place, int weapon) {
+		int count = (hasCard(player, suspect) ? 1 : 0) + (hasCard(player, place) ? 1 : 0) + (hasCard(player, weapon) ? 1 : 0);
+		if (count == 0) {
+			return -1;
+		}
+		int[] held = new int[count];
+		int i = 0;
+		for (int card : new int[] {suspect, place, weapon}) {
+			if (hasCard(player, card)) {
+				held[i++] = card;
+			}
+		}
+		int card = policy.chooseReveal(this, player, currentTurn, held);
+		for (int option : held) {
+			if (card == option) {
+				return card;
+			}
+		}
+		throw new IllegalStateException("Player " + (player + 1) + "'s policy revealed card " + card
+				+ " which is not one of the suggested cards they hold");
+	}
+	
 	/**
 	 * Player who has received a suggestion refutes the claim by revealing to suggester that they hold one of the cards in the
 	 * suggestion.
@@ -615,52 +1326,72 @@ public class ClueSolver {
 	 * @param suspect
 	 * @param place
 	 * @param weapon
-	 * @return
+	 * @param admittedCard card playerAccused reveals, from {@link #suggestResponse(int, Integer, Integer, Integer)}
 	 */
-	private String admitOnSuggest(int playerAccuser, int playerAccused, Integer suspect, Integer place, Integer weapon) {
+	private void admitOnSuggest(int playerAccuser, int playerAccused, Integer suspect, Integer place, Integer weapon,
+			int admittedCard) {
+		if (playerKnowledge != null) {
+			playerKnowledge.reveal(playerAccused, playerAccuser, suspect, place, weapon, admittedCard);
+		}
 		if (currentTurn == 0) {
-			Integer admittedCard = suggestResponse(playerAccused, suspect, place, weapon);
-			if (!hands.get(playerAccused).contains(admittedCard)) {
-				hands.get(playerAccused).add(admittedCard);
-				unknowns.get(getCardType(admittedCard)).remove(admittedCard);
-				Integer remainingFree = freeSlots.get(playerAccused) - 1;
-				freeSlots.remove(playerAccused);
-				freeSlots.add(playerAccused, remainingFree);
-				for (int i = 0; i < restrictions.size(); i++) {
-					if (i != playerAccused) {
-						if (!restrictions.get(i).contains(admittedCard)) {
-							restrictions.get(i).add(admittedCard);
-						}
-					}
-				}
-			}
+			propagator.addToHand(playerAccused, admittedCard);
+			propagator.propagate();
+			probabilityMatrix = null;
 			
-			String message = "";
-			if (defaultGame) {
-				message ="Player " + (playerAccused+1) + " reveals to you they are holding card " + cardNames[admittedCard] + "\n";
-			}
-			else {
-				message ="Player " + (playerAccused+1) + " reveals to you they are holding card " + admittedCard + "\n";
-			}
-			return message;
+			log(new GameEvent(GameEvent.Type.REVEAL_CARD, playerAccused, playerAccuser, suspect, place, weapon, admittedCard));
 		}
 		else {
-			List<Integer> constraint = new ArrayList<Integer>();
-			constraint.add(playerAccused);
-			constraint.add(suspect);
-			constraint.add(place);
-			constraint.add(weapon);
-			if (!this.suggestionConstraints.contains(constraint)) {
-				suggestionConstraints.add(constraint);
-			}
-			String message = "";
-			if (playerAccused == 0) {
-				message += "You reveal you are holding one of the three cards to player " + (playerAccuser+1) + "\n";
-			}
-			else {
-				message += "Player " + (playerAccused+1) + " reveals they are holding one of the three cards to player " + (playerAccuser+1) + "\n";
-			}
-			return message;
+			addSuggestionConstraint(playerAccused, suspect, place, weapon);
+			log(new GameEvent(GameEvent.Type.REVEAL, playerAccused, playerAccuser, suspect, place, weapon, admittedCard));
+		}
+	}
+	
+	/**
+	 * Records that player holds at least one of the three cards, unless this is already known.
+	 */
+	private void addSuggestionConstraint(int player, int suspect, int place, int weapon) {
+		if (propagator.addConstraint(player, suspect, place, weapon)) {
+			propagator.propagate();
+			probabilityMatrix = null;
+		}
+	}
+	
+	/**
+	 * Passes an event to the listener, and records it if messages are enabled.
+	 */
+	private void log(GameEvent event) {
+		publish(event);
+		if (messagesEnabled) {
+			events.add(event);
+		}
+	}
+	
+	private void publish(GameEvent event) {
+		if (eventListener != null) {
+			eventListener.accept(event);
+		}
+	}
+	
+	/**
+	 * @return text of every event recorded since firstEvent
+	 */
+	private String messagesSince(int firstEvent) {
+		if (firstEvent == events.size()) {
+			return "";
+		}
+		renderEvents(firstEvent);
+		int start = gameMessages.length();
+		renderEvents(events.size());
+		return gameMessages.substring(start);
+	}
+	
+	/**
+	 * Appends the text of events not yet rendered, up to (not including) event upTo, to {@link #gameMessages}.
+	 */
+	private void renderEvents(int upTo) {
+		while (renderedEvents < upTo) {
+			events.get(renderedEvents).render(gameMessages, defaultGame);
+			renderedEvents++;
 		}
 	}
 
@@ -0,0 +1,632 @@
+package clue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the most likely complete deals of a {@link ClueSolver} game in-process, in place of running the external
+ * top k solutions WCSP program on the file written by {@link ClueFileWriter}. A deal's cost is the total of the
+ * -log weights that file gives its variables, so deals come out in the same order the external program ranks them.
+ * Only deals consistent with the game are returned: every hand filled to its size, one card of each type in the
+ * case file, and every suggestion constraint met.
+ * <p>
+ * Deals are produced lazily, cheapest first, by a best-first search over the unknown cards, those in open suggestions
+ * first. The estimate of a partial deal is its cost so far plus the cheapest location of each card still to be
+ * placed, which never overestimates, so each deal taken from the search is the next best. Costs are first priced
+ * per location from the cheapest way of filling the hands, which changes every deal's cost by the same amount but
+ * makes the estimates allow for hand sizes, and placements which would leave the remaining cards unable to fill the
+ * hands or a suggestion unable to be met are not tried. A popped node only adds its next sibling and its best child
+ * to the queue (the rest follow one at a time as those are taken), and the search dives straight down while it
+ * stays ahead of the queue, so in a standard game the first deal arrives in about one pass over the cards and memory
+ * grows with the number of deals taken rather than the number of deals possible. Large games with many equally
+ * likely cards can take much longer, as every equally cheap partial deal is tried before a dearer one.
+ */
+public class ClueTopKSolver implements Iterable<ClueTopKSolver.Deal> {
+
+	/**
+	 * Differences in cost below this are taken as rounding error, so the search keeps diving rather than going back
+	 * to a node which is only cheaper by rounding. Deals may come out of order by up to about this much.
+	 */
+	private static final double TOLERANCE = 1e-9;
+
+	/**
+	 * Largest table of cards confined to each set of locations kept for checking hand sizes early, in ints.
+	 */
+	private static final long MAX_CONFINED = 1L << 22;
+
+	private ClueSolver data;
+
+	public ClueTopKSolver(ClueSolver data) {
+		this.data = data;
+	}
+
+	/**
+	 * @param k
+	 * @return the k cheapest deals (fewer if there are fewer consistent deals), cheapest first
+	 */
+	public List<Deal> solve(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative");
+		}
+		List<Deal> deals = new ArrayList<Deal>();
+		Iterator<Deal> search = iterator();
+		while (deals.size() < k && search.hasNext()) {
+			deals.add(search.next());
+		}
+		return deals;
+	}
+
+	/**
+	 * Starts a new search over the game as it is now. Later events in the game do not affect a search already
+	 * started.
+	 * @return deals cheapest first, each computed when it is asked for
+	 */
+	@Override
+	public Iterator<Deal> iterator() {
+		return new Search();
+	}
+
+	/**
+	 * A complete assignment of every card to a location.
+	 */
+	public static class Deal {
+		private final int[] locations;
+		private final double cost;
+
+		Deal(int[] locations, double cost) {
+			this.locations = locations;
+			this.cost = cost;
+		}
+
+		/**
+		 * @return location of each card: a player number, or numberPlayers + card type for the case file
+		 */
+		public int[] getLocations() {
+			return locations.clone();
+		}
+
+		public int getLocation(int card) {
+			return locations[card];
+		}
+
+		/**
+		 * @return total -log weight of the deal, the value the WCSP model assigns it
+		 */
+		public double getCost() {
+			return cost;
+		}
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	/**
+	 * One partial deal: the unknown cards up to depth placed, the last one in its option-th cheapest location. The
+	 * rest of the deal is found by following parents.
+	 */
+	private static class Node {
+		final Node parent;
+		final int depth;
+		final int option;
+		final double cost;
+		/** cost plus the cheapest cost of every card still to be placed */
+		final double estimate;
+		/** estimate in units of {@link #TOLERANCE}, so that estimates differing only by rounding tie */
+		final long key;
+
+		Node(Node parent, int depth, int option, double cost, double estimate) {
+			this.parent = parent;
+			this.depth = depth;
+			this.option = option;
+			this.cost = cost;
+			this.estimate = estimate;
+			this.key = Math.round(estimate/TOLERANCE);
+		}
+	}
+
+	private class Search implements Iterator<Deal> {
+		/** Location of every card, with the unknown cards' filled in for the deal being built */
+		private final int[] deal;
+		/** Unknown cards in search order */
+		private final int[] order;
+		/** Locations each unknown card may be in, cheapest first, and their priced costs */
+		private final int[][] options;
+		private final double[][] optionCosts;
+		/** Cheapest total cost of the unknown cards from each depth on */
+		private final double[] remaining;
+		/** Total cost of the known cards, less the prices added to the costs of the unknown cards */
+		private final double baseCost;
+		private final int[] capacity;
+		/** Suggestion constraints as {player, depth of each candidate card...}, by the depth of their last candidate */
+		private final int[][][] closing;
+		/** The same constraints by player, checked when the player's hand is filled */
+		private final int[][][] filling;
+		/**
+		 * Number of cards from each depth on which can only be in a subset of locations, by subset, or null if there
+		 * are too many locations to keep it. Placing a card fails early if the cards left could not fill the room left.
+		 */
+		private final int[][] confined;
+		private final int[] room;
+
+		private final PriorityQueue<Node> queue;
+		private final int[] placed;
+		private final int[] used;
+		private Deal next;
+
+		Search() {
+			int numberPlayers = data.getNumberPlayers();
+			int numberLocations = numberPlayers + 3;
+			CardKnowledge knowledge = data.getKnowledge();
+			int numberCards = knowledge.getNumberCards();
+			double[] weights = new ClueFileWriter(data).computeWeights();
+
+			deal = new int[numberCards];
+			capacity = new int[numberLocations];
+			for (int location = 0; location < numberLocations; location++) {
+				capacity[location] = knowledge.getFreeSlots(location);
+			}
+
+			//Cost of a card being in a location is its true weight there plus its false weight everywhere else
+			List<int[]> unknownOptions = new ArrayList<int[]>();
+			List<double[]> unknownCosts = new ArrayList<double[]>();
+			List<Integer> unknownCards = new ArrayList<Integer>();
+			double known = 0;
+			for (int card = 0; card < numberCards; card++) {
+				double falseTotal = 0;
+				boolean forbiddenFalse = false;
+				int mustBe = -1;
+				for (int location = 0; location < numberLocations; location++) {
+					double weightFalse = weights[2*(card*numberLocations + location)];
+					if (weightFalse < 0) {
+						forbiddenFalse = true;
+						mustBe = location;
+					}
+					else {
+						falseTotal += weightFalse;
+					}
+				}
+				int knownLocation = knowledge.getKnownLocation(card);
+				if (knownLocation != -1) {
+					deal[card] = knownLocation;
+					int variable = card*numberLocations + knownLocation;
+					known += Math.max(0, weights[2*variable + 1]) + falseTotal - Math.max(0, weights[2*variable]);
+					continue;
+				}
+				int[] locations = new int[numberLocations];
+				double[] costs = new double[numberLocations];
+				int count = 0;
+				for (int location = 0; location < numberLocations; location++) {
+					int variable = card*numberLocations + location;
+					double weightTrue = weights[2*variable + 1];
+					if (weightTrue < 0 || knowledge.isRestricted(card, location) || capacity[location] == 0
+							|| (forbiddenFalse && location != mustBe)) {
+						continue;
+					}
+					locations[count] = location;
+					costs[count++] = weightTrue + falseTotal - Math.max(0, weights[2*variable]);
+				}
+				unknownCards.add(card);
+				unknownOptions.add(Arrays.copyOf(locations, count));
+				unknownCosts.add(Arrays.copyOf(costs, count));
+			}
+
+			//Every deal fills each location exactly, so adding a price per location to the cost of each card there
+			//adds the same amount to every deal. Pricing with the best assignment's prices makes each card's
+			//cheapest location agree with the best assignment, so the estimates account for hand sizes.
+			double[] prices = price(unknownOptions, unknownCosts, capacity);
+			boolean impossible = (prices == null);
+			if (!impossible) {
+				for (int i = 0; i < unknownCards.size(); i++) {
+					int[] locations = unknownOptions.get(i);
+					double[] costs = unknownCosts.get(i);
+					for (int j = 0; j < locations.length; j++) {
+						costs[j] += prices[locations[j]];
+					}
+					sortByCost(locations, costs, locations.length);
+				}
+				for (int location = 0; location < numberLocations; location++) {
+					known -= prices[location]*capacity[location];
+				}
+			}
+			baseCost = known;
+
+			//Cards in the most open suggestion constraints first and then the most constrained cards, so the costs of
+			//meeting suggestions and dead ends are found near the top of the search
+			SuggestionConstraints suggestions = data.getConstraints();
+			int numberUnknown = unknownCards.size();
+			Integer[] byOptions = new Integer[numberUnknown];
+			for (int i = 0; i < numberUnknown; i++) {
+				byOptions[i] = i;
+			}
+			Arrays.sort(byOptions, (a, b) -> suggestions.countByCard(unknownCards.get(a))
+					!= suggestions.countByCard(unknownCards.get(b))
+					? Integer.compare(suggestions.countByCard(unknownCards.get(b)), suggestions.countByCard(unknownCards.get(a)))
+					: Integer.compare(unknownOptions.get(a).length, unknownOptions.get(b).length));
+			order = new int[numberUnknown];
+			options = new int[numberUnknown][];
+			optionCosts = new double[numberUnknown][];
+			int[] depthOf = new int[numberCards];
+			Arrays.fill(depthOf, -1);
+			for (int d = 0; d < numberUnknown; d++) {
+				order[d] = unknownCards.get(byOptions[d]);
+				options[d] = unknownOptions.get(byOptions[d]);
+				optionCosts[d] = unknownCosts.get(byOptions[d]);
+				depthOf[order[d]] = d;
+			}
+			remaining = new double[numberUnknown + 1];
+			for (int d = numberUnknown - 1; d >= 0; d--) {
+				remaining[d] = remaining[d + 1] + (options[d].length == 0 ? 0 : optionCosts[d][0]);
+			}
+
+			closing = new int[numberUnknown][][];
+			filling = new int[numberLocations][][];
+			boolean unsatisfiable = !buildConstraints(depthOf);
+			confined = buildConfined(numberLocations);
+			room = (confined == null ? null : new int[1 << numberLocations]);
+			placed = new int[numberUnknown];
+			used = new int[numberLocations];
+			//Deeper nodes first among equal estimates, so ties do not widen the search
+			queue = new PriorityQueue<Node>((a, b) -> a.key != b.key ? Long.compare(a.key, b.key)
+					: Integer.compare(b.depth, a.depth));
+			if (!impossible && !unsatisfiable) {
+				queue.add(new Node(null, 0, -1, 0, remaining[0]));
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = search();
+			}
+			return next != null;
+		}
+
+		@Override
+		public Deal next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Deal deal = next;
+			next = null;
+			return deal;
+		}
+
+		/**
+		 * @return the next cheapest deal, or null once every deal has been found
+		 */
+		private Deal search() {
+			while (!queue.isEmpty()) {
+				Node node = queue.poll();
+				restore(node);
+				if (node.depth > 0) {
+					unplace(node);
+					pushSibling(node);
+					place(node);
+				}
+				//Dive through best children while nothing in the queue could be cheaper
+				while (true) {
+					if (node.depth == order.length) {
+						for (int d = 0; d < order.length; d++) {
+							deal[order[d]] = options[d][placed[d]];
+						}
+						return new Deal(deal.clone(), baseCost + node.cost);
+					}
+					int option = nextFeasible(node.depth, 0);
+					if (option == -1) {
+						break;
+					}
+					Node child = child(node, option);
+					Node best = queue.peek();
+					if (best != null && best.key < child.key) {
+						queue.add(child);
+						break;
+					}
+					pushSibling(child);
+					place(child);
+					node = child;
+				}
+			}
+			return null;
+		}
+
+		private Node child(Node parent, int option) {
+			int depth = parent.depth;
+			double cost = parent.cost + optionCosts[depth][option];
+			return new Node(parent, depth + 1, option, cost, cost + remaining[depth + 1]);
+		}
+
+		/**
+		 * Adds the next feasible option of node's card after node's own to the queue. The search state must hold
+		 * the placements of node's parent.
+		 */
+		private void pushSibling(Node node) {
+			int depth = node.depth - 1;
+			int option = nextFeasible(depth, node.option + 1);
+			if (option != -1) {
+				queue.add(child(node.parent, option));
+			}
+		}
+
+		/**
+		 * @return first option from start on for the card at depth which fits the placements above it, or -1
+		 */
+		private int nextFeasible(int depth, int start) {
+			for (int option = start; option < options[depth].length; option++) {
+				int location = options[depth][option];
+				if (used[location] < capacity[location] && allMet(closing[depth], depth, location)
+						&& (used[location] + 1 < capacity[location] || allMet(filling[location], depth, location))
+						&& canFill(depth, location)) {
+					return option;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return true if each constraint has a candidate card in its player's hand, counting the card at depth as
+		 * being in location
+		 */
+		private boolean allMet(int[][] constraints, int depth, int location) {
+			for (int[] constraint : constraints) {
+				int player = constraint[0];
+				boolean met = false;
+				for (int i = 1; i < constraint.length && !met; i++) {
+					int candidate = constraint[i];
+					met = (candidate == depth ? location == player
+							: placed[candidate] != -1 && options[candidate][placed[candidate]] == player);
+				}
+				if (!met) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Checks Hall's condition: with the card at depth in location, the cards after it can fill the room left in
+		 * every set of locations they are confined to.
+		 */
+		private boolean canFill(int depth, int location) {
+			if (confined == null) {
+				return true;
+			}
+			int[] needed = confined[depth + 1];
+			for (int set = 1; set < room.length; set++) {
+				int lowest = Integer.numberOfTrailingZeros(set);
+				room[set] = room[set & (set - 1)] + capacity[lowest] - used[lowest] - (lowest == location ? 1 : 0);
+				if (needed[set] > room[set]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Sets the search state to node's placements.
+		 */
+		private void restore(Node node) {
+			Arrays.fill(used, 0);
+			Arrays.fill(placed, -1);
+			for (Node n = node; n.depth > 0; n = n.parent) {
+				place(n);
+			}
+		}
+
+		private void place(Node node) {
+			placed[node.depth - 1] = node.option;
+			used[options[node.depth - 1][node.option]]++;
+		}
+
+		private void unplace(Node node) {
+			placed[node.depth - 1] = -1;
+			used[options[node.depth - 1][node.option]]--;
+		}
+
+		/**
+		 * Converts the suggestion constraints into {@link #closing} and {@link #filling}, with the candidate cards
+		 * which are unknown and may be in the player's hand. Constraints already met by a known card are dropped.
+		 * @return false if a constraint can no longer be met
+		 */
+		private boolean buildConstraints(int[] depthOf) {
+			List<List<int[]>> byDepth = new ArrayList<List<int[]>>();
+			for (int d = 0; d < closing.length; d++) {
+				byDepth.add(new ArrayList<int[]>());
+			}
+			List<List<int[]>> byPlayer = new ArrayList<List<int[]>>();
+			for (int location = 0; location < filling.length; location++) {
+				byPlayer.add(new ArrayList<int[]>());
+			}
+			SuggestionConstraints suggestions = data.getConstraints();
+			for (int s = 0; s < suggestions.size(); s++) {
+				if (suggestions.isSatisfied(s)) {
+					continue;
+				}
+				int player = suggestions.player(s);
+				int[] constraint = new int[4];
+				int count = 1;
+				for (int i = 0; i < 3; i++) {
+					int card = suggestions.card(s, i);
+					if (depthOf[card] != -1 && hasOption(depthOf[card], player)) {
+						constraint[count++] = depthOf[card];
+					}
+				}
+				if (count == 1) {
+					return false;
+				}
+				constraint = Arrays.copyOf(constraint, count);
+				constraint[0] = player;
+				Arrays.sort(constraint, 1, count);
+				byDepth.get(constraint[count - 1]).add(constraint);
+				byPlayer.get(player).add(constraint);
+			}
+			for (int d = 0; d < closing.length; d++) {
+				closing[d] = byDepth.get(d).toArray(new int[0][]);
+			}
+			for (int location = 0; location < filling.length; location++) {
+				filling[location] = byPlayer.get(location).toArray(new int[0][]);
+			}
+			return true;
+		}
+
+		private boolean hasOption(int depth, int location) {
+			for (int option : options[depth]) {
+				if (option == location) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return {@link #confined}, or null if it would take more than {@link #MAX_CONFINED} ints
+		 */
+		private int[][] buildConfined(int numberLocations) {
+			int sets = 1 << Math.min(numberLocations, 30);
+			if (numberLocations > 30 || (long) (options.length + 1)*sets > MAX_CONFINED) {
+				return null;
+			}
+			int[][] confined = new int[options.length + 1][];
+			confined[options.length] = new int[sets];
+			for (int d = options.length - 1; d >= 0; d--) {
+				confined[d] = confined[d + 1].clone();
+				int mask = 0;
+				for (int location : options[d]) {
+					mask |= 1 << location;
+				}
+				for (int set = mask; set < sets; set = (set + 1) | mask) {
+					confined[d][set]++;
+				}
+			}
+			return confined;
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * Finds the cheapest assignment of cards to locations which fills each location to its capacity, ignoring
+	 * suggestions, by adding one card at a time along the cheapest chain of moves ending at a location with room,
+	 * and returns the location prices it is optimal under: with them, every card's cheapest priced location is the
+	 * one it was assigned.
+	 * @param options locations each card may be in
+	 * @param costs cost of each card's locations
+	 * @param capacity number of cards each location takes, totalling the number of cards
+	 * @return price of each location, or null if there is no assignment
+	 */
+	private static double[] price(List<int[]> options, List<double[]> costs, int[] capacity) {
+		int numberLocations = capacity.length;
+		int numberCards = options.size();
+		int[] assigned = new int[numberCards];
+		int[] used = new int[numberLocations];
+		double[] distance = new double[numberLocations];
+		int[] previous = new int[numberLocations];
+		int[] moved = new int[numberLocations];
+		double[][] move = new double[numberLocations][numberLocations];
+		int[][] mover = new int[numberLocations][numberLocations];
+		for (int card = 0; card <= numberCards; card++) {
+			//Cheapest move of a card already assigned from each location to each other
+			for (double[] row : move) {
+				Arrays.fill(row, Double.POSITIVE_INFINITY);
+			}
+			for (int other = 0; other < card; other++) {
+				int from = assigned[other];
+				double fromCost = costOf(options.get(other), costs.get(other), from);
+				int[] locations = options.get(other);
+				for (int j = 0; j < locations.length; j++) {
+					double cost = costs.get(other)[j] - fromCost;
+					if (cost < move[from][locations[j]]) {
+						move[from][locations[j]] = cost;
+						mover[from][locations[j]] = other;
+					}
+				}
+			}
+			//Shortest chains of moves (Bellman-Ford, as moves can be negative), from the new card or, once every card
+			//is assigned, from anywhere to give the prices
+			Arrays.fill(distance, card == numberCards ? 0 : Double.POSITIVE_INFINITY);
+			Arrays.fill(previous, -1);
+			if (card < numberCards) {
+				int[] locations = options.get(card);
+				for (int j = 0; j < locations.length; j++) {
+					distance[locations[j]] = costs.get(card)[j];
+				}
+			}
+			for (int round = 0; round < numberLocations; round++) {
+				boolean changed = false;
+				for (int from = 0; from < numberLocations; from++) {
+					for (int to = 0; to < numberLocations; to++) {
+						if (distance[from] + move[from][to] < distance[to] - 1e-12) {
+							distance[to] = distance[from] + move[from][to];
+							previous[to] = from;
+							moved[to] = mover[from][to];
+							changed = true;
+						}
+					}
+				}
+				if (!changed) {
+					break;
+				}
+			}
+			if (card == numberCards) {
+				break;
+			}
+			int end = -1;
+			for (int location = 0; location < numberLocations; location++) {
+				if (used[location] < capacity[location] && distance[location] < Double.POSITIVE_INFINITY
+						&& (end == -1 || distance[location] < distance[end])) {
+					end = location;
+				}
+			}
+			if (end == -1) {
+				return null;
+			}
+			used[end]++;
+			for (int location = end; previous[location] != -1; location = previous[location]) {
+				assigned[moved[location]] = location;
+			}
+			//The chain starts where the new card goes
+			int start = end;
+			while (previous[start] != -1) {
+				start = previous[start];
+			}
+			assigned[card] = start;
+		}
+		double[] prices = new double[numberLocations];
+		for (int location = 0; location < numberLocations; location++) {
+			prices[location] = -distance[location];
+		}
+		return prices;
+	}
+
+	private static double costOf(int[] locations, double[] costs, int location) {
+		for (int j = 0; j < locations.length; j++) {
+			if (locations[j] == location) {
+				return costs[j];
+			}
+		}
+		throw new IllegalStateException("Location " + location + " is not an option");
+	}
+
+	/**
+	 * Sorts the first count locations by cost, cheapest first (insertion sort, as there are few locations).
+	 */
+	private static void sortByCost(int[] locations, double[] costs, int count) {
+		for (int i = 1; i < count; i++) {
+			int location = locations[i];
+			double cost = costs[i];
+			int j = i - 1;
+			while (j >= 0 && costs[j] > cost) {
+				locations[j + 1] = locations[j];
+				costs[j + 1] = costs[j];
+				j--;
+			}
+			locations[j + 1] = location;
+			costs[j + 1] = cost;
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package clue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Plays {@link BotPolicy} policies against each other over many seeded {@link ClueSolver} games and ranks them by
+ * how often they win. Every player of every game, Player 1 included, is played by a policy. Games keep track of
+ * what every player knows ({@link ClueSolver#getPlayerKnowledge(int)}), for policies which use it. Entrants take
+ * the seats in turn, game i seating entrant (i + seat) mod the number of entrants at each seat, so with as many
+ * games as entrants every entrant has played from every seat equally often.
+ * <p>
+ * Games are split into batches run on a fork-join pool, each game on its own ClueSolver with new policies, and the
+ * results are added up in {@link LongAdder} counters as games finish, so workers never wait on each other.
+ */
+public class ClueTournament {
+
+	/**
+	 * Games played by one fork-join task before it stops splitting its range further.
+	 */
+	private static final int BATCH = 64;
+
+	/**
+	 * z score of the 95% confidence intervals of {@link Standing}.
+	 */
+	private static final double Z = 1.96;
+
+	private int numberPlayers;
+	private int numberSuspects;
+	private int numberPlaces;
+	private int numberWeapons;
+	private List<String> names;
+	private List<Function<SplittableRandom, BotPolicy>> policies;
+	private int threads;
+
+	/**
+	 * Seed of the first game. Game i is dealt and played from seed + i, so any game can be replayed on its own.
+	 */
+	private long seed;
+
+	/**
+	 * Games where no one has accused after this many rounds are counted as unfinished.
+	 */
+	private int maxRounds;
+
+	/**
+	 * Tournament of games using the original 21 cards.
+	 * @param numberPlayers
+	 */
+	public ClueTournament(int numberPlayers) {
+		this(numberPlayers, 6, 9, 6);
+	}
+
+	/**
+	 * Tournament of games with a custom number of cards.
+	 */
+	public ClueTournament(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons) {
+		this.numberPlayers = numberPlayers;
+		this.numberSuspects = numberSuspects;
+		this.numberPlaces = numberPlaces;
+		this.numberWeapons = numberWeapons;
+		this.names = new ArrayList<String>();
+		this.policies = new ArrayList<Function<SplittableRandom, BotPolicy>>();
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.maxRounds = 1000;
+		this.seed = new SplittableRandom().nextLong();
+	}
+
+	/**
+	 * Enters a policy into the tournament.
+	 * @param name shown in the standings
+	 * @param policy creates the policy for each seat of each game from a random generator of its own
+	 */
+	public void addEntrant(String name, Function<SplittableRandom, BotPolicy> policy) {
+		names.add(name);
+		policies.add(policy);
+	}
+
+	/**
+	 * @param seed seed of the first game, so that a run can be reproduced exactly
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return Seed of the first game. Game i uses seed + i.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param threads parallelism of the fork-join pool, defaults to the number of cores. Samplers used by the games in
+	 * it default to a single thread, see {@link ClueSampler#defaultThreads()}.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Must use at least 1 thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @param maxRounds number of rounds after which a game is abandoned as unfinished
+	 */
+	public void setMaxRounds(int maxRounds) {
+		if (maxRounds < 1) {
+			throw new IllegalArgumentException("Must allow at least 1 round");
+		}
+		this.maxRounds = maxRounds;
+	}
+
+	/**
+	 * Plays the given number of games to completion.
+	 * @param games
+	 * @return standings of every entrant, best first
+	 */
+	public Result run(long games) {
+		if (policies.isEmpty()) {
+			throw new IllegalStateException("No policies have been entered");
+		}
+		long start = System.nanoTime();
+		Result result = new Result(names);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new Games(result, 0, games));
+		} finally {
+			pool.shutdownNow();
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Runs a tournament of the built-in policies from the command line and prints the standings.
+	 * Arguments: games numberPlayers [numberSuspects numberPlaces numberWeapons]
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 5) {
+			System.out.println("Usage: ClueTournament games numberPlayers [numberSuspects numberPlaces numberWeapons]");
+			return;
+		}
+		long games = Long.parseLong(args[0]);
+		int numberPlayers = Integer.parseInt(args[1]);
+		ClueTournament tournament;
+		if (args.length == 5) {
+			tournament = new ClueTournament(numberPlayers, Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+					Integer.parseInt(args[4]));
+		}
+		else {
+			tournament = new ClueTournament(numberPlayers);
+		}
+		tournament.addEntrant("random", RandomBotPolicy::new);
+		tournament.addEntrant("notebook", NotebookBotPolicy::new);
+		tournament.addEntrant("notebook-guess-2", rand -> new NotebookBotPolicy(rand, 2));
+		tournament.addEntrant("notebook-guess-4", rand -> new NotebookBotPolicy(rand, 4));
+		tournament.addEntrant("deductive", DeductiveBotPolicy::new);
+		System.out.println("Seed: " + tournament.getSeed());
+		System.out.println(tournament.run(games));
+	}
+
+	/**
+	 * Results of a tournament.
+	 */
+	public static class Result {
+		private final LongAdder games = new LongAdder();
+		private final LongAdder noWinner = new LongAdder();
+		private final LongAdder unfinished = new LongAdder();
+		private final List<Standing> standings;
+		private long elapsedNanos;
+
+		Result(List<String> names) {
+			this.standings = new ArrayList<Standing>();
+			for (String name : names) {
+				standings.add(new Standing(name));
+			}
+		}
+
+		public long getGames() {
+			return games.sum();
+		}
+
+		/**
+		 * @return Number of games which ended with a wrong accusation.
+		 */
+		public long getNoWinner() {
+			return noWinner.sum();
+		}
+
+		/**
+		 * @return Number of games abandoned after the maximum number of rounds.
+		 */
+		public long getUnfinished() {
+			return unfinished.sum();
+		}
+
+		public double getGamesPerSecond() {
+			return elapsedNanos == 0 ? 0 : getGames()/(elapsedNanos/1e9);
+		}
+
+		/**
+		 * @return Standing of every entrant, highest win rate first.
+		 */
+		public List<Standing> getStandings() {
+			List<Standing> ranked = new ArrayList<Standing>(standings);
+			Collections.sort(ranked, (a, b) -> Double.compare(b.getWinRate(), a.getWinRate()));
+			return ranked;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("Games: ").append(getGames()).append(" (")
+					.append(String.format(Locale.ROOT, "%.1f", getGamesPerSecond())).append(" games/sec), no winner: ")
+					.append(getNoWinner()).append(", unfinished: ").append(getUnfinished()).append("\n");
+			builder.append(String.format(Locale.ROOT, "%-4s %-20s %10s %10s %8s %17s %8s%n", "Rank", "Policy", "Seats",
+					"Wins", "Win %", "95% CI", "Wrong"));
+			int rank = 1;
+			for (Standing standing : getStandings()) {
+				builder.append(String.format(Locale.ROOT, "%-4d %-20s %10d %10d %8.2f %8.2f - %6.2f %8d%n", rank++,
+						standing.getName(), standing.getSeats(), standing.getWins(), 100*standing.getWinRate(),
+						100*standing.getLowerBound(), 100*standing.getUpperBound(), standing.getWrongAccusations()));
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * Results of one entrant.
+	 */
+	public static class Standing {
+		private final String name;
+		private final LongAdder seats = new LongAdder();
+		private final LongAdder wins = new LongAdder();
+		private final LongAdder wrongAccusations = new LongAdder();
+
+		Standing(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Number of seats the entrant played, one per player it played in each game.
+		 */
+		public long getSeats() {
+			return seats.sum();
+		}
+
+		public long getWins() {
+			return wins.sum();
+		}
+
+		/**
+		 * @return Number of games the entrant ended by accusing wrongly.
+		 */
+		public long getWrongAccusations() {
+			return wrongAccusations.sum();
+		}
+
+		/**
+		 * @return Wins per seat played.
+		 */
+		public double getWinRate() {
+			long n = getSeats();
+			return n == 0 ? 0 : ((double) getWins())/n;
+		}
+
+		/**
+		 * @return Lower end of the 95% Wilson score interval of the win rate.
+		 */
+		public double getLowerBound() {
+			return wilson(-1);
+		}
+
+		/**
+		 * @return Upper end of the 95% Wilson score interval of the win rate.
+		 */
+		public double getUpperBound() {
+			return wilson(1);
+		}
+
+		private double wilson(int sign) {
+			long n = getSeats();
+			if (n == 0) {
+				return sign < 0 ? 0 : 1;
+			}
+			double p = ((double) getWins())/n;
+			double z2 = Z*Z/n;
+			double centre = p + z2/2;
+			double spread = Z*Math.sqrt(p*(1 - p)/n + z2/(4*n));
+			return Math.min(1, Math.max(0, (centre + sign*spread)/(1 + z2)));
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * Plays one game from start to finish, recording its outcome in result.
+	 */
+	private void playGame(long game, Result result) {
+		long gameSeed = seed + game;
+		ClueSolver solver = new ClueSolver(numberPlayers, numberSuspects, numberPlaces, numberWeapons, gameSeed);
+		solver.setMessagesEnabled(false);
+		solver.setPlayerKnowledgeEnabled(true);
+		Outcome outcome = new Outcome();
+		solver.setEventListener(outcome);
+
+		//Seeded apart from the game's own generator, which draws the deal
+		SplittableRandom rand = new SplittableRandom(gameSeed).split();
+		int[] entrants = new int[numberPlayers];
+		BotPolicy[] players = new BotPolicy[numberPlayers];
+		for (int seat = 0; seat < numberPlayers; seat++) {
+			entrants[seat] = (int) ((game + seat) % policies.size());
+			players[seat] = policies.get(entrants[seat]).apply(rand.split());
+			solver.setBotPolicy(seat, players[seat]);
+			result.standings.get(entrants[seat]).seats.increment();
+		}
+		solver.startGame();
+		result.games.increment();
+
+		for (int round = 0; round < maxRounds && !solver.isGameOver(); round++) {
+			int[] suggestion = players[0].chooseSuggestion(solver, 0);
+			outcome.revealer = -1;
+			outcome.card = -1;
+			solver.enterPlayer1Turn(suggestion[0], suggestion[1], suggestion[2]);
+			int[] accusation = players[0].chooseAccusation(solver, 0, outcome.revealer, outcome.card);
+			if (accusation != null) {
+				solver.accuse(accusation[0], accusation[1], accusation[2]);
+			}
+			else {
+				solver.endPlayer1Turn();
+				solver.simulateOpenentTurns();
+			}
+		}
+
+		if (!solver.isGameOver()) {
+			result.unfinished.increment();
+		}
+		else if (solver.getWinner() >= 0) {
+			result.standings.get(entrants[solver.getWinner()]).wins.increment();
+		}
+		else {
+			result.noWinner.increment();
+			result.standings.get(entrants[outcome.loser]).wrongAccusations.increment();
+		}
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	/**
+	 * Plays games [first, first + count), splitting the range in half until it is at most {@link #BATCH} games.
+	 */
+	private class Games extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Result result;
+		private final long first;
+		private final long count;
+
+		Games(Result result, long first, long count) {
+			this.result = result;
+			this.first = first;
+			this.count = count;
+		}
+
+		@Override
+		protected void compute() {
+			if (count <= BATCH) {
+				for (long game = first; game < first + count; game++) {
+					playGame(game, result);
+				}
+			}
+			else {
+				long half = count/2;
+				invokeAll(new Games(result, first, half), new Games(result, first + half, count - half));
+			}
+		}
+	}
+
+	/**
+	 * Picks out of a game's events what Player 1's policy was shown and who accused wrongly.
+	 */
+	private static class Outcome implements Consumer<GameEvent> {
+		private int revealer;
+		private int card;
+		private int loser;
+
+		@Override
+		public void accept(GameEvent event) {
+			switch (event.getType()) {
+			case REVEAL_CARD:
+				revealer = event.getPlayer();
+				card = event.getCard();
+				break;
+			case ACCUSE_LOSE:
+			case BOT_LOSE:
+				loser = event.getPlayer();
+				break;
+			default:
+				break;
+			}
+		}
+	}
+}
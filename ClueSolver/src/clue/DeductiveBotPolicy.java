@@ -0,0 +1,82 @@
+package clue;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Bot policy which deduces everything it can from the whole game, through its {@link PlayerKnowledge}, so the
+ * game must have {@link ClueSolver#setPlayerKnowledgeEnabled(boolean)} set. It suggests, for each card type, a
+ * card picked at random from those it has not ruled out of the case file, keeps showing the same card to a player
+ * where it can, and accuses as soon as it knows the case file.
+ */
+public class DeductiveBotPolicy implements BotPolicy {
+
+	private final SplittableRandom rand;
+
+	/**
+	 * Last card revealed to each player, -1 if none.
+	 */
+	private int[] shown;
+
+	/**
+	 * @param rand source of the policy's random choices, not shared with any other policy or game
+	 */
+	public DeductiveBotPolicy(SplittableRandom rand) {
+		this.rand = rand;
+	}
+
+	@Override
+	public int[] chooseSuggestion(ClueSolver game, int player) {
+		PlayerKnowledge knowledge = game.getPlayerKnowledge(player);
+		int numberSuspects = game.getNumberSuspects();
+		int numberPlaces = game.getNumberPlaces();
+		int caseFile = game.getNumberPlayers();
+		return new int[] {randomCandidate(knowledge, caseFile, 0, numberSuspects),
+				randomCandidate(knowledge, caseFile + 1, numberSuspects, numberSuspects + numberPlaces),
+				randomCandidate(knowledge, caseFile + 2, numberSuspects + numberPlaces,
+						numberSuspects + numberPlaces + game.getNumberWeapons())};
+	}
+
+	@Override
+	public int chooseReveal(ClueSolver game, int player, int suggester, int[] held) {
+		if (shown == null) {
+			shown = new int[game.getNumberPlayers()];
+			Arrays.fill(shown, -1);
+		}
+		for (int card : held) {
+			if (card == shown[suggester]) {
+				return card;
+			}
+		}
+		shown[suggester] = held[rand.nextInt(held.length)];
+		return shown[suggester];
+	}
+
+	@Override
+	public int[] chooseAccusation(ClueSolver game, int player, int revealer, int card) {
+		PlayerKnowledge knowledge = game.getPlayerKnowledge(player);
+		int[] accusation = {knowledge.getCaseFileCard(0), knowledge.getCaseFileCard(1), knowledge.getCaseFileCard(2)};
+		if (accusation[0] == -1 || accusation[1] == -1 || accusation[2] == -1) {
+			return null;
+		}
+		return accusation;
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * @param caseFile location of the case file slot of the cards between first and last
+	 * @return a card between first and last which may be in the case file, chosen uniformly at random
+	 */
+	private int randomCandidate(PlayerKnowledge knowledge, int caseFile, int first, int last) {
+		int[] candidates = new int[last - first];
+		int count = 0;
+		for (int card = first; card < last; card++) {
+			if ((knowledge.getPossibleLocations(card) & (1L << caseFile)) != 0) {
+				candidates[count++] = card;
+			}
+		}
+		return candidates[rand.nextInt(count)];
+	}
+}
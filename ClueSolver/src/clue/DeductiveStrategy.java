@@ -0,0 +1,48 @@
+package clue;
+
+/**
+ * Player 1 strategy which always suggests, for each card type, the card most likely to be in the case file
+ * according to {@link ClueSolver#getProbabilityMatrix()}, and only accuses once all three case file cards have
+ * been deduced.
+ */
+public class DeductiveStrategy implements Player1Strategy {
+
+	@Override
+	public int[] chooseSuggestion(ClueSolver game) {
+		double[] probabilities = game.getProbabilityMatrix();
+		int numberPlayers = game.getNumberPlayers();
+		int numberLocations = numberPlayers + 3;
+		int numberCards = game.getNumberSuspects() + game.getNumberPlaces() + game.getNumberWeapons();
+		
+		int[] suggestion = new int[3];
+		double[] best = {-1, -1, -1};
+		for (int card = 0; card < numberCards; card++) {
+			int cardType = game.getCardType(card);
+			double probability = probabilities[card*numberLocations + numberPlayers + cardType];
+			if (probability > best[cardType]) {
+				best[cardType] = probability;
+				suggestion[cardType] = card;
+			}
+		}
+		return suggestion;
+	}
+
+	@Override
+	public int[] chooseAccusation(ClueSolver game) {
+		CardKnowledge knowledge = game.getKnowledge();
+		int numberPlayers = game.getNumberPlayers();
+		int numberCards = knowledge.getNumberCards();
+		
+		int[] accusation = {-1, -1, -1};
+		for (int card = 0; card < numberCards; card++) {
+			int cardType = game.getCardType(card);
+			if (knowledge.isHeld(card, numberPlayers + cardType)) {
+				accusation[cardType] = card;
+			}
+		}
+		if (accusation[0] == -1 || accusation[1] == -1 || accusation[2] == -1) {
+			return null;
+		}
+		return accusation;
+	}
+}
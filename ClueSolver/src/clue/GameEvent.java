@@ -0,0 +1,190 @@
+package clue;
+
+/**
+ * A single thing that happened in a {@link ClueSolver} game, stored as card and player numbers. Events are only turned
+ * into game message text when it is asked for, see {@link ClueSolver#getGameMessages()}.
+ */
+public class GameEvent {
+
+	public enum Type {
+		/** The game was started, see {@link ClueSolver#startGame()}. Has no message */
+		START,
+		/** Player 1 ended their turn. Has no message */
+		END_TURN,
+		/** A move was attempted after the game ended */
+		GAME_OVER,
+		/** Player 1 tried to move during another player's turn */
+		NOT_YOUR_TURN,
+		/** Player 1 tried to make a second suggestion in one turn */
+		ALREADY_SUGGESTED,
+		/** Player 1 entered cards that are not a suspect, place and weapon */
+		IMPROPER_CARDS,
+		/** player suggested {suspect, place, weapon} */
+		SUGGESTION,
+		/** player could not refute the current suggestion */
+		PASS,
+		/** player revealed card to Player 1 */
+		REVEAL_CARD,
+		/** player revealed card, one of the suggested cards, to otherPlayer, without Player 1 seeing which */
+		REVEAL,
+		/** player correctly accused {suspect, place, weapon}; built-in bots win as soon as they suggest the case file */
+		BOT_WIN,
+		/** Player 1 correctly accused {suspect, place, weapon} */
+		ACCUSE_WIN,
+		/** Player 1 wrongly accused {suspect, place, weapon} */
+		ACCUSE_LOSE,
+		/** player, a bot with a {@link BotPolicy}, wrongly accused {suspect, place, weapon} */
+		BOT_LOSE
+	}
+
+	private final Type type;
+	private final int player;
+	private final int otherPlayer;
+	private final int suspect;
+	private final int place;
+	private final int weapon;
+	private final int card;
+
+	GameEvent(Type type, int player, int otherPlayer, int suspect, int place, int weapon, int card) {
+		this.type = type;
+		this.player = player;
+		this.otherPlayer = otherPlayer;
+		this.suspect = suspect;
+		this.place = place;
+		this.weapon = weapon;
+		this.card = card;
+	}
+
+	static GameEvent of(Type type) {
+		return new GameEvent(type, -1, -1, -1, -1, -1, -1);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return Player who acted, or -1 if not relevant to this type of event.
+	 */
+	public int getPlayer() {
+		return player;
+	}
+
+	/**
+	 * @return Player who made the suggestion being refuted by a {@link Type#REVEAL}, or -1 otherwise.
+	 */
+	public int getOtherPlayer() {
+		return otherPlayer;
+	}
+
+	public int getSuspect() {
+		return suspect;
+	}
+
+	public int getPlace() {
+		return place;
+	}
+
+	public int getWeapon() {
+		return weapon;
+	}
+
+	/**
+	 * @return Card revealed by a {@link Type#REVEAL_CARD} or {@link Type#REVEAL}, or -1 otherwise. The card of a
+	 * REVEAL between two other players is recorded so the game can be rebuilt with what every player knows, and must
+	 * not be shown to Player 1; in the events of {@link ClueSolver#getEvents()} it is -1.
+	 */
+	public int getCard() {
+		return card;
+	}
+
+	/**
+	 * @return this event as Player 1 saw it: the same event, or a copy without the card of a {@link Type#REVEAL}
+	 * between two other players
+	 */
+	GameEvent withoutHiddenCard() {
+		if (type != Type.REVEAL || player == 0) {
+			return this;
+		}
+		return new GameEvent(type, player, otherPlayer, suspect, place, weapon, -1);
+	}
+
+	/**
+	 * Appends the game message for this event.
+	 * @param builder
+	 * @param defaultGame true to use {@link ClueSolver#cardNames} rather than card numbers
+	 */
+	public void render(StringBuilder builder, boolean defaultGame) {
+		switch (type) {
+		case START:
+		case END_TURN:
+			break;
+		case GAME_OVER:
+			builder.append("The game is already over\n");
+			break;
+		case NOT_YOUR_TURN:
+			builder.append("Not Player 1's (your) turn!\n");
+			break;
+		case ALREADY_SUGGESTED:
+			builder.append("Player 1 (you) already made a suggestion this turn. You may make an accusation or end your turn\n");
+			break;
+		case IMPROPER_CARDS:
+			builder.append("Please enter a proper suspect, place, and weapon card\n");
+			break;
+		case SUGGESTION:
+			if (player == 0) {
+				builder.append("You accuse suspect: ");
+			}
+			else {
+				builder.append("Player ").append(player+1).append(" accuses suspect: ");
+			}
+			builder.append(cardName(suspect, defaultGame)).append(" of using weapon: ").append(cardName(weapon, defaultGame))
+					.append(" at place: ").append(cardName(place, defaultGame)).append(" to commit the crime\n");
+			break;
+		case PASS:
+			if (player == 0) {
+				builder.append("You deny holding any of the three cards\n");
+			}
+			else {
+				builder.append("Player ").append(player+1).append(" denies holding any of the three cards\n");
+			}
+			break;
+		case REVEAL_CARD:
+			builder.append("Player ").append(player+1).append(" reveals to you they are holding card ")
+					.append(cardName(card, defaultGame)).append("\n");
+			break;
+		case REVEAL:
+			if (player == 0) {
+				builder.append("You reveal you are holding one of the three cards to player ");
+			}
+			else {
+				builder.append("Player ").append(player+1).append(" reveals they are holding one of the three cards to player ");
+			}
+			builder.append(otherPlayer+1).append("\n");
+			break;
+		case BOT_WIN:
+			builder.append("Player ").append(player+1).append(" correctly guessed the contents of the case file and wins the game!\n");
+			break;
+		case ACCUSE_WIN:
+			builder.append("You correctly guessed the case file and WIN THE GAME!\n");
+			break;
+		case ACCUSE_LOSE:
+			builder.append("You guessed the case file wrong and LOSE THE GAME\n");
+			break;
+		case BOT_LOSE:
+			builder.append("Player ").append(player+1).append(" guessed the case file wrong and loses the game\n");
+			break;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		render(builder, false);
+		return builder.toString();
+	}
+
+	private static String cardName(int card, boolean defaultGame) {
+		return defaultGame ? ClueSolver.cardNames[card] : Integer.toString(card);
+	}
+}
@@ -0,0 +1,237 @@
+package clue;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of a {@link ClueSolver} game, written as the game is played, from which the game can be
+ * rebuilt after a crash or reprocessed offline. Files are little endian:
+ * <pre>
+ * int    {@link #MAGIC}
+ * int    {@link #VERSION}
+ * int    {@link GameStateFormat#VERSION} of the snapshot
+ * record the game when the journal was opened, in {@link GameStateFormat}
+ * event  every event since, 20 bytes each:
+ *        byte type, byte player + 1, byte otherPlayer + 1, byte flags, int suspect, int place, int weapon, int card
+ *        flags: 1 a suggestion chosen by a {@link BotPolicy}, which drew no random numbers
+ * </pre>
+ * Events are buffered and written in batches of {@link #setBatchSize(int)}, so a crash loses at most the unwritten
+ * batch; with {@link #setSync(boolean)} each batch is also forced to disk before play goes on.
+ * <p>
+ * {@link #replay(Path)} rebuilds the game by applying the recorded results of each suggestion rather than playing
+ * it out again, and propagates what was learned once at the end instead of after every event, so it is much faster
+ * than re-simulating the game. A partly written last event, as left by a crash, is ignored. If the game tracks what
+ * every player knows and the journal was opened before the game started, that is rebuilt too.
+ * <p>
+ * Not thread safe; a journal must only be used by the thread playing its game.
+ */
+public class GameJournal implements Consumer<GameEvent>, Closeable {
+
+	/**
+	 * First int of a journal file ("CLUJ").
+	 */
+	public static final int MAGIC = 0x434c554a;
+
+	/**
+	 * Second int of a journal file. Changes whenever the event layout or the event types change.
+	 */
+	public static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 12;
+	private static final int EVENT_SIZE = 20;
+	private static final int FLAG_POLICY_MOVE = 1;
+	private static final GameEvent.Type[] TYPES = GameEvent.Type.values();
+
+	private ClueSolver game;
+	private FileChannel channel;
+	private ByteBuffer batch;
+	private boolean sync;
+	private long events;
+
+	/**
+	 * Creates (or replaces) the journal file at path, writes a snapshot of game to it and sets the journal as the
+	 * game's event listener, so every event from now on is recorded. The batch size starts at 64 events, without
+	 * syncing.
+	 * @param path
+	 * @param game
+	 * @throws IOException
+	 */
+	public GameJournal(Path path, ClueSolver game) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		try {
+			ByteBuffer snapshot = ByteBuffer.allocate(HEADER_SIZE + GameStateFormat.encodedSize(game))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			snapshot.putInt(MAGIC);
+			snapshot.putInt(VERSION);
+			snapshot.putInt(GameStateFormat.VERSION);
+			GameStateFormat.encode(game, snapshot);
+			snapshot.flip();
+			writeFully(snapshot);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.game = game;
+		this.sync = false;
+		this.events = 0;
+		setBatchSize(64);
+		game.setEventListener(this);
+	}
+
+	/**
+	 * Sets how many events are buffered before they are written, writing any already buffered.
+	 * @param batchSize at least 1; 1 writes every event as it happens
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		if (batch != null) {
+			flush();
+		}
+		batch = ByteBuffer.allocate(batchSize*EVENT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @param sync true to force each batch to disk when it is written, so it survives a crash of the machine and not
+	 * just of the program
+	 */
+	public void setSync(boolean sync) {
+		this.sync = sync;
+	}
+
+	/**
+	 * Records event, writing the batch if it is full. Called by the game for every event.
+	 * @param event
+	 * @throws UncheckedIOException if the batch could not be written
+	 */
+	@Override
+	public void accept(GameEvent event) {
+		if (channel == null) {
+			throw new IllegalStateException("Game journal is closed");
+		}
+		batch.put((byte) event.getType().ordinal());
+		batch.put((byte) (event.getPlayer() + 1));
+		batch.put((byte) (event.getOtherPlayer() + 1));
+		batch.put((byte) (isPolicyMove(event) ? FLAG_POLICY_MOVE : 0));
+		batch.putInt(event.getSuspect());
+		batch.putInt(event.getPlace());
+		batch.putInt(event.getWeapon());
+		batch.putInt(event.getCard());
+		events++;
+		if (!batch.hasRemaining()) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered events, forcing them to disk if syncing.
+	 * @throws UncheckedIOException if they could not be written
+	 */
+	public void flush() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			batch.flip();
+			writeFully(batch);
+			batch.clear();
+			if (sync) {
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return number of events recorded so far
+	 */
+	public long getEvents() {
+		return events;
+	}
+
+	/**
+	 * Writes the buffered events, forces the file to disk, stops listening to the game and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		try {
+			flush();
+			channel.force(false);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			channel.close();
+			channel = null;
+			game.setEventListener(null);
+		}
+	}
+
+	/**
+	 * Rebuilds the game recorded in the journal at path, as it was after the last complete event. Game messages of
+	 * the recorded events are rebuilt too, unless messages are then disabled on the game.
+	 * @param path
+	 * @return the game, ready to be played on
+	 * @throws IOException if the file is not a journal of this version or is corrupt
+	 */
+	public static ClueSolver replay(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a game journal: " + path);
+		}
+		int version = buffer.getInt();
+		int stateVersion = buffer.getInt();
+		if (version != VERSION || stateVersion != GameStateFormat.VERSION) {
+			throw new IOException("Unsupported game journal version " + version + "." + stateVersion + ": " + path);
+		}
+		try {
+			ClueSolver game = GameStateFormat.decode(buffer);
+			while (buffer.remaining() >= EVENT_SIZE) {
+				int type = buffer.get();
+				if (type < 0 || type >= TYPES.length) {
+					throw new IOException("Corrupt game journal event at " + buffer.position() + ": " + path);
+				}
+				int player = buffer.get() - 1;
+				int otherPlayer = buffer.get() - 1;
+				int flags = buffer.get();
+				game.replay(new GameEvent(TYPES[type], player, otherPlayer, buffer.getInt(), buffer.getInt(),
+						buffer.getInt(), buffer.getInt()), (flags & FLAG_POLICY_MOVE) != 0);
+			}
+			game.finishReplay();
+			return game;
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt game journal: " + path, e);
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * @return true if event is a bot's suggestion chosen by its {@link BotPolicy}. Policies are not saved, so this is
+	 * only known while the game is played.
+	 */
+	private boolean isPolicyMove(GameEvent event) {
+		return event.getType() == GameEvent.Type.SUGGESTION && event.getPlayer() > 0
+				&& game.hasBotPolicy(event.getPlayer());
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
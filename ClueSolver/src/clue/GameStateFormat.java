@@ -0,0 +1,274 @@
+package clue;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact binary form of a {@link ClueSolver} game, used by {@link GameStateWriter} and {@link GameStateReader}.
+ * Buffers must be little endian. Each game is one record:
+ * <pre>
+ * int    length of the rest of the record in bytes
+ * byte   number of players
+ * byte   flags: 1 default game, 2 created from a seed, 4 game over, 8 Player 1 has suggested this turn,
+ *        16 what every player knows is tracked (see {@link ClueSolver#setPlayerKnowledgeEnabled(boolean)})
+ * byte   player whose turn it is
+ * byte   winner + 1 (0 if no one has won)
+ * int    number of suspects, places and weapons (3 ints)
+ * long   seed (0 if not created from a seed)
+ * long   number of bot suggestions made so far
+ * byte   location each card was dealt to, for every card
+ * long   held cards of each location as {@link CardKnowledge#getHeld(int, int)} words, location by location
+ * long   restricted cards of each location, laid out the same way
+ * int    number of suggestion constraints
+ * long   each suggestion constraint, packed by {@link #pack(int, int, int, int)}
+ * </pre>
+ * Everything else known about the game (free slots, unknown counts, possible locations) follows from the held and
+ * restricted cards, so it is rebuilt on loading rather than stored. Game messages are not stored.
+ */
+public class GameStateFormat {
+
+	/**
+	 * First int of a game state file ("CLUS").
+	 */
+	public static final int MAGIC = 0x434c5553;
+
+	/**
+	 * Second int of a game state file. Changes whenever the record layout or the way games draw random numbers
+	 * changes, since replaying bot moves of a seeded game depends on both.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Bytes before the first record of a file: {@link #MAGIC} and {@link #VERSION}.
+	 */
+	public static final int HEADER_SIZE = 8;
+
+	/**
+	 * Bytes of a record after its length prefix, leaving out the cards, masks and constraints: the 4 bytes of players
+	 * and turn state, the deck size, seed and bot suggestion count, and the number of constraints.
+	 */
+	private static final int FIXED_SIZE = 4 + 12 + 16 + 4;
+
+	private static final int FLAG_DEFAULT_GAME = 1;
+	private static final int FLAG_SEEDED = 2;
+	private static final int FLAG_GAME_OVER = 4;
+	private static final int FLAG_SUGGESTION_MADE = 8;
+	private static final int FLAG_PLAYER_KNOWLEDGE = 16;
+
+	/**
+	 * Bits used by each card in a packed suggestion constraint, so games must have fewer than 2^19 cards.
+	 */
+	private static final int CARD_BITS = 19;
+	private static final long CARD_MASK = (1L << CARD_BITS) - 1;
+
+	private GameStateFormat() {
+	}
+
+	/**
+	 * @param game
+	 * @return number of bytes {@link #encode(ClueSolver, ByteBuffer)} writes for game, including the length prefix
+	 */
+	public static int encodedSize(ClueSolver game) {
+		CardKnowledge knowledge = game.getKnowledge();
+		int masks = knowledge.getNumberLocations()*knowledge.getWords();
+		return 4 + FIXED_SIZE + knowledge.getNumberCards() + 16*masks + 8*game.getConstraints().size();
+	}
+
+	/**
+	 * Writes game as one record at the buffer's position, advancing it.
+	 * @param game
+	 * @param buffer little endian, with at least {@link #encodedSize(ClueSolver)} bytes remaining
+	 */
+	public static void encode(ClueSolver game, ByteBuffer buffer) {
+		checkOrder(buffer);
+		CardKnowledge knowledge = game.getKnowledge();
+		int numberLocations = knowledge.getNumberLocations();
+		int words = knowledge.getWords();
+		SuggestionConstraints constraints = game.getConstraints();
+
+		buffer.putInt(encodedSize(game) - 4);
+		buffer.put((byte) game.getNumberPlayers());
+		int flags = (game.isDefaultGame() ? FLAG_DEFAULT_GAME : 0) | (game.hasSeed() ? FLAG_SEEDED : 0)
+				| (game.isGameOver() ? FLAG_GAME_OVER : 0) | (game.isSuggestionMade() ? FLAG_SUGGESTION_MADE : 0)
+				| (game.isPlayerKnowledgeEnabled() ? FLAG_PLAYER_KNOWLEDGE : 0);
+		buffer.put((byte) flags);
+		buffer.put((byte) game.getCurrentTurn());
+		buffer.put((byte) (game.getWinner() + 1));
+		buffer.putInt(game.getNumberSuspects());
+		buffer.putInt(game.getNumberPlaces());
+		buffer.putInt(game.getNumberWeapons());
+		buffer.putLong(game.getSeed());
+		buffer.putLong(game.getBotSuggestions());
+		for (int location : game.getDeal()) {
+			buffer.put((byte) location);
+		}
+		for (int location = 0; location < numberLocations; location++) {
+			for (int w = 0; w < words; w++) {
+				buffer.putLong(knowledge.getHeld(location, w));
+			}
+		}
+		for (int location = 0; location < numberLocations; location++) {
+			for (int w = 0; w < words; w++) {
+				buffer.putLong(knowledge.getRestricted(location, w));
+			}
+		}
+		buffer.putInt(constraints.size());
+		for (int i = 0; i < constraints.size(); i++) {
+			buffer.putLong(constraints.get(i));
+		}
+	}
+
+	/**
+	 * Reads one record at the buffer's position, advancing it past the record. Games created from a seed have their
+	 * random generator restored too, so they play on exactly as the saved game would have; other games continue
+	 * with a new generator.
+	 * @param buffer little endian
+	 * @return the saved game
+	 * @throws IllegalArgumentException if the record is malformed or describes an impossible game
+	 */
+	public static ClueSolver decode(ByteBuffer buffer) {
+		checkOrder(buffer);
+		try {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			check(length >= FIXED_SIZE && length <= buffer.remaining(), "has the wrong length");
+			int end = start + 4 + length;
+			int numberPlayers = buffer.get();
+			int flags = buffer.get();
+			int currentTurn = buffer.get();
+			int winner = buffer.get() - 1;
+			int numberSuspects = buffer.getInt();
+			int numberPlaces = buffer.getInt();
+			int numberWeapons = buffer.getInt();
+			long seed = buffer.getLong();
+			long botSuggestions = buffer.getLong();
+
+			check(numberPlayers >= 2 && numberPlayers <= CardKnowledge.MAX_PLAYERS, "has an impossible number of players");
+			check(currentTurn >= 0 && currentTurn < numberPlayers && winner >= -1 && winner < numberPlayers,
+					"has an impossible turn or winner");
+			check(numberSuspects >= 1 && numberPlaces >= 1 && numberWeapons >= 1, "has an empty card type");
+			check((flags & FLAG_DEFAULT_GAME) == 0 || (numberSuspects == 6 && numberPlaces == 9 && numberWeapons == 6),
+					"is a default game with the wrong cards");
+			long cards = (long) numberSuspects + numberPlaces + numberWeapons;
+			long maskBytes = 16L*(numberPlayers + 3)*((cards + Long.SIZE - 1)/Long.SIZE);
+			check(cards < (1L << CARD_BITS) && FIXED_SIZE + cards + maskBytes <= length, "has too many cards");
+			check(botSuggestions >= 0, "has a negative number of bot suggestions");
+
+			ClueSolver game = newGame(numberPlayers, numberSuspects, numberPlaces, numberWeapons, flags, seed);
+			CardKnowledge knowledge = game.getKnowledge();
+			int numberCards = knowledge.getNumberCards();
+			int numberLocations = knowledge.getNumberLocations();
+			int words = knowledge.getWords();
+
+			//The new game was dealt the same number of cards to each location as any deal of this deck
+			int[] dealt = new int[numberLocations];
+			for (int location : game.getDeal()) {
+				dealt[location]++;
+			}
+			int[] deal = new int[numberCards];
+			for (int card = 0; card < numberCards; card++) {
+				int location = buffer.get();
+				check(location >= 0 && location < numberLocations, "deals a card to a location that does not exist");
+				check(location < numberPlayers || location == numberPlayers + game.getCardType(card),
+						"deals a card to the wrong case file slot");
+				deal[card] = location;
+				dealt[location]--;
+			}
+			for (int location = 0; location < numberLocations; location++) {
+				check(dealt[location] == 0, "has the wrong number of cards in a hand");
+			}
+			for (int location = 0; location < numberLocations; location++) {
+				for (int w = 0; w < words; w++) {
+					long held = buffer.getLong();
+					while (held != 0) {
+						knowledge.addToHand(location, card(w, held, numberCards));
+						held &= held - 1;
+					}
+				}
+			}
+			for (int location = 0; location < numberLocations; location++) {
+				for (int w = 0; w < words; w++) {
+					long restricted = buffer.getLong();
+					while (restricted != 0) {
+						knowledge.restrict(location, card(w, restricted, numberCards));
+						restricted &= restricted - 1;
+					}
+				}
+			}
+			int numberConstraints = buffer.getInt();
+			check(numberConstraints >= 0 && 8L*numberConstraints == end - buffer.position(), "has the wrong length");
+			for (int i = 0; i < numberConstraints; i++) {
+				long packed = buffer.getLong();
+				int player = unpackPlayer(packed);
+				check(player < numberPlayers, "has a constraint on a player who does not exist");
+				for (int position = 0; position < 3; position++) {
+					check(game.getCardType(unpackCard(packed, position)) == position,
+							"has a constraint on cards of the wrong type");
+				}
+				game.assumeRefutes(player, unpackCard(packed, 0), unpackCard(packed, 1), unpackCard(packed, 2));
+			}
+			game.restoreState(deal, currentTurn, (flags & FLAG_SUGGESTION_MADE) != 0, (flags & FLAG_GAME_OVER) != 0,
+					winner, botSuggestions);
+			game.setPlayerKnowledgeEnabled((flags & FLAG_PLAYER_KNOWLEDGE) != 0);
+			return game;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Game state record is truncated or corrupt", e);
+		}
+	}
+
+	/**
+	 * Packs a suggestion constraint {player, suspect, place, weapon} into one long.
+	 */
+	static long pack(int player, int suspect, int place, int weapon) {
+		return ((long) player << (3*CARD_BITS)) | ((long) suspect << (2*CARD_BITS)) | ((long) place << CARD_BITS)
+				| weapon;
+	}
+
+	static int unpackPlayer(long packed) {
+		return (int) (packed >>> (3*CARD_BITS));
+	}
+
+	/**
+	 * @param packed
+	 * @param position 0 for the suspect, 1 for the place and 2 for the weapon
+	 */
+	static int unpackCard(long packed, int position) {
+		return (int) ((packed >>> ((2 - position)*CARD_BITS)) & CARD_MASK);
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static ClueSolver newGame(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons,
+			int flags, long seed) {
+		if ((flags & FLAG_DEFAULT_GAME) != 0) {
+			return ((flags & FLAG_SEEDED) != 0) ? new ClueSolver(numberPlayers, seed) : new ClueSolver(numberPlayers);
+		}
+		if ((flags & FLAG_SEEDED) != 0) {
+			return new ClueSolver(numberPlayers, numberSuspects, numberPlaces, numberWeapons, seed);
+		}
+		return new ClueSolver(numberPlayers, numberSuspects, numberPlaces, numberWeapons);
+	}
+
+	/**
+	 * @return the card of the lowest bit of cards, a word of a location's bit set
+	 */
+	private static int card(int word, long cards, int numberCards) {
+		int card = word*Long.SIZE + Long.numberOfTrailingZeros(cards);
+		check(card < numberCards, "knows about a card that does not exist");
+		return card;
+	}
+
+	private static void check(boolean valid, String problem) {
+		if (!valid) {
+			throw new IllegalArgumentException("Game state record " + problem);
+		}
+	}
+
+	private static void checkOrder(ByteBuffer buffer) {
+		if (buffer.order() != ByteOrder.LITTLE_ENDIAN) {
+			throw new IllegalArgumentException("Game state buffers must be little endian");
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package clue;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the games written by a {@link GameStateWriter} in order, through a read-only memory-mapped window which is
+ * moved along the file, so loading involves no text parsing and no copying into intermediate buffers. Not thread
+ * safe; use one reader per thread.
+ * <p>
+ * A writer which was never closed, e.g. because the program crashed, leaves the rest of its last mapped window
+ * filled with zeros after the last game. A zero record length is taken as the end of the games, so such files read
+ * as the games written before the crash.
+ */
+public class GameStateReader implements Closeable {
+
+	/**
+	 * Size of the mapped window. Games larger than this get a window of their own.
+	 */
+	private static final long WINDOW = 64L << 20;
+
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private long size;
+
+	/**
+	 * File position of the start of {@link #buffer}.
+	 */
+	private long bufferStart;
+
+	/**
+	 * Opens the file at path and checks its header.
+	 * @param path
+	 * @throws IOException if the file is not a game state file of this version
+	 */
+	public GameStateReader(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			this.size = channel.size();
+			this.bufferStart = 0;
+			ensureRemaining(GameStateFormat.HEADER_SIZE);
+			if (buffer.getInt() != GameStateFormat.MAGIC) {
+				throw new IOException("Not a game state file: " + path);
+			}
+			int version = buffer.getInt();
+			if (version != GameStateFormat.VERSION) {
+				throw new IOException("Unsupported game state file version " + version + ": " + path);
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return true if there is another game to read
+	 * @throws IOException if the reader is closed or the file cannot be mapped
+	 */
+	public boolean hasNext() throws IOException {
+		return position() + 4 <= size && nextLength() != 0;
+	}
+
+	/**
+	 * Reads the next game.
+	 * @return the game, ready to be analysed or played on
+	 * @throws IOException if there are no more games or the file is corrupt
+	 */
+	public ClueSolver next() throws IOException {
+		long position = position();
+		int length = nextLength();
+		if (length == 0) {
+			throw new EOFException("No more games in game state file");
+		}
+		if (length < 0) {
+			throw new IOException("Corrupt game state record at " + position);
+		}
+		ensureRemaining(4 + length);
+		try {
+			return GameStateFormat.decode(buffer);
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt game state record at " + position, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+			buffer = null;
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * @return file position of the next record
+	 */
+	private long position() throws IOException {
+		if (channel == null) {
+			throw new IOException("Game state reader is closed");
+		}
+		return bufferStart + buffer.position();
+	}
+
+	/**
+	 * @return length prefix of the next record, without moving past it
+	 */
+	private int nextLength() throws IOException {
+		ensureRemaining(4);
+		return buffer.getInt(buffer.position());
+	}
+
+	/**
+	 * Moves the mapped window to start at the current read position if fewer than bytes remain in it.
+	 */
+	private void ensureRemaining(int bytes) throws IOException {
+		if (channel == null) {
+			throw new IOException("Game state reader is closed");
+		}
+		if (buffer != null && buffer.remaining() >= bytes) {
+			return;
+		}
+		long position = bufferStart + (buffer == null ? 0 : buffer.position());
+		if (size - position < bytes) {
+			throw new EOFException("No more games in game state file");
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, Math.max(WINDOW, bytes)));
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		bufferStart = position;
+	}
+}
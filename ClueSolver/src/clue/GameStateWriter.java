@@ -0,0 +1,105 @@
+package clue;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes checkpoints of {@link ClueSolver} games to a file in {@link GameStateFormat}, through a memory-mapped
+ * window which is moved along the file as it fills, so games are copied straight into the page cache. Not thread
+ * safe; use one writer per thread and file.
+ */
+public class GameStateWriter implements Closeable {
+
+	/**
+	 * Size of the mapped window. Games larger than this get a window of their own.
+	 */
+	private static final long WINDOW = 64L << 20;
+
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	/**
+	 * File position of the start of {@link #buffer}.
+	 */
+	private long bufferStart;
+	private long count;
+
+	/**
+	 * Creates (or replaces) the file at path and writes its header.
+	 * @param path
+	 * @throws IOException
+	 */
+	public GameStateWriter(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.bufferStart = 0;
+		this.count = 0;
+		ensureRemaining(GameStateFormat.HEADER_SIZE);
+		buffer.putInt(GameStateFormat.MAGIC);
+		buffer.putInt(GameStateFormat.VERSION);
+	}
+
+	/**
+	 * Appends the current state of game.
+	 * @param game
+	 * @throws IOException
+	 */
+	public void append(ClueSolver game) throws IOException {
+		ensureRemaining(GameStateFormat.encodedSize(game));
+		GameStateFormat.encode(game, buffer);
+		count++;
+	}
+
+	/**
+	 * @return number of games appended so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Flushes the mapped window to disk, cuts the file to the end of the last game and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		try {
+			buffer.force();
+			channel.truncate(bufferStart + buffer.position());
+		} finally {
+			channel.close();
+			channel = null;
+			buffer = null;
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * Moves the mapped window to start at the current write position if fewer than bytes remain in it.
+	 */
+	private void ensureRemaining(int bytes) throws IOException {
+		if (channel == null) {
+			throw new IOException("Game state writer is closed");
+		}
+		if (buffer != null && buffer.remaining() >= bytes) {
+			return;
+		}
+		long position = bufferStart;
+		if (buffer != null) {
+			position += buffer.position();
+			buffer.force();
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(WINDOW, bytes));
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		bufferStart = position;
+	}
+}
@@ -0,0 +1,175 @@
+package clue;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Formatter;
+
+/**
+ * Exports {@link ClueSolver} game data for WCSPLift turn by turn, writing only what changed since the previous
+ * export instead of the whole model each time.
+ * <p>
+ * The first export (and any export after {@link #reset()}) is the full file, the same as {@link ClueFileWriter}
+ * writes. Every later export is a delta:
+ * <pre>
+ * ClueGameDelta totalConstraints max changedVariables newSuggestions
+ * (unary constraint of each variable whose weights changed, written the same way as in the full file)
+ * (each suggestion constraint added since the previous export, written the same way as in the full file)
+ * </pre>
+ * A changed unary constraint replaces the earlier one on the same variable, and totalConstraints is the new
+ * constraint count of the whole model.
+ * <p>
+ * The global maximum written in place of "-" marks forbidden tuples, so it must stay above the total of the highest
+ * weight of every variable. It is fixed when the full file is written and kept by later deltas, so earlier
+ * constraints stay valid. Weights usually fall as cards are found, but if the total ever rises above the maximum the
+ * next export is the full file again, with a new maximum.
+ * <p>
+ * Weights are recomputed from {@link ClueSolver#getProbabilityMatrix()} on each export (one pass over doubles), but
+ * only changed constraints are formatted and written, so most of the per-turn cost is proportional to the change.
+ */
+public class IncrementalClueFileWriter {
+
+	private ClueSolver data;
+	private ClueFileWriter writer;
+
+	/**
+	 * Weights as of the previous export, or null if the next export must be the full file.
+	 */
+	private double[] weights;
+
+	/**
+	 * Global maximum used by every export since the last full file.
+	 */
+	private int max;
+
+	/**
+	 * Number of suggestion constraints already exported.
+	 */
+	private int exportedSuggestions;
+
+	private boolean lastWasFull;
+	private int lastChangedVariables;
+	private int lastNewSuggestions;
+
+	public IncrementalClueFileWriter(ClueSolver data) {
+		this.data = data;
+		this.writer = new ClueFileWriter(data);
+		this.weights = null;
+	}
+
+	/**
+	 * @return the full file on the first call, and after that the changes since the previous call
+	 */
+	public String getDeltaString() {
+		StringWriter out = new StringWriter();
+		try {
+			writeDelta(out);
+		} catch (IOException e) {
+			//StringWriter never throws
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Writes the full file on the first call, and after that the changes since the previous call. The writer is
+	 * flushed but not closed.
+	 * @param out
+	 * @return true if the full file was written, false if a delta was
+	 * @throws IOException
+	 */
+	public boolean writeDelta(Writer out) throws IOException {
+		if (!ClueMetrics.isEnabled()) {
+			return writeExport(out);
+		}
+		long start = System.nanoTime();
+		ClueFileWriter.CountingWriter counter = new ClueFileWriter.CountingWriter(out);
+		boolean full = writeExport(counter);
+		ClueMetrics.DELTA_EXPORT.record(System.nanoTime() - start);
+		ClueMetrics.EXPORT_CHARS.add(counter.getCount());
+		return full;
+	}
+
+	/**
+	 * Makes the next export the full file, e.g. when the previous output was lost.
+	 */
+	public void reset() {
+		weights = null;
+	}
+
+	/**
+	 * @return true if the last export was the full file
+	 */
+	public boolean isLastFull() {
+		return lastWasFull;
+	}
+
+	/**
+	 * @return number of variables whose unary constraint was written by the last export
+	 */
+	public int getLastChangedVariables() {
+		return lastChangedVariables;
+	}
+
+	/**
+	 * @return number of suggestion constraints written by the last export
+	 */
+	public int getLastNewSuggestions() {
+		return lastNewSuggestions;
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private boolean writeExport(Writer out) throws IOException {
+		double[] current = writer.computeWeights();
+		int currentMax = (int) Math.ceil(writer.globalMax);
+		SuggestionConstraints suggestions = data.getConstraints();
+
+		if (weights == null || currentMax > max) {
+			max = currentMax;
+			writer.writeModel(out, current, Integer.toString(max));
+			weights = current;
+			exportedSuggestions = suggestions.size();
+			lastWasFull = true;
+			lastChangedVariables = current.length/2;
+			lastNewSuggestions = suggestions.size();
+			return true;
+		}
+
+		int numberVariables = current.length/2;
+		int changed = 0;
+		for (int i = 0; i < numberVariables; i++) {
+			if (isChanged(current, i)) {
+				changed++;
+			}
+		}
+		int added = suggestions.size() - exportedSuggestions;
+		out.write("ClueGameDelta " + writer.getTotalConstraints() + " " + max + " " + changed + " " + added + "\n");
+
+		Writer body = new ClueFileWriter.MaxSubstitutingWriter(out, Integer.toString(max));
+		Formatter formatter = new Formatter(body);
+		for (int i = 0; i < numberVariables && changed > 0; i++) {
+			if (isChanged(current, i)) {
+				writer.writeVariable(body, formatter, current, i);
+			}
+		}
+		formatter.flush();
+		for (int i = exportedSuggestions; i < suggestions.size(); i++) {
+			writer.writeSuggestion(body, suggestions.get(i));
+		}
+		body.flush();
+
+		weights = current;
+		exportedSuggestions = suggestions.size();
+		lastWasFull = false;
+		lastChangedVariables = changed;
+		lastNewSuggestions = added;
+		return false;
+	}
+
+	private boolean isChanged(double[] current, int variable) {
+		return current[2*variable] != weights[2*variable] || current[2*variable + 1] != weights[2*variable + 1];
+	}
+}
@@ -0,0 +1,289 @@
+package clue;
+
+/**
+ * Applies every update to a {@link CardKnowledge} and then deduces whatever else follows from it, so that facts
+ * implied by the game state are known without running a solver. The following rules are applied until nothing
+ * changes:
+ * <ul>
+ * <li>A card that can only be in one location is in that location</li>
+ * <li>A location with no free slots left holds none of its undecided cards</li>
+ * <li>A location with exactly as many undecided cards as free slots holds all of them</li>
+ * <li>A player who must hold one of three suggested cards, and has been ruled out of two of them, holds the third</li>
+ * </ul>
+ * Only the cards and locations touched by an update are re-examined, using a worklist. A rule finding that the
+ * updates contradict each other marks the knowledge with {@link CardKnowledge#hasContradiction()}.
+ * Suggestion constraints are kept in a {@link SuggestionConstraints}, where each is marked satisfied once its player
+ * is known to hold one of its cards, so it is never examined again.
+ */
+class KnowledgePropagator {
+
+	private final CardKnowledge knowledge;
+	private final int numberCards;
+
+	/**
+	 * The suggestion constraints, copied before their first change after a copy of this propagator is made, so
+	 * copies share them safely.
+	 */
+	private SuggestionConstraints constraints;
+	private boolean constraintsShared;
+
+	/**
+	 * Circular queue of cards whose possible locations have changed since they were last examined.
+	 */
+	private final int[] cardQueue;
+	private final boolean[] queued;
+	private int queueHead;
+	private int queueSize;
+
+	/**
+	 * Bit mask of locations whose cards or free slots have changed since they were last examined.
+	 */
+	private long dirtyLocations;
+
+	/**
+	 * Number of facts deduced (rather than observed) so far.
+	 */
+	private int deductions;
+
+	KnowledgePropagator(CardKnowledge knowledge) {
+		this.knowledge = knowledge;
+		this.numberCards = knowledge.getNumberCards();
+		this.constraints = new SuggestionConstraints(knowledge.getNumberPlayers(), numberCards);
+		this.constraintsShared = false;
+		this.cardQueue = new int[numberCards];
+		this.queued = new boolean[numberCards];
+		this.queueHead = 0;
+		this.queueSize = 0;
+		this.dirtyLocations = 0;
+		this.deductions = 0;
+	}
+
+	/**
+	 * Creates a propagator for knowledge, a copy of other's knowledge, which starts with other's constraints and
+	 * deduction count. Constraints are shared until either propagator adds one. Must only be called between events,
+	 * when other has nothing left to propagate.
+	 */
+	KnowledgePropagator(KnowledgePropagator other, CardKnowledge knowledge) {
+		this.knowledge = knowledge;
+		this.numberCards = other.numberCards;
+		this.constraints = other.constraints;
+		this.constraintsShared = true;
+		other.constraintsShared = true;
+		this.cardQueue = new int[numberCards];
+		this.queued = new boolean[numberCards];
+		this.queueHead = 0;
+		this.queueSize = 0;
+		this.dirtyLocations = 0;
+		this.deductions = other.deductions;
+	}
+
+	/**
+	 * @return the suggestion constraints. Must not be kept past the next update, which may replace them.
+	 */
+	SuggestionConstraints getConstraints() {
+		return constraints;
+	}
+
+	/**
+	 * @return Number of facts deduced so far.
+	 */
+	int getDeductions() {
+		return deductions;
+	}
+
+	/**
+	 * Records that card is not in location. Call {@link #propagate()} once all updates for an event are made.
+	 * @return true if this is new information
+	 */
+	boolean restrict(int location, int card) {
+		if (!knowledge.restrict(location, card)) {
+			return false;
+		}
+		enqueue(card);
+		dirtyLocations |= 1L << location;
+		return true;
+	}
+
+	/**
+	 * Records that location holds card. Call {@link #propagate()} once all updates for an event are made.
+	 * @return true if this is new information
+	 */
+	boolean addToHand(int location, int card) {
+		if (!knowledge.addToHand(location, card)) {
+			return false;
+		}
+		enqueue(card);
+		//Card has been restricted from every other location
+		dirtyLocations |= allLocations();
+		if (constraints.hasOpen(location, card)) {
+			unshareConstraints();
+			constraints.satisfy(location, card);
+		}
+		return true;
+	}
+
+	/**
+	 * Records that player holds at least one of the three cards, unless this has already been recorded. Call
+	 * {@link #propagate()} once all updates for an event are made.
+	 * @return true if the constraint is new
+	 */
+	boolean addConstraint(int player, int suspect, int place, int weapon) {
+		if (constraintsShared && constraints.contains(player, suspect, place, weapon)) {
+			return false;
+		}
+		unshareConstraints();
+		if (!constraints.add(player, suspect, place, weapon)) {
+			return false;
+		}
+		int index = constraints.size() - 1;
+		for (int position = 0; position < 3; position++) {
+			int card = constraints.card(index, position);
+			if (knowledge.isHeld(card, player)) {
+				constraints.satisfy(player, card);
+				return true;
+			}
+		}
+		for (int position = 0; position < 3; position++) {
+			enqueue(constraints.card(index, position));
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the deduction rules until no more facts can be deduced.
+	 * @return number of new facts deduced
+	 */
+	int propagate() {
+		if (!ClueMetrics.isEnabled()) {
+			return deduce();
+		}
+		long start = System.nanoTime();
+		int deduced = deduce();
+		ClueMetrics.PROPAGATION.record(System.nanoTime() - start);
+		ClueMetrics.DEDUCTIONS.add(deduced);
+		return deduced;
+	}
+
+	/*
+	 * ----------------------
+	 * Private Helper Functions
+	 * ----------------------
+	 */
+
+	private int deduce() {
+		int before = deductions;
+		while (true) {
+			if (queueSize > 0) {
+				int card = cardQueue[queueHead];
+				queueHead = (queueHead + 1) % cardQueue.length;
+				queueSize--;
+				queued[card] = false;
+				examineCard(card);
+			}
+			else if (dirtyLocations != 0) {
+				int location = Long.numberOfTrailingZeros(dirtyLocations);
+				dirtyLocations &= dirtyLocations - 1;
+				examineLocation(location);
+			}
+			else {
+				break;
+			}
+		}
+		return deductions - before;
+	}
+
+	private void examineCard(int card) {
+		long possible = knowledge.getPossibleLocations(card);
+		if (Long.bitCount(possible) == 1) {
+			deduceHeld(Long.numberOfTrailingZeros(possible), card);
+		}
+		//Examining a constraint can satisfy it, taking it out of the card's index
+		for (int i = constraints.countByCard(card) - 1; i >= 0; i--) {
+			if (i < constraints.countByCard(card)) {
+				examineConstraint(constraints.byCard(card, i));
+			}
+		}
+	}
+
+	private void examineLocation(int location) {
+		int free = knowledge.getFreeSlots(location);
+		int words = knowledge.getWords();
+		int undecided = 0;
+		for (int w = 0; w < words; w++) {
+			undecided += Long.bitCount(knowledge.getUndecided(location, w));
+		}
+		if (undecided < free) {
+			//Too few cards are left that could go here to fill the location
+			knowledge.markContradiction();
+			return;
+		}
+		if (undecided == 0 || (free != 0 && undecided != free)) {
+			return;
+		}
+		//Either every undecided card is ruled out (no free slots) or every one is held (exactly enough free slots)
+		for (int w = 0; w < words; w++) {
+			long cards = knowledge.getUndecided(location, w);
+			while (cards != 0) {
+				int card = w*Long.SIZE + Long.numberOfTrailingZeros(cards);
+				cards &= cards - 1;
+				if (free == 0) {
+					if (restrict(location, card)) {
+						deductions++;
+					}
+				}
+				else {
+					deduceHeld(location, card);
+				}
+			}
+		}
+	}
+
+	private void examineConstraint(int index) {
+		int player = constraints.player(index);
+		int candidate = -1;
+		for (int position = 0; position < 3; position++) {
+			int card = constraints.card(index, position);
+			if (knowledge.isHeld(card, player)) {
+				return;
+			}
+			if (!knowledge.isRestricted(card, player)) {
+				if (candidate != -1) {
+					return;
+				}
+				candidate = card;
+			}
+		}
+		if (candidate != -1) {
+			deduceHeld(player, candidate);
+		}
+		else {
+			knowledge.markContradiction();
+		}
+	}
+
+	private void deduceHeld(int location, int card) {
+		if (addToHand(location, card)) {
+			deductions++;
+		}
+	}
+
+	private void unshareConstraints() {
+		if (constraintsShared) {
+			constraints = new SuggestionConstraints(constraints);
+			constraintsShared = false;
+		}
+	}
+
+	private void enqueue(int card) {
+		if (!queued[card]) {
+			queued[card] = true;
+			cardQueue[(queueHead + queueSize) % cardQueue.length] = card;
+			queueSize++;
+		}
+	}
+
+	private long allLocations() {
+		int numberLocations = knowledge.getNumberLocations();
+		return (numberLocations == Long.SIZE) ? -1L : (1L << numberLocations) - 1;
+	}
+}
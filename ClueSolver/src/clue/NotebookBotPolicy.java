@@ -0,0 +1,125 @@
+package clue;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Bot policy keeping the notebook a casual player would: the cards in its own hand and the cards shown to it. It
+ * suggests cards it has not seen yet, picked at random, and keeps showing the same card to a player where it can
+ * so it gives away as little as possible. It accuses once few enough case files are left: at most
+ * {@code maxCandidates} combinations of unseen suspect, place and weapon, guessing among them if there are several,
+ * or as soon as a suggestion of its own went unrefuted without it holding any of the cards.
+ * <p>
+ * It ignores everything else that happens in the game, such as other players passing.
+ */
+public class NotebookBotPolicy implements BotPolicy {
+
+	private final SplittableRandom rand;
+	private final int maxCandidates;
+
+	/**
+	 * Cards the bot holds or has been shown, and how many cards of each type it has not, filled in on its first move.
+	 */
+	private boolean[] seen;
+	private int[] unseen;
+
+	/**
+	 * Last card revealed to each player, -1 if none.
+	 */
+	private int[] shown;
+	private int[] suggestion;
+
+	/**
+	 * Policy which only accuses once it knows the case file.
+	 * @param rand source of the policy's random choices, not shared with any other policy or game
+	 */
+	public NotebookBotPolicy(SplittableRandom rand) {
+		this(rand, 1);
+	}
+
+	/**
+	 * @param rand source of the policy's random choices, not shared with any other policy or game
+	 * @param maxCandidates number of possible case files at or below which the bot guesses one
+	 */
+	public NotebookBotPolicy(SplittableRandom rand, int maxCandidates) {
+		if (maxCandidates < 1) {
+			throw new IllegalArgumentException("Must accuse with at least 1 candidate case file");
+		}
+		this.rand = rand;
+		this.maxCandidates = maxCandidates;
+	}
+
+	@Override
+	public int[] chooseSuggestion(ClueSolver game, int player) {
+		start(game, player);
+		suggestion = new int[] {randomUnseen(game, 0), randomUnseen(game, 1), randomUnseen(game, 2)};
+		return suggestion;
+	}
+
+	@Override
+	public int chooseReveal(ClueSolver game, int player, int suggester, int[] held) {
+		start(game, player);
+		for (int card : held) {
+			if (card == shown[suggester]) {
+				return card;
+			}
+		}
+		shown[suggester] = held[rand.nextInt(held.length)];
+		return shown[suggester];
+	}
+
+	@Override
+	public int[] chooseAccusation(ClueSolver game, int player, int revealer, int card) {
+		if (revealer == -1) {
+			boolean holdsNone = true;
+			for (int suggested : suggestion) {
+				holdsNone &= !game.hasCard(player, suggested);
+			}
+			if (holdsNone) {
+				return suggestion;
+			}
+		}
+		else if (!seen[card]) {
+			seen[card] = true;
+			unseen[game.getCardType(card)]--;
+		}
+		if (((long) unseen[0])*unseen[1]*unseen[2] <= maxCandidates) {
+			return new int[] {randomUnseen(game, 0), randomUnseen(game, 1), randomUnseen(game, 2)};
+		}
+		return null;
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private void start(ClueSolver game, int player) {
+		if (seen != null) {
+			return;
+		}
+		int numberCards = game.getNumberSuspects() + game.getNumberPlaces() + game.getNumberWeapons();
+		seen = new boolean[numberCards];
+		unseen = new int[] {game.getNumberSuspects(), game.getNumberPlaces(), game.getNumberWeapons()};
+		for (int card = 0; card < numberCards; card++) {
+			if (game.hasCard(player, card)) {
+				seen[card] = true;
+				unseen[game.getCardType(card)]--;
+			}
+		}
+		shown = new int[game.getNumberPlayers()];
+		Arrays.fill(shown, -1);
+	}
+
+	/**
+	 * @return a card of cardType the bot has not seen, chosen uniformly at random
+	 */
+	private int randomUnseen(ClueSolver game, int cardType) {
+		int first = cardType == 0 ? 0 : cardType == 1 ? game.getNumberSuspects()
+				: game.getNumberSuspects() + game.getNumberPlaces();
+		int index = rand.nextInt(unseen[cardType]);
+		for (int card = first; ; card++) {
+			if (!seen[card] && index-- == 0) {
+				return card;
+			}
+		}
+	}
+}
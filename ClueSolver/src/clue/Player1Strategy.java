@@ -0,0 +1,22 @@
+package clue;
+
+/**
+ * Decides Player 1's moves when a game is played without a user, e.g. by {@link ClueSimulation}.
+ * A new strategy is created for every game, so implementations may keep per-game state.
+ */
+public interface Player1Strategy {
+
+	/**
+	 * Called at the start of each of Player 1's turns.
+	 * @param game
+	 * @return {suspect, place, weapon} to suggest
+	 */
+	int[] chooseSuggestion(ClueSolver game);
+
+	/**
+	 * Called after Player 1's suggestion has been answered.
+	 * @param game
+	 * @return {suspect, place, weapon} to accuse, or null to end the turn without accusing
+	 */
+	int[] chooseAccusation(ClueSolver game);
+}
@@ -0,0 +1,340 @@
+package clue;
+import java.util.Arrays;
+
+/**
+ * Everything one player can know about the location of each card: what every player has seen (passes and which
+ * players refuted which suggestions), their own hand, the cards shown to them and whatever follows from those.
+ * Kept up to date for every player of a game with {@link ClueSolver#setPlayerKnowledgeEnabled(boolean)}.
+ * <p>
+ * The facts every player has seen are kept once per game, in a {@link CardKnowledge} shared by every player's
+ * knowledge. Each player's knowledge only stores the facts it knows beyond those, card by card in a small hash
+ * table, so tracking every player costs far less than a full CardKnowledge each. Queries combine the two, so
+ * they take a table lookup rather than a single bit test.
+ * <p>
+ * Locations are numbered as in {@link CardKnowledge}. Must only be read between moves of its game.
+ */
+public final class PlayerKnowledge {
+
+	private final CardKnowledge shared;
+	private final int player;
+	private final long playerBit;
+
+	/**
+	 * First card of each type, followed by the number of cards.
+	 */
+	private final int[] firstCard;
+
+	/**
+	 * Open addressing hash table of index + 1 of each card with facts of its own, by card, 0 for an empty slot.
+	 */
+	private int[] table;
+
+	/**
+	 * Cards with facts of their own, with the location the player knows holds each (-1 if none) and the locations
+	 * the player has ruled it out of. Once the shared knowledge knows where a card is, its facts are cleared.
+	 */
+	private int[] cards;
+	private int[] heldAt;
+	private long[] ruledOut;
+	private int size;
+
+	/**
+	 * For each location, number of cards the player knows it holds which the shared knowledge does not.
+	 */
+	private final int[] heldCount;
+
+	/**
+	 * For each location other than the player's, number of cards undecided there in the shared knowledge which the
+	 * player has decided (knows are there or has ruled out), so counting a location's undecided cards for the
+	 * player takes a few bit counts.
+	 */
+	private final int[] decidedCount;
+
+	PlayerKnowledge(CardKnowledge shared, int player, int numberSuspects, int numberPlaces) {
+		this.shared = shared;
+		this.player = player;
+		this.playerBit = 1L << player;
+		this.firstCard = new int[] {0, numberSuspects, numberSuspects + numberPlaces, shared.getNumberCards()};
+		this.table = new int[16];
+		this.cards = new int[8];
+		this.heldAt = new int[8];
+		this.ruledOut = new long[8];
+		this.size = 0;
+		this.heldCount = new int[shared.getNumberLocations()];
+		this.decidedCount = new int[shared.getNumberLocations()];
+	}
+
+	/**
+	 * Copy of other on top of shared, a copy of the shared knowledge other was built on.
+	 */
+	PlayerKnowledge(PlayerKnowledge other, CardKnowledge shared) {
+		this.shared = shared;
+		this.player = other.player;
+		this.playerBit = other.playerBit;
+		this.firstCard = other.firstCard;
+		this.table = other.table.clone();
+		this.cards = other.cards.clone();
+		this.heldAt = other.heldAt.clone();
+		this.ruledOut = other.ruledOut.clone();
+		this.size = other.size;
+		this.heldCount = other.heldCount.clone();
+		this.decidedCount = other.decidedCount.clone();
+	}
+
+	public int getPlayer() {
+		return player;
+	}
+
+	/**
+	 * @param card
+	 * @return location the player knows holds card, or -1 if they do not know where it is
+	 */
+	public int getKnownLocation(int card) {
+		int location = shared.getKnownLocation(card);
+		if (location != -1) {
+			return location;
+		}
+		int index = find(card);
+		return index == -1 ? -1 : heldAt[index];
+	}
+
+	public boolean isHeld(int card, int location) {
+		return getKnownLocation(card) == location;
+	}
+
+	/**
+	 * @param card
+	 * @return bit mask of locations the player has not ruled card out of
+	 */
+	public long getPossibleLocations(int card) {
+		long possible = shared.getPossibleLocations(card);
+		if (shared.getKnownLocation(card) != -1) {
+			return possible;
+		}
+		int index = find(card);
+		if (index == -1) {
+			//The player knows their own hand, so every other card is ruled out of it
+			return possible & ~playerBit;
+		}
+		if (heldAt[index] != -1) {
+			return 1L << heldAt[index];
+		}
+		return possible & ~playerBit & ~ruledOut[index];
+	}
+
+	public boolean isRestricted(int card, int location) {
+		return (getPossibleLocations(card) & (1L << location)) == 0;
+	}
+
+	/**
+	 * @param location
+	 * @return number of cards in location the player does not know yet
+	 */
+	public int getFreeSlots(int location) {
+		if (location == player) {
+			return 0;
+		}
+		return shared.getFreeSlots(location) - heldCount[location];
+	}
+
+	/**
+	 * @param cardType {Suspect = 0, Place = 1, Weapon = 2}
+	 * @return number of cards of the type the player has not ruled out of the case file
+	 */
+	public int getCaseFileCandidates(int cardType) {
+		long caseFile = 1L << (shared.getNumberPlayers() + cardType);
+		int candidates = 0;
+		for (int card = firstCard[cardType]; card < firstCard[cardType + 1]; card++) {
+			if ((getPossibleLocations(card) & caseFile) != 0) {
+				candidates++;
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * How close the player is to solving the game: 1 once they know the case file, and more the less they know.
+	 * @return number of {suspect, place, weapon} case files the player has not ruled out
+	 */
+	public long getCaseFileCombinations() {
+		return ((long) getCaseFileCandidates(0))*getCaseFileCandidates(1)*getCaseFileCandidates(2);
+	}
+
+	/**
+	 * @param cardType {Suspect = 0, Place = 1, Weapon = 2}
+	 * @return the card of the type in the case file, or -1 if the player does not know it
+	 */
+	public int getCaseFileCard(int cardType) {
+		int caseFile = shared.getNumberPlayers() + cardType;
+		int found = -1;
+		for (int card = firstCard[cardType]; card < firstCard[cardType + 1]; card++) {
+			if ((getPossibleLocations(card) & (1L << caseFile)) != 0) {
+				if (found != -1) {
+					return -1;
+				}
+				found = card;
+			}
+		}
+		return found;
+	}
+
+	/*
+	 * --------------------------------------------------------------------------
+	 * Updates (only made by PlayerKnowledgeTracker)
+	 * --------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Records that location holds card.
+	 * @return true if this is new to the player
+	 */
+	boolean addToHand(int location, int card) {
+		if (getKnownLocation(card) != -1) {
+			return false;
+		}
+		int index = findOrAdd(card);
+		long possible = shared.getPossibleLocations(card);
+		count(decided(index, possible), -1);
+		heldAt[index] = location;
+		heldCount[location]++;
+		count(decided(index, possible), 1);
+		return true;
+	}
+
+	/**
+	 * Records that card is not in location.
+	 * @return true if this is new to the player
+	 */
+	boolean restrict(int location, int card) {
+		if ((getPossibleLocations(card) & (1L << location)) == 0) {
+			return false;
+		}
+		int index = findOrAdd(card);
+		long possible = shared.getPossibleLocations(card);
+		count(decided(index, possible), -1);
+		ruledOut[index] |= 1L << location;
+		count(decided(index, possible), 1);
+		return true;
+	}
+
+	/**
+	 * Updates the counts of decided cards after the shared knowledge changed the possible locations of card. Once
+	 * the shared knowledge knows where card is, the player's own facts about it follow from that and are cleared.
+	 * @param previous possible locations of card in the shared knowledge before the change
+	 */
+	void sharedChanged(int card, long previous) {
+		int index = find(card);
+		if (index == -1) {
+			return;
+		}
+		long possible = shared.getPossibleLocations(card);
+		count(decided(index, previous), -1);
+		if (shared.getKnownLocation(card) != -1) {
+			if (heldAt[index] != -1) {
+				heldCount[heldAt[index]]--;
+				heldAt[index] = -1;
+			}
+			ruledOut[index] = 0;
+		}
+		count(decided(index, possible), 1);
+	}
+
+	/**
+	 * @param location
+	 * @return number of cards undecided in location in the shared knowledge which the player has decided
+	 */
+	int getDecidedCount(int location) {
+		return decidedCount[location];
+	}
+
+	/**
+	 * @return true if the player's knowledge of card at location differs from the shared knowledge
+	 */
+	boolean knowsMore(int card, int location) {
+		int index = find(card);
+		if (index == -1) {
+			return location == player;
+		}
+		return heldAt[index] != -1 || ((ruledOut[index] | playerBit) & (1L << location)) != 0;
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * @param possible possible locations of the card in the shared knowledge, after full propagation
+	 * @return locations other than the player's where the card at index is undecided in the shared knowledge but
+	 * decided for the player
+	 */
+	private long decided(int index, long possible) {
+		//After propagation a card with one possible location is known to be there, so decided everywhere
+		if (Long.bitCount(possible) == 1) {
+			return 0;
+		}
+		long decided = heldAt[index] != -1 ? -1L : ruledOut[index];
+		return decided & possible & ~playerBit;
+	}
+
+	private void count(long locations, int change) {
+		while (locations != 0) {
+			decidedCount[Long.numberOfTrailingZeros(locations)] += change;
+			locations &= locations - 1;
+		}
+	}
+
+	/**
+	 * @return index of card's facts, or -1 if it has none
+	 */
+	private int find(int card) {
+		int mask = table.length - 1;
+		int slot = hash(card) & mask;
+		while (table[slot] != 0) {
+			if (cards[table[slot] - 1] == card) {
+				return table[slot] - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int findOrAdd(int card) {
+		int index = find(card);
+		if (index != -1) {
+			return index;
+		}
+		if (size == cards.length) {
+			cards = Arrays.copyOf(cards, 2*size);
+			heldAt = Arrays.copyOf(heldAt, 2*size);
+			ruledOut = Arrays.copyOf(ruledOut, 2*size);
+		}
+		index = size++;
+		cards[index] = card;
+		heldAt[index] = -1;
+		ruledOut[index] = 0;
+		//At most half full, so probes stay short
+		if (2*size > table.length) {
+			table = new int[2*table.length];
+			for (int i = 0; i < size; i++) {
+				insert(i);
+			}
+		}
+		else {
+			insert(index);
+		}
+		return index;
+	}
+
+	private void insert(int index) {
+		int mask = table.length - 1;
+		int slot = hash(cards[index]) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = index + 1;
+	}
+
+	private static int hash(int card) {
+		return card*0x9E3779B9 >>> 8;
+	}
+}
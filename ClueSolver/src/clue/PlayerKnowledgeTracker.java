@@ -0,0 +1,294 @@
+package clue;
+
+/**
+ * Keeps the {@link PlayerKnowledge} of every player of a game up to date. Facts every player sees (passes, and
+ * that a player refuted a suggestion) go into one shared {@link CardKnowledge}, propagated once by a
+ * {@link KnowledgePropagator}. Each player's knowledge then re-applies the deduction rules of KnowledgePropagator
+ * to its own facts, starting only from the cards the shared knowledge changed and the cards shown to the player,
+ * so a suggestion costs one propagation plus a little work per player rather than a propagation per player.
+ */
+final class PlayerKnowledgeTracker {
+
+	private final CardKnowledge shared;
+	private final KnowledgePropagator propagator;
+	private final PlayerKnowledge[] players;
+	private final int numberCards;
+	private final int numberLocations;
+
+	/**
+	 * Possible locations of each card in the shared knowledge after the last update, to find the cards an update
+	 * changed.
+	 */
+	private final long[] sharedPossible;
+	private final int[] changed;
+
+	/**
+	 * Card shown privately during the current suggestion, or -1 if none, and the suggestion it refuted.
+	 */
+	private int shownCard;
+	private final int[] refuted;
+	private int shownBy;
+	private int shownTo;
+
+	/**
+	 * Worklist of the player being updated, shared by every player as they are updated one at a time. Circular
+	 * queue of cards whose possible locations have changed since they were last examined.
+	 */
+	private final int[] cardQueue;
+	private final boolean[] queued;
+	private int queueHead;
+	private int queueSize;
+	private long dirtyLocations;
+
+	/**
+	 * Tracks the game dealt as deal, starting with every player knowing their own hand.
+	 * @param deal location of each card, as {@link ClueSolver#getDeal()}
+	 */
+	PlayerKnowledgeTracker(int numberPlayers, int numberSuspects, int numberPlaces, int numberWeapons, int[] deal) {
+		int[] handSizes = new int[numberPlayers];
+		for (int location : deal) {
+			if (location < numberPlayers) {
+				handSizes[location]++;
+			}
+		}
+		this.shared = new CardKnowledge(numberPlayers, numberSuspects, numberPlaces, numberWeapons, handSizes);
+		this.propagator = new KnowledgePropagator(shared);
+		this.numberCards = shared.getNumberCards();
+		this.numberLocations = shared.getNumberLocations();
+		this.sharedPossible = new long[numberCards];
+		this.changed = new int[numberCards];
+		this.shownCard = -1;
+		this.refuted = new int[3];
+		this.cardQueue = new int[numberCards];
+		this.queued = new boolean[numberCards];
+
+		this.players = new PlayerKnowledge[numberPlayers];
+		for (int player = 0; player < numberPlayers; player++) {
+			players[player] = new PlayerKnowledge(shared, player, numberSuspects, numberPlaces);
+		}
+		for (int card = 0; card < numberCards; card++) {
+			sharedPossible[card] = shared.getPossibleLocations(card);
+			if (deal[card] < numberPlayers) {
+				players[deal[card]].addToHand(deal[card], card);
+			}
+		}
+		//Knowing their own hand rules every other card out of it, which any card can follow from
+		for (PlayerKnowledge player : players) {
+			for (int card = 0; card < numberCards; card++) {
+				enqueue(card);
+			}
+			dirtyLocations = allLocations();
+			deduce(player);
+		}
+	}
+
+	/**
+	 * Copy of other between suggestions, for a fork of its game.
+	 */
+	PlayerKnowledgeTracker(PlayerKnowledgeTracker other) {
+		this.shared = new CardKnowledge(other.shared);
+		this.propagator = new KnowledgePropagator(other.propagator, shared);
+		this.numberCards = other.numberCards;
+		this.numberLocations = other.numberLocations;
+		this.sharedPossible = other.sharedPossible.clone();
+		this.changed = new int[numberCards];
+		this.shownCard = -1;
+		this.refuted = new int[3];
+		this.cardQueue = new int[numberCards];
+		this.queued = new boolean[numberCards];
+		this.players = new PlayerKnowledge[other.players.length];
+		for (int player = 0; player < players.length; player++) {
+			players[player] = new PlayerKnowledge(other.players[player], shared);
+		}
+	}
+
+	PlayerKnowledge get(int player) {
+		return players[player];
+	}
+
+	/**
+	 * Records that player could not refute {suspect, place, weapon}. Call {@link #update()} once the suggestion is
+	 * over.
+	 */
+	void pass(int player, int suspect, int place, int weapon) {
+		propagator.restrict(player, suspect);
+		propagator.restrict(player, place);
+		propagator.restrict(player, weapon);
+	}
+
+	/**
+	 * Records that player refuted suggester's {suspect, place, weapon} by showing them card. Call {@link #update()}
+	 * once the suggestion is over.
+	 */
+	void reveal(int player, int suggester, int suspect, int place, int weapon, int card) {
+		propagator.addConstraint(player, suspect, place, weapon);
+		refuted[0] = suspect;
+		refuted[1] = place;
+		refuted[2] = weapon;
+		shownCard = card;
+		shownBy = player;
+		shownTo = suggester;
+	}
+
+	/**
+	 * Deduces everything that follows for each player from the facts recorded since the last update.
+	 */
+	void update() {
+		propagator.propagate();
+
+		//After propagation a card with one possible location is known to be there
+		int changedCount = 0;
+		long changedLocations = 0;
+		for (int card = 0; card < numberCards; card++) {
+			long possible = shared.getPossibleLocations(card);
+			if (possible != sharedPossible[card]) {
+				changedLocations |= possible ^ sharedPossible[card];
+				if (shared.isKnown(card)) {
+					//Also changes the free slots of the card's location
+					changedLocations |= possible;
+				}
+				for (PlayerKnowledge player : players) {
+					player.sharedChanged(card, sharedPossible[card]);
+				}
+				sharedPossible[card] = possible;
+				changed[changedCount++] = card;
+			}
+		}
+
+		for (PlayerKnowledge player : players) {
+			for (int i = 0; i < changedCount; i++) {
+				enqueue(changed[i]);
+			}
+			//A new constraint changes no possible locations, but may decide a card together with the player's facts
+			if (shownCard != -1) {
+				for (int card : refuted) {
+					enqueue(card);
+				}
+			}
+			dirtyLocations = changedLocations;
+			if (shownCard != -1 && player.getPlayer() == shownTo) {
+				addToHand(player, shownBy, shownCard);
+			}
+			deduce(player);
+		}
+		shownCard = -1;
+	}
+
+	/*
+	 * ----------------------
+	 * Private Helper Functions
+	 * ----------------------
+	 */
+
+	private void deduce(PlayerKnowledge player) {
+		while (true) {
+			if (queueSize > 0) {
+				int card = cardQueue[queueHead];
+				queueHead = (queueHead + 1) % cardQueue.length;
+				queueSize--;
+				queued[card] = false;
+				examineCard(player, card);
+			}
+			else if (dirtyLocations != 0) {
+				int location = Long.numberOfTrailingZeros(dirtyLocations);
+				dirtyLocations &= dirtyLocations - 1;
+				examineLocation(player, location);
+			}
+			else {
+				break;
+			}
+		}
+	}
+
+	private void examineCard(PlayerKnowledge player, int card) {
+		if (player.getKnownLocation(card) == -1) {
+			long possible = player.getPossibleLocations(card);
+			if (Long.bitCount(possible) == 1) {
+				addToHand(player, Long.numberOfTrailingZeros(possible), card);
+			}
+		}
+		SuggestionConstraints constraints = propagator.getConstraints();
+		for (int i = 0; i < constraints.countByCard(card); i++) {
+			examineConstraint(player, constraints, constraints.byCard(card, i));
+		}
+	}
+
+	/**
+	 * Same rules as KnowledgePropagator's, for the cards of location which are undecided for player. Cards decided
+	 * in the shared knowledge are decided for every player, so only the shared undecided cards are looked at.
+	 */
+	private void examineLocation(PlayerKnowledge player, int location) {
+		if (location == player.getPlayer()) {
+			return;
+		}
+		int free = player.getFreeSlots(location);
+		int words = shared.getWords();
+		int undecided = -player.getDecidedCount(location);
+		for (int w = 0; w < words; w++) {
+			undecided += Long.bitCount(shared.getUndecided(location, w));
+		}
+		if (undecided == 0 || (free != 0 && undecided != free)) {
+			return;
+		}
+		for (int w = 0; w < words; w++) {
+			long cards = shared.getUndecided(location, w);
+			while (cards != 0) {
+				int card = w*Long.SIZE + Long.numberOfTrailingZeros(cards);
+				cards &= cards - 1;
+				if (player.knowsMore(card, location)) {
+					continue;
+				}
+				if (free == 0) {
+					if (player.restrict(location, card)) {
+						enqueue(card);
+						dirtyLocations |= 1L << location;
+					}
+				}
+				else {
+					addToHand(player, location, card);
+				}
+			}
+		}
+	}
+
+	private void examineConstraint(PlayerKnowledge player, SuggestionConstraints constraints, int index) {
+		int holder = constraints.player(index);
+		int candidate = -1;
+		for (int position = 0; position < 3; position++) {
+			int card = constraints.card(index, position);
+			if (player.isHeld(card, holder)) {
+				return;
+			}
+			if (!player.isRestricted(card, holder)) {
+				if (candidate != -1) {
+					return;
+				}
+				candidate = card;
+			}
+		}
+		//Real games never contradict themselves, so there is always a candidate
+		if (candidate != -1) {
+			addToHand(player, holder, candidate);
+		}
+	}
+
+	private void addToHand(PlayerKnowledge player, int location, int card) {
+		if (player.addToHand(location, card)) {
+			enqueue(card);
+			//Card has been ruled out of every other location
+			dirtyLocations |= allLocations();
+		}
+	}
+
+	private void enqueue(int card) {
+		if (!queued[card]) {
+			queued[card] = true;
+			cardQueue[(queueHead + queueSize) % cardQueue.length] = card;
+			queueSize++;
+		}
+	}
+
+	private long allLocations() {
+		return (numberLocations == Long.SIZE) ? -1L : (1L << numberLocations) - 1;
+	}
+}
@@ -0,0 +1,53 @@
+package clue;
+import java.util.SplittableRandom;
+
+/**
+ * Bot policy playing as the built-in bots do: it suggests uniformly random cards, reveals the card Player 1 already
+ * knows it holds where it can, and accuses only when its suggestion went unrefuted without it holding any of the
+ * cards, which is exactly when the built-in bots win.
+ */
+public class RandomBotPolicy implements BotPolicy {
+
+	private final SplittableRandom rand;
+	private int[] suggestion;
+
+	/**
+	 * @param rand source of the policy's random suggestions, not shared with any other policy or game
+	 */
+	public RandomBotPolicy(SplittableRandom rand) {
+		this.rand = rand;
+	}
+
+	@Override
+	public int[] chooseSuggestion(ClueSolver game, int player) {
+		int numberSuspects = game.getNumberSuspects();
+		int numberPlaces = game.getNumberPlaces();
+		suggestion = new int[] {rand.nextInt(numberSuspects), numberSuspects + rand.nextInt(numberPlaces),
+				numberSuspects + numberPlaces + rand.nextInt(game.getNumberWeapons())};
+		return suggestion;
+	}
+
+	@Override
+	public int chooseReveal(ClueSolver game, int player, int suggester, int[] held) {
+		CardKnowledge knowledge = game.getKnowledge();
+		for (int card : held) {
+			if (knowledge.isHeld(card, player)) {
+				return card;
+			}
+		}
+		return held[0];
+	}
+
+	@Override
+	public int[] chooseAccusation(ClueSolver game, int player, int revealer, int card) {
+		if (revealer != -1) {
+			return null;
+		}
+		for (int suggested : suggestion) {
+			if (game.hasCard(player, suggested)) {
+				return null;
+			}
+		}
+		return suggestion;
+	}
+}
@@ -0,0 +1,285 @@
+package clue;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The suggestion constraints of a game, each the fact that a player holds at least one of a suspect, a place and a
+ * weapon, packed one per long by {@link GameStateFormat#pack(int, int, int, int)} in the order they were added.
+ * Adding a constraint already recorded is detected in constant time through a hash table of indexes.
+ * <p>
+ * A constraint is open until its player is known to hold one of its cards, when it is marked satisfied with
+ * {@link #satisfy(int, int)} and taken out of the per-card and per-player indexes, which only list open
+ * constraints. Satisfied constraints stay in the list of all constraints, so exports and saved games see every
+ * constraint ever added.
+ */
+final class SuggestionConstraints {
+
+	private long[] packed;
+	private int size;
+	private long[] satisfied;
+	private int open;
+
+	/**
+	 * Open addressing hash table of index + 1 of each constraint by its packed value, 0 for an empty slot.
+	 */
+	private int[] table;
+
+	private int[][] byCard;
+	private int[] byCardCount;
+	private int[][] byPlayer;
+	private int[] byPlayerCount;
+
+	SuggestionConstraints(int numberPlayers, int numberCards) {
+		this.packed = new long[16];
+		this.size = 0;
+		this.satisfied = new long[1];
+		this.open = 0;
+		this.table = new int[32];
+		this.byCard = new int[numberCards][];
+		this.byCardCount = new int[numberCards];
+		this.byPlayer = new int[numberPlayers][];
+		this.byPlayerCount = new int[numberPlayers];
+	}
+
+	/**
+	 * Creates a copy of other which can be changed without changing other.
+	 */
+	SuggestionConstraints(SuggestionConstraints other) {
+		this.packed = Arrays.copyOf(other.packed, Math.max(16, other.size + (other.size >> 1)));
+		this.size = other.size;
+		this.satisfied = Arrays.copyOf(other.satisfied, (packed.length + 63)/Long.SIZE);
+		this.open = other.open;
+		this.table = other.table.clone();
+		this.byCard = copyIndex(other.byCard, other.byCardCount);
+		this.byCardCount = other.byCardCount.clone();
+		this.byPlayer = copyIndex(other.byPlayer, other.byPlayerCount);
+		this.byPlayerCount = other.byPlayerCount.clone();
+	}
+
+	/**
+	 * Records that player holds at least one of the three cards, unless this has already been recorded.
+	 * @return true if the constraint is new
+	 */
+	boolean add(int player, int suspect, int place, int weapon) {
+		long constraint = GameStateFormat.pack(player, suspect, place, weapon);
+		int slot = find(constraint);
+		if (table[slot] != 0) {
+			return false;
+		}
+		if (size == packed.length) {
+			packed = Arrays.copyOf(packed, 2*size);
+			satisfied = Arrays.copyOf(satisfied, (packed.length + 63)/Long.SIZE);
+		}
+		int index = size++;
+		packed[index] = constraint;
+		table[slot] = index + 1;
+		//At most half full, so probes stay short
+		if (2*size > table.length) {
+			rehash();
+		}
+		open++;
+		addToIndex(byPlayer, byPlayerCount, player, index);
+		addToIndex(byCard, byCardCount, suspect, index);
+		addToIndex(byCard, byCardCount, place, index);
+		addToIndex(byCard, byCardCount, weapon, index);
+		return true;
+	}
+
+	boolean contains(int player, int suspect, int place, int weapon) {
+		return table[find(GameStateFormat.pack(player, suspect, place, weapon))] != 0;
+	}
+
+	/**
+	 * Marks every open constraint of player's which includes card as satisfied, as player is known to hold card.
+	 * @return number of constraints newly satisfied
+	 */
+	int satisfy(int player, int card) {
+		int count = 0;
+		for (int i = byCardCount[card] - 1; i >= 0; i--) {
+			int index = byCard[card][i];
+			if (player(index) == player) {
+				markSatisfied(index);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return true if some open constraint of player's includes card
+	 */
+	boolean hasOpen(int player, int card) {
+		for (int i = 0; i < byCardCount[card]; i++) {
+			if (player(byCard[card][i]) == player) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of constraints ever added, including satisfied ones
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of constraints not yet satisfied
+	 */
+	int getOpen() {
+		return open;
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()}, in the order constraints were added
+	 * @return the constraint packed by {@link GameStateFormat#pack(int, int, int, int)}
+	 */
+	long get(int index) {
+		return packed[index];
+	}
+
+	int player(int index) {
+		return GameStateFormat.unpackPlayer(packed[index]);
+	}
+
+	/**
+	 * @param index
+	 * @param position 0 for the suspect, 1 for the place and 2 for the weapon
+	 */
+	int card(int index, int position) {
+		return GameStateFormat.unpackCard(packed[index], position);
+	}
+
+	boolean isSatisfied(int index) {
+		return (satisfied[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @return number of open constraints including card
+	 */
+	int countByCard(int card) {
+		return byCardCount[card];
+	}
+
+	/**
+	 * @return index of the i-th open constraint including card, in no particular order
+	 */
+	int byCard(int card, int i) {
+		return byCard[card][i];
+	}
+
+	/**
+	 * @return number of open constraints of player's
+	 */
+	int countByPlayer(int player) {
+		return byPlayerCount[player];
+	}
+
+	/**
+	 * @return index of the i-th open constraint of player's, in no particular order
+	 */
+	int byPlayer(int player, int i) {
+		return byPlayer[player][i];
+	}
+
+	/**
+	 * @return every constraint as {player, suspect, place, weapon}, in the order they were added. The list reads
+	 * through to this store, so it must not be used after the store changes if it is shared.
+	 */
+	List<List<Integer>> asList() {
+		return new AbstractList<List<Integer>>() {
+			@Override
+			public List<Integer> get(int index) {
+				if (index < 0 || index >= size) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+				}
+				return Arrays.asList(player(index), card(index, 0), card(index, 1), card(index, 2));
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private void markSatisfied(int index) {
+		satisfied[index >>> 6] |= 1L << index;
+		open--;
+		removeFromIndex(byPlayer, byPlayerCount, player(index), index);
+		for (int position = 0; position < 3; position++) {
+			removeFromIndex(byCard, byCardCount, card(index, position), index);
+		}
+	}
+
+	/**
+	 * @return slot of the table holding constraint, or the empty slot where it belongs
+	 */
+	private int find(long constraint) {
+		int mask = table.length - 1;
+		int slot = hash(constraint) & mask;
+		while (table[slot] != 0 && packed[table[slot] - 1] != constraint) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash() {
+		table = new int[2*table.length];
+		int mask = table.length - 1;
+		for (int index = 0; index < size; index++) {
+			int slot = hash(packed[index]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index + 1;
+		}
+	}
+
+	private static int hash(long constraint) {
+		long h = constraint*0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static void addToIndex(int[][] index, int[] count, int key, int value) {
+		int[] values = index[key];
+		if (values == null) {
+			values = new int[4];
+			index[key] = values;
+		}
+		else if (count[key] == values.length) {
+			values = Arrays.copyOf(values, 2*values.length);
+			index[key] = values;
+		}
+		values[count[key]++] = value;
+	}
+
+	/**
+	 * Removes value by moving the last value into its place.
+	 */
+	private static void removeFromIndex(int[][] index, int[] count, int key, int value) {
+		int[] values = index[key];
+		for (int i = 0; i < count[key]; i++) {
+			if (values[i] == value) {
+				values[i] = values[--count[key]];
+				return;
+			}
+		}
+	}
+
+	private static int[][] copyIndex(int[][] index, int[] count) {
+		int[][] copy = new int[index.length][];
+		for (int key = 0; key < index.length; key++) {
+			if (index[key] != null) {
+				copy[key] = Arrays.copyOf(index[key], Math.max(4, count[key]));
+			}
+		}
+		return copy;
+	}
+}
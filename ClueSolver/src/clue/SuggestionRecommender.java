@@ -0,0 +1,390 @@
+package clue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recommends which suggestion Player 1 should make next, by scoring every (suspect, place, weapon) triple by how
+ * much it is expected to reduce the uncertainty (entropy) about the contents of the case file.
+ * <p>
+ * Deals consistent with the game state are drawn with a {@link ClueSampler}. For each deal, the answer a suggestion
+ * would get (which player refutes it and which card they show) is worked out the same way the game does. The
+ * expected information gain of a suggestion is the mutual information between its answer and the case file over
+ * those deals. Triples are split between worker threads, and a triple is skipped without counting case files once the
+ * entropy of its answers alone, which bounds its gain, is no better than the best gain found so far.
+ */
+public class SuggestionRecommender {
+
+	private ClueSolver data;
+	private ClueSampler sampler;
+	private int threads;
+	private int deals;
+	private long timeLimitMillis;
+
+	public SuggestionRecommender(ClueSolver data) {
+		this(data, new SplittableRandom());
+	}
+
+	/**
+	 * @param data
+	 * @param rand source of randomness used to draw deals
+	 */
+	public SuggestionRecommender(ClueSolver data, SplittableRandom rand) {
+		this.data = data;
+		this.sampler = new ClueSampler(data, rand);
+		this.threads = ClueSampler.defaultThreads();
+		this.deals = 2000;
+		this.timeLimitMillis = 50;
+	}
+
+	/**
+	 * @param threads number of worker threads, defaults to the number of cores, or 1 if created on a thread of a caller
+	 * which is already parallel (see {@link ClueSampler#defaultThreads()})
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Must use at least 1 thread");
+		}
+		this.threads = threads;
+		sampler.setThreads(threads);
+	}
+
+	/**
+	 * @param deals number of consistent deals the gains are estimated from, defaults to 2000
+	 */
+	public void setDeals(int deals) {
+		if (deals < 1) {
+			throw new IllegalArgumentException("Must draw at least 1 deal");
+		}
+		this.deals = deals;
+	}
+
+	/**
+	 * @param timeLimitMillis latency budget of {@link #recommendSuggestion()}, defaults to 50. Half is spent drawing
+	 * deals and the rest scoring triples; if it runs out the best triple scored so far is returned.
+	 */
+	public void setTimeLimit(long timeLimitMillis) {
+		if (timeLimitMillis < 1) {
+			throw new IllegalArgumentException("Time limit must be at least 1 millisecond");
+		}
+		this.timeLimitMillis = timeLimitMillis;
+	}
+
+	/**
+	 * Finds the suggestion with the highest expected information gain about the case file. The game must not be
+	 * changed while this call is running.
+	 * @return the recommended suggestion and its expected gain
+	 * @throws IllegalStateException if no consistent deal can be found
+	 */
+	public Recommendation recommendSuggestion() {
+		long start = System.nanoTime();
+		long deadline = start + timeLimitMillis*1000000L;
+		int[][] sampled = sampler.drawDeals(deals, Math.max(1, timeLimitMillis/2));
+		if (sampled.length == 0) {
+			throw new IllegalStateException("Time limit too small to draw any deals");
+		}
+		Scorer scorer = new Scorer(data, sampled, deadline);
+
+		int workers = (int) Math.max(1, Math.min(threads, scorer.numberTriples));
+		if (workers == 1) {
+			long[] counts = scorer.score(0, 1);
+			return scorer.recommendation((int) counts[0], (int) counts[1]);
+		}
+		List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+		try {
+			for (int i = 0; i < workers; i++) {
+				int first = i;
+				results.add(ClueSampler.WORKERS.submit(() -> scorer.score(first, workers)));
+			}
+			long[] total = new long[2];
+			for (Future<long[]> result : results) {
+				long[] counts = result.get();
+				total[0] += counts[0];
+				total[1] += counts[1];
+			}
+			return scorer.recommendation((int) total[0], (int) total[1]);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while scoring suggestions", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<long[]> result : results) {
+				result.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Result of {@link SuggestionRecommender#recommendSuggestion()}.
+	 */
+	public static class Recommendation {
+		private final int[] suggestion;
+		private final double informationGain;
+		private final int scored;
+		private final int pruned;
+		private final int deals;
+
+		Recommendation(int[] suggestion, double informationGain, int scored, int pruned, int deals) {
+			this.suggestion = suggestion;
+			this.informationGain = informationGain;
+			this.scored = scored;
+			this.pruned = pruned;
+			this.deals = deals;
+		}
+
+		/**
+		 * @return {suspect, place, weapon} to suggest
+		 */
+		public int[] getSuggestion() {
+			return Arrays.copyOf(suggestion, suggestion.length);
+		}
+
+		/**
+		 * @return expected reduction in the entropy of the case file, in bits
+		 */
+		public double getInformationGain() {
+			return informationGain;
+		}
+
+		/**
+		 * @return number of triples whose gain was fully computed
+		 */
+		public int getScored() {
+			return scored;
+		}
+
+		/**
+		 * @return number of triples skipped because their bound could not beat the best gain
+		 */
+		public int getPruned() {
+			return pruned;
+		}
+
+		/**
+		 * @return number of deals the gains were estimated from
+		 */
+		public int getDeals() {
+			return deals;
+		}
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	/**
+	 * Sampled deals in the form used to score triples, shared by every worker.
+	 */
+	private static class Scorer {
+		private final int numberPlayers;
+		private final int numberSuspects;
+		private final int numberPlaces;
+		private final int numberWeapons;
+		final long numberTriples;
+		private final int numberDeals;
+		private final int numberCards;
+		/** Location of every card in every deal, one deal after another, sorted by case file */
+		private final int[] locations;
+		/** Marks the last deal with each case file */
+		private final boolean[] groupEnd;
+		private final double caseFileEntropy;
+		/** For each card, the player known to hold it or -1 */
+		private final int[] knownHolder;
+		/** For each card, the number of players other than Player 1 who might hold it */
+		private final int[] candidates;
+		private final long deadline;
+
+		/** Gain of the best triple so far as double bits, which order the same as the (non negative) gains */
+		private final AtomicLong bestGain;
+		/** Best triple so far, the lowest index winning ties. Only changed while holding the lock on this */
+		private volatile long bestTriple;
+
+		Scorer(ClueSolver data, int[][] deals, long deadline) {
+			this.numberPlayers = data.getNumberPlayers();
+			this.numberSuspects = data.getNumberSuspects();
+			this.numberPlaces = data.getNumberPlaces();
+			this.numberWeapons = data.getNumberWeapons();
+			this.numberTriples = ((long) numberSuspects)*numberPlaces*numberWeapons;
+			this.deadline = deadline;
+
+			CardKnowledge knowledge = data.getKnowledge();
+			this.numberCards = knowledge.getNumberCards();
+			knownHolder = new int[numberCards];
+			candidates = new int[numberCards];
+			long opponents = ((1L << numberPlayers) - 1) & ~1L;
+			for (int card = 0; card < numberCards; card++) {
+				int location = knowledge.getKnownLocation(card);
+				knownHolder[card] = (location < numberPlayers) ? location : -1;
+				candidates[card] = Long.bitCount(knowledge.getPossibleLocations(card) & opponents);
+			}
+
+			//Order deals by case file, so the deals sharing a case file can be counted together
+			long[] keys = new long[deals.length];
+			for (int d = 0; d < deals.length; d++) {
+				int[] deal = deals[d];
+				int[] contents = new int[3];
+				for (int card = 0; card < deal.length; card++) {
+					if (deal[card] >= numberPlayers) {
+						contents[deal[card] - numberPlayers] = card;
+					}
+				}
+				keys[d] = tripleIndex(contents[0], contents[1], contents[2])*deals.length + d;
+			}
+			Arrays.sort(keys);
+			this.numberDeals = deals.length;
+			this.locations = new int[deals.length*numberCards];
+			this.groupEnd = new boolean[deals.length];
+			double entropy = 0;
+			int run = 0;
+			for (int d = 0; d < deals.length; d++) {
+				System.arraycopy(deals[(int) (keys[d]%deals.length)], 0, locations, d*numberCards, numberCards);
+				run++;
+				if (d == deals.length - 1 || keys[d]/deals.length != keys[d + 1]/deals.length) {
+					groupEnd[d] = true;
+					entropy -= plogp(run, deals.length);
+					run = 0;
+				}
+			}
+			this.caseFileEntropy = entropy;
+
+			this.bestGain = new AtomicLong(Double.doubleToLongBits(-1.0));
+			this.bestTriple = -1;
+		}
+
+		/**
+		 * Scores every workers'th triple starting at first.
+		 * @return {number scored, number pruned}
+		 */
+		long[] score(int first, int workers) {
+			long[] counts = new long[2];
+			int numberOutcomes = 3*numberPlayers + 1;
+			int[] outcomeCounts = new int[numberOutcomes];
+			int[] groupCounts = new int[numberOutcomes];
+			int[] touched = new int[numberOutcomes];
+			for (long triple = first; triple < numberTriples; triple += workers) {
+				if (System.nanoTime() > deadline && bestTriple != -1) {
+					break;
+				}
+				int[] suggestion = suggestion(triple);
+				int suspect = suggestion[0];
+				int place = suggestion[1];
+				int weapon = suggestion[2];
+
+				//Gain is at most the entropy of the answer, which is at most log2 of the number of possible answers
+				int possibleAnswers = 1 + candidates[suspect] + candidates[place] + candidates[weapon];
+				if (Math.log(possibleAnswers)/Math.log(2) < Double.longBitsToDouble(bestGain.get())) {
+					counts[1]++;
+					continue;
+				}
+
+				//Gain = H(answer) + H(case file) - H(answer, case file)
+				Arrays.fill(outcomeCounts, 0);
+				double jointEntropy = 0;
+				int numberTouched = 0;
+				for (int d = 0; d < numberDeals; d++) {
+					int outcome = answer(d*numberCards, suspect, place, weapon);
+					outcomeCounts[outcome]++;
+					if (groupCounts[outcome]++ == 0) {
+						touched[numberTouched++] = outcome;
+					}
+					if (groupEnd[d]) {
+						for (int i = 0; i < numberTouched; i++) {
+							jointEntropy -= plogp(groupCounts[touched[i]], numberDeals);
+							groupCounts[touched[i]] = 0;
+						}
+						numberTouched = 0;
+					}
+				}
+				double outcomeEntropy = 0;
+				for (int count : outcomeCounts) {
+					outcomeEntropy -= plogp(count, numberDeals);
+				}
+				offer(triple, Math.max(0, outcomeEntropy + caseFileEntropy - jointEntropy));
+				counts[0]++;
+			}
+			return counts;
+		}
+
+		Recommendation recommendation(int scored, int pruned) {
+			return new Recommendation(suggestion(bestTriple), Double.longBitsToDouble(bestGain.get()), scored, pruned,
+					numberDeals);
+		}
+
+		/**
+		 * Works out how a suggestion by Player 1 would be answered if the cards were dealt as in the deal at offset, the same way
+		 * as the game: the first player after Player 1 holding one of the cards shows one, preferring a card they are
+		 * already known to hold and otherwise the suspect, then place, then weapon.
+		 * @return 0 if nobody can refute, otherwise 1 + 3*player + position of the shown card in the suggestion
+		 */
+		private int answer(int offset, int suspect, int place, int weapon) {
+			int suspectLocation = locations[offset + suspect];
+			int placeLocation = locations[offset + place];
+			int player = Math.min(turnOrder(suspectLocation),
+					Math.min(turnOrder(placeLocation), turnOrder(locations[offset + weapon])));
+			if (player == Integer.MAX_VALUE) {
+				return 0;
+			}
+			if (knownHolder[suspect] == player) {
+				return 1 + 3*player;
+			}
+			if (knownHolder[place] == player) {
+				return 2 + 3*player;
+			}
+			if (knownHolder[weapon] == player) {
+				return 3 + 3*player;
+			}
+			if (suspectLocation == player) {
+				return 1 + 3*player;
+			}
+			if (placeLocation == player) {
+				return 2 + 3*player;
+			}
+			return 3 + 3*player;
+		}
+
+		/**
+		 * @return location if it is a player asked to refute Player 1's suggestion, otherwise a value after every player
+		 */
+		private int turnOrder(int location) {
+			return (location > 0 && location < numberPlayers) ? location : Integer.MAX_VALUE;
+		}
+
+		private synchronized void offer(long triple, double gain) {
+			double best = Double.longBitsToDouble(bestGain.get());
+			if (gain > best || (gain == best && triple < bestTriple)) {
+				bestGain.set(Double.doubleToLongBits(gain));
+				bestTriple = triple;
+			}
+		}
+
+		private long tripleIndex(int suspect, int place, int weapon) {
+			return (((long) suspect)*numberPlaces + place - numberSuspects)*numberWeapons + weapon - numberSuspects
+					- numberPlaces;
+		}
+
+		/**
+		 * @return {suspect, place, weapon} numbered by tripleIndex
+		 */
+		private int[] suggestion(long triple) {
+			return new int[] {(int) (triple/((long) numberPlaces*numberWeapons)),
+					numberSuspects + (int) ((triple/numberWeapons)%numberPlaces),
+					numberSuspects + numberPlaces + (int) (triple%numberWeapons)};
+		}
+
+		private static double plogp(int count, int total) {
+			if (count == 0) {
+				return 0;
+			}
+			double p = ((double) count)/total;
+			return p*Math.log(p)/Math.log(2);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package clue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link AccusationAdvisor} answers on every turn of a game, however large, with figures that make sense.
+ */
+public class AccusationAdvisorTest {
+
+	@Test
+	public void advisesEveryTurnOfDefaultGames() {
+		for (int seed = 0; seed < 60; seed++) {
+			ClueSolver game = new ClueSolver(3 + seed%4, seed);
+			game.setMessagesEnabled(false);
+			game.startGame();
+			AccusationAdvisor advisor = new AccusationAdvisor(game, new SplittableRandom(seed));
+			for (int round = 0; round < 30 && !game.isGameOver(); round++) {
+				assertSensible(game, advisor.advise(), "seed " + seed + " round " + round);
+				TestGames.playRounds(game, new SplittableRandom(seed*100 + round), 1);
+			}
+		}
+	}
+
+	@Test
+	public void knownCaseFileIsCertain() {
+		ClueSolver game = new ClueSolver(4, 0L);
+		game.setMessagesEnabled(false);
+		game.startGame();
+		int[] deal = game.getDeal();
+		for (int card = 0; card < deal.length; card++) {
+			if (deal[card] >= 4) {
+				game.assumeHolds(deal[card], card);
+			}
+		}
+		AccusationAdvisor.Advice advice = new AccusationAdvisor(game, new SplittableRandom(0)).advise();
+		assertEquals(1, advice.getProbability(), 1e-9);
+		assertEquals(0, advice.getEntropy(), 1e-9);
+		assertTrue(advice.shouldAccuse());
+	}
+
+	@Test
+	public void advisesGamesTooLargeToSampleInTime() {
+		ClueSolver game = new ClueSolver(4, 700, 700, 700, 1L);
+		game.setMessagesEnabled(false);
+		game.startGame();
+		TestGames.playRounds(game, new SplittableRandom(1), 3);
+		AccusationAdvisor advisor = new AccusationAdvisor(game, new SplittableRandom(1));
+		advisor.setTimeLimit(1);
+		assertSensible(game, advisor.advise(), "large game");
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static void assertSensible(ClueSolver game, AccusationAdvisor.Advice advice, String when) {
+		int[] accusation = advice.getAccusation();
+		for (int cardType = 0; cardType < 3; cardType++) {
+			assertEquals("Card type of accusation, " + when, cardType, game.getCardType(accusation[cardType]));
+			assertTrue("Accused card known elsewhere, " + when,
+					!game.getKnowledge().isRestricted(accusation[cardType], game.getNumberPlayers() + cardType));
+		}
+		assertTrue("Probability " + advice.getProbability() + ", " + when,
+				advice.getProbability() > 0 && advice.getProbability() <= 1 + 1e-9);
+		assertTrue("Entropy " + advice.getEntropy() + ", " + when, advice.getEntropy() >= 0);
+		assertTrue("Win if waiting " + advice.getWinIfWaiting() + ", " + when,
+				advice.getWinIfWaiting() >= 0 && advice.getWinIfWaiting() <= 1);
+	}
+}
@@ -0,0 +1,105 @@
+package clue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks the probabilities and deal counts of {@link ClueExactSolver} against every consistent deal of small games,
+ * found by brute force.
+ */
+public class ClueExactSolverTest {
+
+	private static final double EPSILON = 1e-9;
+
+	@Test
+	public void matchesBruteForceOnSmallGames() {
+		for (int seed = 0; seed < 60; seed++) {
+			int players = 3 + seed%3;
+			ClueSolver game = new ClueSolver(players, 4, 5, 4, seed);
+			game.setMessagesEnabled(false);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(seed), (seed/3)%4);
+			if (game.isGameOver()) {
+				continue;
+			}
+			int numberLocations = players + 3;
+			double[] counts = new double[game.getKnowledge().getNumberCards()*numberLocations];
+			long[] deals = new long[1];
+			new TestGames.Deals(game).forEach(deal -> {
+				for (int card = 0; card < deal.length; card++) {
+					counts[card*numberLocations + deal[card]]++;
+				}
+				deals[0]++;
+			});
+
+			ClueExactSolver exact = new ClueExactSolver(game);
+			double[] probabilities = exact.solve();
+			assertEquals("Deals for seed " + seed, deals[0], exact.getSolutionCount(), 0);
+			assertFalse(exact.isTooLarge());
+			for (int i = 0; i < counts.length; i++) {
+				assertEquals("Card " + i/numberLocations + " in location " + i%numberLocations + " for seed " + seed,
+						counts[i]/deals[0], probabilities[i], EPSILON);
+			}
+		}
+	}
+
+	@Test
+	public void contradictionsHaveNoDeals() {
+		ClueSolver game = new ClueSolver(4, 4, 5, 4, 2L);
+		game.setMessagesEnabled(false);
+		game.startGame();
+		TestGames.playRounds(game, new SplittableRandom(2), 1);
+		int[] deal = game.getDeal();
+		int player1Card = 0;
+		while (deal[player1Card] != 0) {
+			player1Card++;
+		}
+
+		//Another player holding one of Player 1's own cards
+		ClueSolver fork = game.fork();
+		fork.assumeHolds(1, player1Card);
+		assertNoDeals(fork, "a card held twice");
+
+		//A refutation from a player ruled out of all three cards
+		fork = game.fork();
+		fork.assumePass(2, 0, 4, 9);
+		fork.assumeRefutes(2, 0, 4, 9);
+		assertNoDeals(fork, "an impossible refutation");
+	}
+
+	@Test
+	public void refusesGamesOverTheStateLimit() {
+		ClueSolver game = new ClueSolver(4, 0L);
+		game.startGame();
+		ClueExactSolver exact = new ClueExactSolver(game);
+		exact.setMaxStates(1);
+		try {
+			exact.solve();
+			fail("Counted more states than allowed");
+		} catch (IllegalStateException e) {
+			assertTrue(exact.isTooLarge());
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static void assertNoDeals(ClueSolver game, String what) {
+		long[] deals = new long[1];
+		new TestGames.Deals(game).forEach(deal -> deals[0]++);
+		assertEquals("Brute force deals with " + what, 0, deals[0]);
+		ClueExactSolver exact = new ClueExactSolver(game);
+		try {
+			exact.solve();
+			fail("Solved a game with " + what);
+		} catch (IllegalStateException e) {
+			assertFalse(exact.isTooLarge());
+		}
+	}
+}
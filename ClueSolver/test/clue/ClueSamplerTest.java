@@ -0,0 +1,53 @@
+package clue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link ClueSampler} gives the same samples on any number of threads, and that callers which are already
+ * parallel sample on one thread by default.
+ */
+public class ClueSamplerTest {
+
+	@Test
+	public void samplesDoNotDependOnThreads() {
+		for (int seed = 0; seed < 5; seed++) {
+			ClueSolver game = new ClueSolver(4, 10, 12, 10, seed);
+			game.setMessagesEnabled(false);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(seed), 3);
+			double[] expected = null;
+			for (int threads = 1; threads <= 4; threads++) {
+				ClueSampler sampler = new ClueSampler(game, new SplittableRandom(seed));
+				sampler.setThreads(threads);
+				sampler.setMaxSteps(1 << 16);
+				double[] probabilities = sampler.sample(1000, 0).getProbabilities();
+				if (expected == null) {
+					expected = probabilities;
+				}
+				assertArrayEquals("Seed " + seed + " on " + threads + " threads", expected, probabilities, 0);
+			}
+		}
+	}
+
+	@Test
+	public void parallelCallersDefaultToOneThread() throws Exception {
+		ExecutorService callers = Executors.newFixedThreadPool(2, ClueSampler.callerThreads("test caller"));
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertEquals(1, (int) callers.submit(ClueSampler::defaultThreads).get());
+			assertEquals(1, (int) pool.submit(ClueSampler::defaultThreads).get());
+			assertEquals(1, (int) ClueSampler.WORKERS.submit(ClueSampler::defaultThreads).get());
+		} finally {
+			callers.shutdown();
+			pool.shutdown();
+		}
+		assertEquals(Runtime.getRuntime().availableProcessors(), ClueSampler.defaultThreads());
+	}
+}
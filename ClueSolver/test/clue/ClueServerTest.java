@@ -0,0 +1,162 @@
+package clue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Plays games through a {@link ClueServer} on a free localhost port, and checks that bad requests, too many sessions
+ * and idle sessions are handled.
+ */
+public class ClueServerTest {
+
+	private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+	@Test
+	public void playsGames() throws IOException {
+		ClueServer server = new ClueServer(0);
+		server.start();
+		try {
+			Response created = request(server, "POST", "/games?players=4&seed=1");
+			assertEquals(created.body, 200, created.status);
+			String game = "/games/" + id(created);
+			assertEquals(1, server.getSessions());
+
+			Response suggested = request(server, "POST", game + "/suggest?suspect=0&place=6&weapon=15");
+			assertEquals(suggested.body, 200, suggested.status);
+			assertTrue(suggested.body, suggested.body.startsWith("{\"messages\":"));
+			assertEquals(200, request(server, "POST", game + "/end").status);
+
+			Response probability = request(server, "GET", game + "/probability");
+			assertEquals(probability.body, 200, probability.status);
+			assertTrue(probability.body, probability.body.contains("\"locations\":7,\"model\":\"EXACT\""));
+
+			assertEquals(200, request(server, "DELETE", game).status);
+			assertEquals(0, server.getSessions());
+			assertEquals(404, request(server, "GET", game + "/probability").status);
+			assertEquals(404, request(server, "DELETE", game).status);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void rejectsBadParameters() throws IOException {
+		ClueServer server = new ClueServer(0);
+		server.start();
+		try {
+			assertEquals(400, request(server, "POST", "/games").status);
+			assertEquals(400, request(server, "POST", "/games?players=1").status);
+			assertEquals(400, request(server, "POST", "/games?players=62").status);
+			assertEquals(400, request(server, "POST", "/games?players=100000000").status);
+			assertEquals(400, request(server, "POST", "/games?players=x").status);
+			assertEquals(400, request(server, "POST", "/games?players=3&suspects=0&places=9&weapons=6").status);
+			assertEquals(400, request(server, "POST", "/games?players=3&suspects=9000&places=900&weapons=900").status);
+			assertEquals(405, request(server, "GET", "/games?players=3").status);
+			assertEquals(0, server.getSessions());
+
+			String game = "/games/" + id(request(server, "POST", "/games?players=3"));
+			assertEquals(400, request(server, "POST", game + "/suggest?suspect=0&place=6").status);
+			assertEquals(400, request(server, "POST", game + "/suggest?suspect=a&place=6&weapon=15").status);
+			assertEquals(404, request(server, "POST", game + "/nothing").status);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void refusesSessionsPastTheLimit() throws IOException {
+		ClueServer server = new ClueServer(0);
+		server.setMaxSessions(2);
+		server.start();
+		try {
+			String first = "/games/" + id(request(server, "POST", "/games?players=3"));
+			//Failed creates give their slot back
+			assertEquals(400, request(server, "POST", "/games?players=1").status);
+			assertEquals(200, request(server, "POST", "/games?players=3").status);
+			assertEquals(503, request(server, "POST", "/games?players=3").status);
+			assertEquals(2, server.getSessions());
+
+			assertEquals(200, request(server, "DELETE", first).status);
+			assertEquals(200, request(server, "POST", "/games?players=3").status);
+			assertEquals(503, request(server, "POST", "/games?players=3").status);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void evictsIdleSessions() throws Exception {
+		ClueServer server = new ClueServer(0);
+		server.setIdleTimeout(100);
+		server.setMaxSessions(1);
+		server.start();
+		try {
+			assertEquals(200, request(server, "POST", "/games?players=3").status);
+			for (int wait = 0; wait < 100 && server.getSessions() > 0; wait++) {
+				Thread.sleep(50);
+			}
+			assertEquals(0, server.getSessions());
+			assertTrue(request(server, "GET", "/metrics").body.contains("\"evicted\":1"));
+			//The evicted session's slot can be used again
+			assertEquals(200, request(server, "POST", "/games?players=3").status);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static Response request(ClueServer server, String method, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path)
+				.openConnection();
+		connection.setRequestMethod(method);
+		try {
+			int status = connection.getResponseCode();
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			if (in != null) {
+				try (InputStream stream = in) {
+					byte[] buffer = new byte[4096];
+					for (int read; (read = stream.read(buffer)) != -1;) {
+						body.write(buffer, 0, read);
+					}
+				}
+			}
+			return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static long id(Response created) {
+		Matcher matcher = ID.matcher(created.body);
+		assertTrue(created.body, matcher.find());
+		return Long.parseLong(matcher.group(1));
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	private static class Response {
+		final int status;
+		final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package clue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks that seeded games stay reproducible whichever {@link ClueSolver.ProbabilityModel} answers, and that games too
+ * large to sample fall back to the heuristic. Also checks the events Player 1 is shown, and that forks given
+ * hypothetical updates leave the game they came from alone.
+ */
+public class ClueSolverTest {
+
+	@Test
+	public void sampledProbabilitiesAreReproducible() {
+		int sampled = 0;
+		for (int seed = 0; seed < 6; seed++) {
+			ClueSolver first = new ClueSolver(4 + seed%3, 20, 20, 20, seed);
+			ClueSolver second = new ClueSolver(4 + seed%3, 20, 20, 20, seed);
+			first.setMessagesEnabled(false);
+			second.setMessagesEnabled(false);
+			first.startGame();
+			second.startGame();
+			for (int round = 0; round < 6 && !first.isGameOver(); round++) {
+				assertArrayEquals("Seed " + seed + " round " + round, first.getProbabilityMatrix(),
+						second.getProbabilityMatrix(), 0);
+				assertEquals(first.getProbabilityModelUsed(), second.getProbabilityModelUsed());
+				if (first.getProbabilityModelUsed() == ClueSolver.ProbabilityModel.SAMPLED) {
+					sampled++;
+				}
+				TestGames.playRounds(first, new SplittableRandom(seed*100 + round), 1);
+				TestGames.playRounds(second, new SplittableRandom(seed*100 + round), 1);
+			}
+		}
+		assertTrue("No game was sampled", sampled > 0);
+	}
+
+	@Test
+	public void sampledProbabilitiesSurviveSaving() {
+		int sampled = 0;
+		for (int seed = 0; seed < 6; seed++) {
+			ClueSolver game = new ClueSolver(4 + seed%3, 20, 20, 20, seed);
+			game.setMessagesEnabled(false);
+			game.startGame();
+			for (int round = 0; round < 4 && !game.isGameOver(); round++) {
+				//Only the original has computed probabilities before, so the copy's estimates must not depend on that
+				game.getProbabilityMatrix();
+				TestGames.playRounds(game, new SplittableRandom(seed*100 + round), 1);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(GameStateFormat.encodedSize(game)).order(ByteOrder.LITTLE_ENDIAN);
+			GameStateFormat.encode(game, buffer);
+			buffer.flip();
+			ClueSolver loaded = GameStateFormat.decode(buffer);
+			assertArrayEquals("Seed " + seed, game.getProbabilityMatrix(), loaded.getProbabilityMatrix(), 0);
+			if (game.getProbabilityModelUsed() == ClueSolver.ProbabilityModel.SAMPLED) {
+				sampled++;
+			}
+		}
+		assertTrue("No game was sampled", sampled > 0);
+	}
+
+	@Test
+	public void probabilitiesDoNotChangeBotMoves() {
+		for (int seed = 0; seed < 10; seed++) {
+			ClueSolver asked = new ClueSolver(3 + seed%4, 20, 20, 20, seed);
+			ClueSolver unasked = new ClueSolver(3 + seed%4, 20, 20, 20, seed);
+			asked.startGame();
+			unasked.startGame();
+			for (int round = 0; round < 5 && !asked.isGameOver(); round++) {
+				asked.getProbabilityMatrix();
+				TestGames.playRounds(asked, new SplittableRandom(seed), 1);
+				TestGames.playRounds(unasked, new SplittableRandom(seed), 1);
+			}
+			assertEquals("Seed " + seed, unasked.getGameMessages(), asked.getGameMessages());
+		}
+	}
+
+	@Test
+	public void simulationIsReproducible() {
+		double[] meanTurns = new double[2];
+		for (int run = 0; run < 2; run++) {
+			ClueSimulation simulation = new ClueSimulation(6, 10, 12, 10, DeductiveStrategy::new);
+			simulation.setSeed(42);
+			simulation.setThreads(1 + run);
+			meanTurns[run] = simulation.run(8).getMeanTurnsToSolve();
+		}
+		assertEquals(meanTurns[0], meanTurns[1], 0);
+	}
+
+	@Test
+	public void eventsHideCardsPlayer1DidNotSee() {
+		int hidden = 0;
+		for (int seed = 0; seed < 10; seed++) {
+			ClueSolver game = new ClueSolver(3 + seed%4, seed);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(seed), 3);
+			List<GameEvent> events = game.getEvents();
+			for (GameEvent event : events) {
+				if (event.getType() == GameEvent.Type.REVEAL && event.getPlayer() != 0) {
+					assertEquals(-1, event.getCard());
+					hidden++;
+				}
+				else if (event.getType() == GameEvent.Type.REVEAL_CARD) {
+					assertTrue(event.getCard() >= 0);
+				}
+			}
+			int size = events.size();
+			TestGames.playRounds(game, new SplittableRandom(seed), 1);
+			assertEquals("Events are a copy", size, events.size());
+		}
+		assertTrue("No hidden reveal was made", hidden > 0);
+	}
+
+	@Test
+	public void forksDoNotChangeTheGame() {
+		for (int seed = 0; seed < 30; seed++) {
+			int players = 3 + seed%4;
+			ClueSolver game = seed%2 == 0 ? new ClueSolver(players, seed) : new ClueSolver(players, 8, 10, 8, seed);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(seed), 2 + seed%4);
+			String state = TestGames.describe(game);
+			String messages = game.getGameMessages();
+			double[] probabilities = game.getProbabilityMatrix().clone();
+
+			ClueSolver fork = game.fork(new SplittableRandom(seed));
+			assertEquals("Fork of seed " + seed, state, TestGames.describe(fork));
+			assertArrayEquals(probabilities, fork.getProbabilityMatrix(), 0);
+
+			//True facts, so the fork stays consistent and can be played on
+			int[] deal = game.getDeal();
+			int card = seed % deal.length;
+			if (deal[card] < players) {
+				fork.assumeHolds(deal[card], card);
+				assertEquals(deal[card], fork.getKnowledge().getKnownLocation(card));
+			}
+			int suspect = 0;
+			while (deal[suspect] == 1) {
+				suspect++;
+			}
+			int place = game.getNumberSuspects();
+			while (deal[place] == 1) {
+				place++;
+			}
+			int weapon = game.getNumberSuspects() + game.getNumberPlaces();
+			while (deal[weapon] == 1) {
+				weapon++;
+			}
+			fork.assumePass(1, suspect, place, weapon);
+			for (int suggested : new int[] {suspect, place, weapon}) {
+				if (deal[suggested] < players) {
+					fork.assumeRefutes(deal[suggested], suspect, place, weapon);
+					break;
+				}
+			}
+			fork.getProbabilityMatrix();
+			TestGames.playRounds(fork, new SplittableRandom(seed + 1), 2);
+			fork.getProbabilityMatrix();
+
+			assertEquals("Game of seed " + seed + " after its fork changed", state, TestGames.describe(game));
+			assertEquals(messages, game.getGameMessages());
+			assertArrayEquals(probabilities, game.getProbabilityMatrix(), 0);
+			assertEquals(state, TestGames.describe(game.fork()));
+		}
+	}
+
+	@Test
+	public void impossibleAssumptionsAreContradictions() {
+		ClueSolver game = new ClueSolver(3, 0L);
+		game.setMessagesEnabled(false);
+		game.startGame();
+		ClueSolver fork = game.fork();
+		//Player 2 ruled out of too many cards to make up their hand
+		for (int i = 0; i < 5; i++) {
+			fork.assumePass(1, i, 6 + i, 15 + i);
+		}
+		assertTrue(fork.getKnowledge().hasContradiction());
+		assertTrue(!game.getKnowledge().hasContradiction());
+	}
+
+	@Test
+	public void hugeGamesUseHeuristic() {
+		ClueSolver game = new ClueSolver(4, 700, 700, 700, 1L);
+		game.setMessagesEnabled(false);
+		game.startGame();
+		TestGames.playRounds(game, new SplittableRandom(1), 3);
+		assertEquals(ClueSolver.ProbabilityModel.HEURISTIC, game.getProbabilityModelUsed());
+	}
+}
@@ -0,0 +1,75 @@
+package clue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link ClueTopKSolver} against every consistent deal of small games, found by brute force and priced with
+ * the weights {@link ClueFileWriter} writes.
+ */
+public class ClueTopKSolverTest {
+
+	private static final int K = 50;
+	private static final double EPSILON = 1e-6;
+
+	@Test
+	public void matchesBruteForceOnSmallGames() {
+		for (int seed = 0; seed < 60; seed++) {
+			int players = 3 + seed%3;
+			ClueSolver game = new ClueSolver(players, 4, 5, 4, seed);
+			game.setMessagesEnabled(false);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(seed), (seed/3)%3);
+			if (game.isGameOver()) {
+				continue;
+			}
+			TestGames.Deals deals = new TestGames.Deals(game);
+			List<Double> costs = deals.enumerate();
+			Collections.sort(costs);
+
+			List<ClueTopKSolver.Deal> top = new ClueTopKSolver(game).solve(K);
+			assertEquals("Deals found for seed " + seed, Math.min(K, costs.size()), top.size());
+			for (int i = 0; i < top.size(); i++) {
+				assertTrue("Deal " + i + " is inconsistent for seed " + seed, deals.isValid(top.get(i).getLocations()));
+				assertEquals("Cost of deal " + i + " for seed " + seed, costs.get(i), top.get(i).getCost(), EPSILON);
+			}
+			assertEquals(!costs.isEmpty(), new ClueTopKSolver(game).iterator().hasNext());
+		}
+	}
+
+	@Test
+	public void returnsValidDealsCheapestFirstOnStandardGames() {
+		for (int seed = 0; seed < 20; seed++) {
+			ClueSolver game = new ClueSolver(3 + seed%4, seed);
+			game.setMessagesEnabled(false);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(seed), 4 + seed%6);
+			if (game.isGameOver()) {
+				continue;
+			}
+			TestGames.Deals deals = new TestGames.Deals(game);
+			double previous = Double.NEGATIVE_INFINITY;
+			Iterator<ClueTopKSolver.Deal> search = new ClueTopKSolver(game).iterator();
+			for (int i = 0; i < K && search.hasNext(); i++) {
+				ClueTopKSolver.Deal deal = search.next();
+				assertTrue("Deal " + i + " is inconsistent for seed " + seed, deals.isValid(deal.getLocations()));
+				assertEquals(deals.cost(deal.getLocations()), deal.getCost(), EPSILON);
+				assertTrue("Deal " + i + " is out of order for seed " + seed, deal.getCost() >= previous - EPSILON);
+				previous = deal.getCost();
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeK() {
+		ClueSolver game = new ClueSolver(3, 0L);
+		game.startGame();
+		new ClueTopKSolver(game).solve(-1);
+	}
+}
@@ -0,0 +1,132 @@
+package clue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link GameJournal#replay(Path)} rebuilds journaled games as they were, so they play on the same, and
+ * that it copes with the partly written last event a crash leaves.
+ */
+public class GameJournalTest {
+
+	@Test
+	public void replaysGames() throws IOException {
+		for (int seed = 0; seed < 100; seed++) {
+			int players = 3 + seed%4;
+			ClueSolver game = seed%2 == 0 ? new ClueSolver(players, seed)
+					: new ClueSolver(players, 5 + seed%4, 7 + seed%5, 5 + seed%3, seed);
+			if (seed%3 == 0) {
+				game.setPlayerKnowledgeEnabled(true);
+				game.setBotPolicy(1, new DeductiveBotPolicy(new SplittableRandom(seed)));
+			}
+			Path path = Files.createTempFile("clue", ".clj");
+			try {
+				GameJournal journal = new GameJournal(path, game);
+				journal.setBatchSize(1 + seed%5);
+				game.startGame();
+				TestGames.playRounds(game, new SplittableRandom(seed), seed%10);
+				journal.close();
+
+				ClueSolver replayed = GameJournal.replay(path);
+				assertEquals("Seed " + seed, TestGames.describe(game), TestGames.describe(replayed));
+				assertEquals("Seed " + seed, game.getGameMessages(), replayed.getGameMessages());
+				assertArrayEquals("Seed " + seed, game.getProbabilityMatrix(), replayed.getProbabilityMatrix(), 0);
+
+				//Policies are not journaled, so both games are given a new one
+				if (seed%3 == 0) {
+					game.setBotPolicy(1, new DeductiveBotPolicy(new SplittableRandom(seed + 1)));
+					replayed.setBotPolicy(1, new DeductiveBotPolicy(new SplittableRandom(seed + 1)));
+				}
+				TestGames.playRounds(game, new SplittableRandom(seed + 1), 3);
+				TestGames.playRounds(replayed, new SplittableRandom(seed + 1), 3);
+				assertEquals("Seed " + seed + " played on", TestGames.describe(game), TestGames.describe(replayed));
+				assertEquals("Seed " + seed + " played on", game.getGameMessages(), replayed.getGameMessages());
+			} finally {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void ignoresPartlyWrittenLastEvent() throws IOException {
+		for (int seed = 0; seed < 20; seed++) {
+			ClueSolver game = new ClueSolver(3 + seed%4, seed);
+			Path path = Files.createTempFile("clue", ".clj");
+			try {
+				GameJournal journal = new GameJournal(path, game);
+				journal.setBatchSize(1);
+				game.startGame();
+				TestGames.playRounds(game, new SplittableRandom(seed), 2);
+				if (game.isGameOver()) {
+					journal.close();
+					continue;
+				}
+				//Every event is written as it happens, so the file ends with the events of the first rounds
+				long written = Files.size(path);
+				String expected = TestGames.describe(game);
+				String messages = game.getGameMessages();
+				TestGames.playRounds(game, new SplittableRandom(seed + 1), 1);
+				journal.close();
+
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+					channel.truncate(written + 7);
+				}
+				ClueSolver replayed = GameJournal.replay(path);
+				assertEquals("Seed " + seed, expected, TestGames.describe(replayed));
+				assertEquals("Seed " + seed, messages, replayed.getGameMessages());
+			} finally {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void rejectsCorruptJournals() throws IOException {
+		ClueSolver game = new ClueSolver(4, 0L);
+		Path path = Files.createTempFile("clue", ".clj");
+		try {
+			GameJournal journal = new GameJournal(path, game);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(0), 1);
+			journal.close();
+			byte[] bytes = Files.readAllBytes(path);
+
+			//Type of the last event
+			bytes[bytes.length - 20] = 100;
+			Files.write(path, bytes);
+			assertRejected(path, "an unknown event type");
+
+			//Number of players in the snapshot
+			bytes[12 + 4] = 0;
+			Files.write(path, bytes);
+			assertRejected(path, "no players");
+
+			Files.write(path, new byte[] {1, 2, 3});
+			assertRejected(path, "no header");
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static void assertRejected(Path path, String what) {
+		try {
+			GameJournal.replay(path);
+			fail("Replayed a journal with " + what);
+		} catch (IOException e) {
+			//Expected
+		}
+	}
+}
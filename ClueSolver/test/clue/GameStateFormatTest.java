@@ -0,0 +1,208 @@
+package clue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks that games saved by {@link GameStateWriter} load through {@link GameStateReader} as they were and play on
+ * the same, and that corrupt records are rejected when loaded rather than failing later.
+ */
+public class GameStateFormatTest {
+
+	/**
+	 * Offset of the first dealt card in a record.
+	 */
+	private static final int DEAL = 36;
+
+	@Test
+	public void roundTripsThroughFile() throws IOException {
+		List<ClueSolver> games = new ArrayList<ClueSolver>();
+		for (int seed = 0; seed < 40; seed++) {
+			int players = 3 + seed%4;
+			ClueSolver game = seed%2 == 0 ? new ClueSolver(players, seed)
+					: new ClueSolver(players, 5 + seed%4, 7 + seed%5, 5 + seed%3, seed);
+			game.setPlayerKnowledgeEnabled(seed%3 == 0);
+			game.startGame();
+			TestGames.playRounds(game, new SplittableRandom(seed), seed%8);
+			games.add(game);
+		}
+		Path path = Files.createTempFile("clue", ".cls");
+		try {
+			try (GameStateWriter writer = new GameStateWriter(path)) {
+				for (ClueSolver game : games) {
+					writer.append(game);
+				}
+				assertEquals(games.size(), writer.getCount());
+			}
+			try (GameStateReader reader = new GameStateReader(path)) {
+				for (int seed = 0; seed < games.size(); seed++) {
+					assertTrue(reader.hasNext());
+					ClueSolver game = games.get(seed);
+					ClueSolver loaded = reader.next();
+					assertEquals("Seed " + seed, TestGames.describe(game), TestGames.describe(loaded));
+					assertArrayEquals("Seed " + seed, game.getProbabilityMatrix(), loaded.getProbabilityMatrix(), 0);
+
+					//Seeded games go on from the same point of their random sequence
+					int messages = game.getGameMessages().length();
+					TestGames.playRounds(game, new SplittableRandom(seed + 1), 3);
+					TestGames.playRounds(loaded, new SplittableRandom(seed + 1), 3);
+					assertEquals("Seed " + seed + " played on", TestGames.describe(game), TestGames.describe(loaded));
+					assertEquals(game.getGameMessages().substring(messages), loaded.getGameMessages());
+				}
+				assertFalse(reader.hasNext());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void zeroTailOfUnclosedWriterEndsGames() throws IOException {
+		Path path = Files.createTempFile("clue", ".cls");
+		try {
+			try (GameStateWriter writer = new GameStateWriter(path)) {
+				for (int seed = 0; seed < 3; seed++) {
+					ClueSolver game = new ClueSolver(4, seed);
+					game.startGame();
+					writer.append(game);
+				}
+			}
+			//What is left after the last game when the writer's mapped window was never cut back
+			Files.write(path, new byte[4096], StandardOpenOption.APPEND);
+			try (GameStateReader reader = new GameStateReader(path)) {
+				int count = 0;
+				while (reader.hasNext()) {
+					reader.next();
+					count++;
+				}
+				assertEquals(3, count);
+				try {
+					reader.next();
+					fail("Read a game from the zero tail");
+				} catch (IOException e) {
+					//Expected
+				}
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void readerRejectsCorruptRecords() throws IOException {
+		ClueSolver game = new ClueSolver(4, 0L);
+		game.startGame();
+		Path path = Files.createTempFile("clue", ".cls");
+		try {
+			try (GameStateWriter writer = new GameStateWriter(path)) {
+				writer.append(game);
+			}
+			byte[] bytes = Files.readAllBytes(path);
+			bytes[GameStateFormat.HEADER_SIZE + 4] = 0;
+			Files.write(path, bytes);
+			try (GameStateReader reader = new GameStateReader(path)) {
+				assertTrue(reader.hasNext());
+				reader.next();
+				fail("Read a game with no players");
+			} catch (IOException e) {
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void rejectsImpossibleHeaders() {
+		ClueSolver game = new ClueSolver(4, 5, 7, 5, 3L);
+		game.startGame();
+		TestGames.playRounds(game, new SplittableRandom(3), 2);
+		byte[] record = encode(game);
+
+		assertRejected(new byte[record.length], "all zeros");
+		assertRejected(withInt(record, 0, 8), "too short for the fixed fields");
+		assertRejected(withInt(record, 0, record.length), "longer than the buffer");
+		assertRejected(withByte(record, 4, 0), "no players");
+		assertRejected(withByte(record, 4, 1), "one player");
+		assertRejected(withByte(record, 4, -3), "negative players");
+		assertRejected(withByte(record, 4, 62), "too many players");
+		assertRejected(withByte(record, 6, 4), "turn of a player who does not exist");
+		assertRejected(withInt(record, 8, 0), "no suspects");
+		assertRejected(withInt(record, 12, -1), "negative places");
+		assertRejected(withInt(record, 16, Integer.MAX_VALUE), "more weapons than the record holds");
+		assertRejected(truncated(record, record.length - 3), "truncated");
+	}
+
+	@Test
+	public void rejectsImpossibleDeals() {
+		ClueSolver game = new ClueSolver(4, 0L);
+		game.startGame();
+		byte[] record = encode(game);
+		int[] deal = game.getDeal();
+
+		assertRejected(withByte(record, DEAL, 100), "card dealt to a location that does not exist");
+		assertRejected(withByte(record, DEAL, -1), "card dealt to a negative location");
+		int caseFileSuspect = 0;
+		while (deal[caseFileSuspect] != 4) {
+			caseFileSuspect++;
+		}
+		assertRejected(withByte(record, DEAL + caseFileSuspect, 5), "suspect in the places case file slot");
+		int playerCard = 0;
+		while (deal[playerCard] != 1) {
+			playerCard++;
+		}
+		assertRejected(withByte(record, DEAL + playerCard, 2), "hands of the wrong size");
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static byte[] encode(ClueSolver game) {
+		ByteBuffer buffer = ByteBuffer.allocate(GameStateFormat.encodedSize(game)).order(ByteOrder.LITTLE_ENDIAN);
+		GameStateFormat.encode(game, buffer);
+		assertFalse(buffer.hasRemaining());
+		return buffer.array();
+	}
+
+	private static byte[] withByte(byte[] record, int offset, int value) {
+		byte[] changed = record.clone();
+		changed[offset] = (byte) value;
+		return changed;
+	}
+
+	private static byte[] withInt(byte[] record, int offset, int value) {
+		byte[] changed = record.clone();
+		ByteBuffer.wrap(changed).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return changed;
+	}
+
+	private static byte[] truncated(byte[] record, int length) {
+		byte[] changed = new byte[length];
+		System.arraycopy(record, 0, changed, 0, length);
+		return changed;
+	}
+
+	private static void assertRejected(byte[] record, String what) {
+		try {
+			GameStateFormat.decode(ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN));
+			fail("Decoded a record with " + what);
+		} catch (IllegalArgumentException e) {
+			//Expected
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package clue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks what {@link PlayerKnowledge} says each player knows against a {@link CardKnowledge} per player, told only
+ * what that player saw, and that it survives forks and journal replays.
+ */
+public class PlayerKnowledgeTest {
+
+	@Test
+	public void matchesWhatEachPlayerSaw() {
+		for (int seed = 0; seed < 60; seed++) {
+			int players = 3 + seed%4;
+			ClueSolver game = seed%2 == 0 ? new ClueSolver(players, seed)
+					: new ClueSolver(players, 5 + seed%4, 7 + seed%5, 5 + seed%3, seed);
+			game.setMessagesEnabled(false);
+			game.setPlayerKnowledgeEnabled(true);
+			if (seed%3 == 0) {
+				game.setBotPolicy(1, new DeductiveBotPolicy(new SplittableRandom(seed)));
+			}
+			Views views = new Views(game);
+			game.setEventListener(views::record);
+			game.startGame();
+
+			SplittableRandom rand = new SplittableRandom(seed);
+			int numberSuspects = game.getNumberSuspects();
+			int numberPlaces = game.getNumberPlaces();
+			for (int round = 0; round < 20 && !game.isGameOver(); round++) {
+				game.enterPlayer1Turn(rand.nextInt(numberSuspects), numberSuspects + rand.nextInt(numberPlaces),
+						numberSuspects + numberPlaces + rand.nextInt(game.getNumberWeapons()));
+				views.assertMatches(game, "seed " + seed + " round " + round);
+				game.endPlayer1Turn();
+				game.simulateOpenentTurns();
+				views.assertMatches(game, "seed " + seed + " round " + round);
+			}
+		}
+	}
+
+	@Test
+	public void survivesForksAndReplays() throws IOException {
+		for (int seed = 0; seed < 30; seed++) {
+			int players = 3 + seed%4;
+			ClueSolver game = new ClueSolver(players, seed);
+			game.setMessagesEnabled(false);
+			game.setPlayerKnowledgeEnabled(true);
+			if (seed%2 == 0) {
+				game.setBotPolicy(1, new DeductiveBotPolicy(new SplittableRandom(seed)));
+			}
+			Path path = Files.createTempFile("clue", ".clj");
+			try {
+				GameJournal journal = new GameJournal(path, game);
+				game.startGame();
+				TestGames.playRounds(game, new SplittableRandom(seed), 8);
+				journal.close();
+
+				String expected = digest(game);
+				assertEquals("Replay of seed " + seed, expected, digest(GameJournal.replay(path)));
+				ClueSolver fork = game.fork();
+				assertEquals("Fork of seed " + seed, expected, digest(fork));
+				if (!fork.isGameOver()) {
+					TestGames.playRounds(fork, new SplittableRandom(seed + 1), 1);
+					assertEquals("Game after its fork played on, seed " + seed, expected, digest(game));
+				}
+			} finally {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	/**
+	 * @return possible and known locations of every card to every player
+	 */
+	private static String digest(ClueSolver game) {
+		StringBuilder digest = new StringBuilder();
+		int numberCards = game.getKnowledge().getNumberCards();
+		for (int player = 0; player < game.getNumberPlayers(); player++) {
+			PlayerKnowledge knowledge = game.getPlayerKnowledge(player);
+			for (int card = 0; card < numberCards; card++) {
+				digest.append(knowledge.getPossibleLocations(card)).append(',')
+						.append(knowledge.getKnownLocation(card)).append(';');
+			}
+		}
+		return digest.toString();
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	/**
+	 * A {@link CardKnowledge} per player, told their own hand, every pass and refutation, and the cards shown to them.
+	 */
+	private static class Views {
+		final int numberPlayers;
+		final int numberCards;
+		final int[] deal;
+		final CardKnowledge[] knowledge;
+		final KnowledgePropagator[] propagators;
+		int suggester;
+
+		Views(ClueSolver game) {
+			numberPlayers = game.getNumberPlayers();
+			numberCards = game.getKnowledge().getNumberCards();
+			deal = game.getDeal();
+			int[] handSizes = new int[numberPlayers];
+			for (int card = 0; card < numberCards; card++) {
+				if (deal[card] < numberPlayers) {
+					handSizes[deal[card]]++;
+				}
+			}
+			knowledge = new CardKnowledge[numberPlayers];
+			propagators = new KnowledgePropagator[numberPlayers];
+			for (int player = 0; player < numberPlayers; player++) {
+				knowledge[player] = new CardKnowledge(numberPlayers, game.getNumberSuspects(), game.getNumberPlaces(),
+						game.getNumberWeapons(), handSizes);
+				propagators[player] = new KnowledgePropagator(knowledge[player]);
+				for (int card = 0; card < numberCards; card++) {
+					if (deal[card] == player) {
+						propagators[player].addToHand(player, card);
+					}
+				}
+				propagators[player].propagate();
+			}
+			suggester = -1;
+		}
+
+		void record(GameEvent event) {
+			switch (event.getType()) {
+			case SUGGESTION:
+				suggester = event.getPlayer();
+				break;
+			case PASS:
+				for (KnowledgePropagator propagator : propagators) {
+					propagator.restrict(event.getPlayer(), event.getSuspect());
+					propagator.restrict(event.getPlayer(), event.getPlace());
+					propagator.restrict(event.getPlayer(), event.getWeapon());
+				}
+				break;
+			case REVEAL_CARD:
+			case REVEAL:
+				for (KnowledgePropagator propagator : propagators) {
+					propagator.addConstraint(event.getPlayer(), event.getSuspect(), event.getPlace(), event.getWeapon());
+				}
+				propagators[suggester].addToHand(event.getPlayer(), event.getCard());
+				break;
+			default:
+				break;
+			}
+		}
+
+		void assertMatches(ClueSolver game, String when) {
+			for (KnowledgePropagator propagator : propagators) {
+				propagator.propagate();
+			}
+			for (int player = 0; player < numberPlayers; player++) {
+				PlayerKnowledge view = game.getPlayerKnowledge(player);
+				for (int card = 0; card < numberCards; card++) {
+					String what = "Player " + (player + 1) + ", card " + card + ", " + when;
+					assertEquals(what, knowledge[player].getPossibleLocations(card), view.getPossibleLocations(card));
+					assertEquals(what, knowledge[player].getKnownLocation(card), view.getKnownLocation(card));
+					assertTrue(what, (view.getPossibleLocations(card) & (1L << deal[card])) != 0);
+				}
+			}
+			PlayerKnowledge player1 = game.getPlayerKnowledge(0);
+			for (int card = 0; card < numberCards; card++) {
+				assertEquals("Player 1 against the game, card " + card + ", " + when,
+						game.getKnowledge().getPossibleLocations(card), player1.getPossibleLocations(card));
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package clue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link SuggestionConstraints} against a plain list of constraints under random adds, satisfies and copies.
+ */
+public class SuggestionConstraintsTest {
+
+	private static final int PLAYERS = 4;
+	private static final int CARDS_PER_TYPE = 4;
+	private static final int CARDS = 3*CARDS_PER_TYPE;
+
+	@Test
+	public void matchesPlainList() {
+		for (int seed = 0; seed < 20; seed++) {
+			SplittableRandom rand = new SplittableRandom(seed);
+			SuggestionConstraints constraints = new SuggestionConstraints(PLAYERS, CARDS);
+			Reference reference = new Reference();
+			for (int step = 0; step < 1500; step++) {
+				int player = rand.nextInt(PLAYERS);
+				if (rand.nextInt(4) == 0) {
+					int card = rand.nextInt(CARDS);
+					assertEquals("Satisfied at step " + step, reference.satisfy(player, card),
+							constraints.satisfy(player, card));
+				} else {
+					int[] cards = randomSuggestion(rand);
+					assertEquals("Added at step " + step, reference.add(player, cards),
+							constraints.add(player, cards[0], cards[1], cards[2]));
+				}
+				if (rand.nextInt(100) == 0) {
+					//Carry on with a copy and check the original is left as it was
+					SuggestionConstraints copy = new SuggestionConstraints(constraints);
+					Reference snapshot = new Reference(reference);
+					int[] cards = randomSuggestion(rand);
+					int card = rand.nextInt(CARDS);
+					assertEquals(reference.add(player, cards), copy.add(player, cards[0], cards[1], cards[2]));
+					assertEquals(reference.satisfy(player, card), copy.satisfy(player, card));
+					assertMatches(snapshot, constraints);
+					constraints = copy;
+				}
+				if (step%50 == 0) {
+					assertMatches(reference, constraints);
+				}
+			}
+			assertMatches(reference, constraints);
+		}
+	}
+
+	@Test
+	public void satisfiedConstraintsStayListed() {
+		SuggestionConstraints constraints = new SuggestionConstraints(3, 6);
+		assertTrue(constraints.add(1, 0, 2, 4));
+		assertTrue(constraints.add(1, 1, 2, 5));
+		assertTrue(constraints.add(2, 0, 3, 4));
+		assertFalse(constraints.add(1, 0, 2, 4));
+
+		assertEquals(2, constraints.satisfy(1, 2));
+		assertEquals(0, constraints.satisfy(1, 2));
+		assertEquals(3, constraints.size());
+		assertEquals(1, constraints.getOpen());
+		assertTrue(constraints.contains(1, 1, 2, 5));
+		assertFalse(constraints.hasOpen(1, 0));
+		assertTrue(constraints.hasOpen(2, 0));
+		assertEquals(Arrays.asList(1, 1, 2, 5), constraints.asList().get(1));
+	}
+
+	/*
+	 * ------------------------Private helper functions-------------------------------------------------
+	 */
+
+	private static int[] randomSuggestion(SplittableRandom rand) {
+		return new int[] {rand.nextInt(CARDS_PER_TYPE), CARDS_PER_TYPE + rand.nextInt(CARDS_PER_TYPE),
+				2*CARDS_PER_TYPE + rand.nextInt(CARDS_PER_TYPE)};
+	}
+
+	private static void assertMatches(Reference reference, SuggestionConstraints constraints) {
+		assertEquals(reference.constraints.size(), constraints.size());
+		assertEquals(reference.constraints.size() - reference.satisfied.size(), constraints.getOpen());
+		assertEquals(reference.constraints, constraints.asList());
+		for (int i = 0; i < reference.constraints.size(); i++) {
+			List<Integer> constraint = reference.constraints.get(i);
+			assertEquals(constraint.get(0).intValue(), constraints.player(i));
+			for (int position = 0; position < 3; position++) {
+				assertEquals(constraint.get(position + 1).intValue(), constraints.card(i, position));
+			}
+			assertEquals(reference.satisfied.contains(i), constraints.isSatisfied(i));
+			assertTrue(constraints.contains(constraint.get(0), constraint.get(1), constraint.get(2), constraint.get(3)));
+		}
+		for (int player = 0; player < PLAYERS; player++) {
+			Set<Integer> open = new HashSet<Integer>();
+			for (int i = 0; i < constraints.countByPlayer(player); i++) {
+				open.add(constraints.byPlayer(player, i));
+			}
+			assertEquals(reference.open(player, -1), open);
+		}
+		for (int card = 0; card < CARDS; card++) {
+			Set<Integer> open = new HashSet<Integer>();
+			for (int i = 0; i < constraints.countByCard(card); i++) {
+				open.add(constraints.byCard(card, i));
+			}
+			assertEquals(reference.open(-1, card), open);
+			for (int player = 0; player < PLAYERS; player++) {
+				assertEquals(!reference.open(player, card).isEmpty(), constraints.hasOpen(player, card));
+			}
+		}
+	}
+
+	/*
+	 * ------------------------Private helper classes-------------------------------------------------
+	 */
+
+	/**
+	 * Constraints as a list of {player, suspect, place, weapon}, searched in full for every question.
+	 */
+	private static class Reference {
+		final List<List<Integer>> constraints;
+		final Set<Integer> satisfied;
+
+		Reference() {
+			constraints = new ArrayList<List<Integer>>();
+			satisfied = new HashSet<Integer>();
+		}
+
+		Reference(Reference other) {
+			constraints = new ArrayList<List<Integer>>(other.constraints);
+			satisfied = new HashSet<Integer>(other.satisfied);
+		}
+
+		boolean add(int player, int[] cards) {
+			List<Integer> constraint = Arrays.asList(player, cards[0], cards[1], cards[2]);
+			if (constraints.contains(constraint)) {
+				return false;
+			}
+			constraints.add(constraint);
+			return true;
+		}
+
+		int satisfy(int player, int card) {
+			Set<Integer> open = open(player, card);
+			satisfied.addAll(open);
+			return open.size();
+		}
+
+		/**
+		 * @param player or -1 for any player
+		 * @param card or -1 for any card
+		 * @return indexes of the open constraints of player's including card
+		 */
+		Set<Integer> open(int player, int card) {
+			Set<Integer> open = new HashSet<Integer>();
+			for (int i = 0; i < constraints.size(); i++) {
+				List<Integer> constraint = constraints.get(i);
+				if (!satisfied.contains(i) && (player == -1 || constraint.get(0) == player)
+						&& (card == -1 || constraint.subList(1, 4).contains(card))) {
+					open.add(i);
+				}
+			}
+			return open;
+		}
+	}
+}
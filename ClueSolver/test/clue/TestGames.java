@@ -0,0 +1,178 @@
+package clue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Moves shared by the tests for playing games forward, and a brute force enumeration of the deals consistent with a
+ * game to check the solvers against.
+ */
+final class TestGames {
+
+	private TestGames() {
+	}
+
+	/**
+	 * Plays rounds starting on Player 1's turn, as a started game does. Each round is a random suggestion from
+	 * Player 1, the end of their turn and then the opponents' turns, until the game is over or the rounds run out, so
+	 * a game which is not over is always back on Player 1's turn.
+	 * @param rand source of Player 1's suggestions
+	 */
+	static void playRounds(ClueSolver game, SplittableRandom rand, int rounds) {
+		int numberSuspects = game.getNumberSuspects();
+		int numberPlaces = game.getNumberPlaces();
+		for (int round = 0; round < rounds && !game.isGameOver(); round++) {
+			game.enterPlayer1Turn(rand.nextInt(numberSuspects), numberSuspects + rand.nextInt(numberPlaces),
+					numberSuspects + numberPlaces + rand.nextInt(game.getNumberWeapons()));
+			game.endPlayer1Turn();
+			if (!game.isGameOver()) {
+				game.simulateOpenentTurns();
+			}
+		}
+	}
+
+	/**
+	 * @return Player 1's knowledge (possible locations of every card and free slots of every location), the suggestion
+	 * constraints and the turn state as text, so two games can be compared with a single assertion
+	 */
+	static String describe(ClueSolver game) {
+		CardKnowledge knowledge = game.getKnowledge();
+		StringBuilder description = new StringBuilder();
+		for (int card = 0; card < knowledge.getNumberCards(); card++) {
+			description.append(knowledge.getPossibleLocations(card)).append(',');
+		}
+		for (int location = 0; location < knowledge.getNumberLocations(); location++) {
+			description.append(knowledge.getFreeSlots(location)).append(';');
+		}
+		return description.append(knowledge.hasContradiction()).append(game.getSuggestionConstraints())
+				.append(Arrays.toString(game.getDeal())).append(" turn ").append(game.getCurrentTurn())
+				.append(game.isSuggestionMade()).append(" over ").append(game.isGameOver()).append(game.getWinner())
+				.append(" bots ").append(game.getBotSuggestions()).toString();
+	}
+
+	/**
+	 * The consistent deals of a small game, as card locations, found by trying every location of every unknown card,
+	 * and their costs under the weights {@link ClueFileWriter} writes.
+	 */
+	static final class Deals {
+		final ClueSolver game;
+		final CardKnowledge knowledge;
+		final List<List<Integer>> suggestions;
+		final int numberLocations;
+		final int[] freeSlots;
+		final int[] unknown;
+		final int[] locations;
+		double[] weights;
+
+		Deals(ClueSolver game) {
+			this.game = game;
+			knowledge = game.getKnowledge();
+			suggestions = game.getSuggestionConstraints();
+			numberLocations = game.getNumberPlayers() + 3;
+			freeSlots = new int[numberLocations];
+			for (int location = 0; location < numberLocations; location++) {
+				freeSlots[location] = knowledge.getFreeSlots(location);
+			}
+			int numberCards = knowledge.getNumberCards();
+			locations = new int[numberCards];
+			List<Integer> cards = new ArrayList<Integer>();
+			for (int card = 0; card < numberCards; card++) {
+				if (knowledge.isKnown(card)) {
+					locations[card] = knowledge.getKnownLocation(card);
+				} else {
+					cards.add(card);
+				}
+			}
+			unknown = cards.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		/**
+		 * Gives visitor every consistent deal in turn. The array is reused, so it must be copied to be kept.
+		 */
+		void forEach(Consumer<int[]> visitor) {
+			place(0, new int[numberLocations], visitor);
+		}
+
+		/**
+		 * @return the costs of every consistent deal which has no forbidden value
+		 */
+		List<Double> enumerate() {
+			List<Double> costs = new ArrayList<Double>();
+			forEach(deal -> {
+				double cost = cost(deal);
+				if (!Double.isNaN(cost)) {
+					costs.add(cost);
+				}
+			});
+			return costs;
+		}
+
+		boolean isValid(int[] deal) {
+			int[] used = new int[numberLocations];
+			for (int card = 0; card < deal.length; card++) {
+				if (knowledge.isRestricted(card, deal[card])) {
+					return false;
+				}
+				if (!knowledge.isKnown(card)) {
+					used[deal[card]]++;
+				} else if (knowledge.getKnownLocation(card) != deal[card]) {
+					return false;
+				}
+			}
+			for (int location = 0; location < numberLocations; location++) {
+				if (used[location] != freeSlots[location]) {
+					return false;
+				}
+			}
+			for (List<Integer> suggestion : suggestions) {
+				int player = suggestion.get(0);
+				if (deal[suggestion.get(1)] != player && deal[suggestion.get(2)] != player
+						&& deal[suggestion.get(3)] != player) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return total of the weights of every variable, or NaN if the deal has a forbidden value
+		 */
+		double cost(int[] deal) {
+			if (weights == null) {
+				weights = new ClueFileWriter(game).computeWeights();
+			}
+			double cost = 0;
+			for (int card = 0; card < deal.length; card++) {
+				for (int location = 0; location < numberLocations; location++) {
+					double weight = weights[2*(card*numberLocations + location) + (deal[card] == location ? 1 : 0)];
+					if (weight < 0) {
+						return Double.NaN;
+					}
+					cost += weight;
+				}
+			}
+			return cost;
+		}
+
+		private void place(int i, int[] used, Consumer<int[]> visitor) {
+			if (i == unknown.length) {
+				if (isValid(locations)) {
+					visitor.accept(locations);
+				}
+				return;
+			}
+			int card = unknown[i];
+			for (int location = 0; location < numberLocations; location++) {
+				if (knowledge.isRestricted(card, location) || used[location] >= freeSlots[location]) {
+					continue;
+				}
+				used[location]++;
+				locations[card] = location;
+				place(i + 1, used, visitor);
+				used[location]--;
+			}
+		}
+	}
+}